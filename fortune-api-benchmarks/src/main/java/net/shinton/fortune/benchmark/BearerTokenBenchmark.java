@@ -0,0 +1,119 @@
+package net.shinton.fortune.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import net.shinton.util.BearerTokenTool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ *   Measures generating and validating bearer tokens. Every authorized
+ *   request validates a token, and a token that has been seen before is
+ *   answered from the cache of validated tokens, so both the cached and the
+ *   first validation are measured.
+ * </p>
+ * <p>
+ *   The first validation gets a new tool with an empty cache before every
+ *   call. That is only sensible because checking a signature takes far
+ *   longer than the bookkeeping JMH does around each call.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BearerTokenBenchmark {
+  private static final String API_PATH = "/api/v1/fortune";
+  private static final String PUBLIC_HOST = "fortune.shinton.net";
+
+  /**
+   * Generates a token.
+   *
+   * @param tokens The token tool
+   * @return The token
+   */
+  @Benchmark
+  public String generate(Tokens tokens) {
+    return tokens.tool.generate(3600, API_PATH);
+  }
+
+  /**
+   * Validates a token that has been validated before.
+   *
+   * @param tokens The token tool and a token it has validated
+   * @return <code>true</code> if the token is valid
+   */
+  @Benchmark
+  public boolean validateCached(Tokens tokens) {
+    return tokens.tool.validate(tokens.token, API_PATH);
+  }
+
+  /**
+   * Validates a token the tool has not seen before.
+   *
+   * @param tokens A new token tool and a token it has not validated
+   * @return <code>true</code> if the token is valid
+   */
+  @Benchmark
+  public boolean validateUncached(UncachedTokens tokens) {
+    return tokens.tool.validate(tokens.token, API_PATH);
+  }
+
+  /**
+   * A token tool and a token it has validated.
+   */
+  @State(Scope.Benchmark)
+  public static class Tokens {
+    BearerTokenTool tool;
+    String token;
+
+    /**
+     * Creates the tool and validates the token once so it is cached.
+     */
+    @Setup
+    public void setup() {
+      tool = new BearerTokenTool(BearerTokenTool.newSigningKey(), PUBLIC_HOST);
+      token = tool.generate(3600, API_PATH);
+      if (!tool.validate(token, API_PATH)) {
+        throw new IllegalStateException("The benchmark token is not valid");
+      }
+    }
+  }
+
+  /**
+   * A new token tool for every call, with a token it has not validated.
+   */
+  @State(Scope.Thread)
+  public static class UncachedTokens {
+    String signingKey;
+    String token;
+    BearerTokenTool tool;
+
+    /**
+     * Creates the signing key and the token.
+     */
+    @Setup
+    public void setup() {
+      signingKey = BearerTokenTool.newSigningKey();
+      token = new BearerTokenTool(signingKey, PUBLIC_HOST).generate(3600, API_PATH);
+    }
+
+    /**
+     * Creates a tool with an empty cache.
+     */
+    @Setup(Level.Invocation)
+    public void newTool() {
+      tool = new BearerTokenTool(signingKey, PUBLIC_HOST);
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package net.shinton.fortune.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Makes up fortunes for the benchmarks. The same count always gives the same
+ * fortunes, so runs against different releases work on the same data.
+ */
+final class Corpus {
+  /**
+   * A word that appears in some of the fortunes, to search for.
+   */
+  static final String SEARCH_WORD = "lucky";
+
+  private static final String[] WORDS = {
+      "fortune", "smile", "journey", "friend", "patience", "wisdom", "courage", "lucky", "harvest", "river",
+      "mountain", "lantern", "garden", "promise", "morning", "thunder"
+  };
+
+  /**
+   * Hidden constructor for a utility class.
+   */
+  private Corpus() {
+  }
+
+  /**
+   * Makes up fortunes that are about as long as real ones.
+   *
+   * @param count The number of fortunes
+   * @return The fortunes
+   */
+  static List<String> fortunes(int count) {
+    List<String> fortunes = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      fortunes.add(fortune(i));
+    }
+
+    return fortunes;
+  }
+
+  /**
+   * Makes up a single fortune. Every number gives a different fortune.
+   *
+   * @param number The number of the fortune
+   * @return The fortune
+   */
+  static String fortune(int number) {
+    return "Benchmark fortune " + number + ": a " + WORDS[number % WORDS.length] +
+        " found on the way to the " + WORDS[(number / WORDS.length) % WORDS.length] +
+        " will bring you " + WORDS[(number / 7) % WORDS.length] + " before the next " +
+        WORDS[(number / 3) % WORDS.length] + ".";
+  }
+}
@@ -0,0 +1,182 @@
+package net.shinton.fortune.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import net.shinton.fortune.FortuneApiConfig;
+import net.shinton.fortune.data.Fortune;
+import net.shinton.fortune.data.FortuneDatabase;
+import net.shinton.fortune.data.FortuneIdRange;
+import net.shinton.fortune.data.FortunePage;
+import net.shinton.fortune.data.accessor.FortuneAccessor;
+import net.shinton.fortune.factory.FortuneDatabaseFactory;
+import org.aeonbits.owner.ConfigFactory;
+import org.jdbi.v3.core.Jdbi;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ *   Measures the read queries of the <code>FortuneAccessor</code> against a
+ *   database in a file and one in memory, each filled with several numbers
+ *   of fortunes. The database is opened with the same settings the server
+ *   uses by default, so a file database is in <code>WAL</code> mode and is
+ *   read through a pool of read-only connections.
+ * </p>
+ * <p>
+ *   Each call gets a connection from the pool and gives it back, the way a
+ *   request does.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FortuneAccessorBenchmark {
+  private static final int BATCH_SIZE = 1000;
+  private static final int PAGE_SIZE = 100;
+
+  @Param({"memory", "file"})
+  private String storage;
+
+  @Param({"1000", "10000", "100000"})
+  private int corpusSize;
+
+  private Path directory;
+  private FortuneDatabase database;
+  private Jdbi reader;
+  private FortuneIdRange range;
+
+  /**
+   * Creates the database and fills it with made up fortunes on top of the
+   * ones the schema comes with.
+   *
+   * @throws IOException The directory for the database could not be created
+   */
+  @Setup
+  public void setup() throws IOException {
+    String jdbcUrl = "jdbc:sqlite::memory:";
+    if ("file".equals(storage)) {
+      directory = Files.createTempDirectory("fortune-benchmark");
+      jdbcUrl = "jdbc:sqlite:" + directory.resolve("fortune.db");
+    }
+
+    FortuneApiConfig config = ConfigFactory.create(FortuneApiConfig.class, Map.of("FORTUNE_JDBC_URL", jdbcUrl));
+    database = new FortuneDatabaseFactory().newDatabase(config);
+    reader = database.getReader();
+
+    int existing = reader.withHandle(handle -> new FortuneAccessor(handle).getAllFortunes().size());
+    List<Fortune> batch = new ArrayList<>(BATCH_SIZE);
+    for (int i = existing; i < corpusSize; i++) {
+      batch.add(new Fortune(Corpus.fortune(i), Fortune.DEFAULT_WEIGHT));
+      if (batch.size() == BATCH_SIZE || i == corpusSize - 1) {
+        database.getWriter().useHandle(handle -> new FortuneAccessor(handle).addFortunes(batch));
+        batch.clear();
+      }
+    }
+
+    range = reader.withHandle(handle -> new FortuneAccessor(handle).getIdRange());
+  }
+
+  /**
+   * Closes the database and deletes its files.
+   *
+   * @throws IOException The files could not be deleted
+   */
+  @TearDown
+  public void tearDown() throws IOException {
+    database.getPools().forEach(HikariDataSource::close);
+
+    if (directory != null) {
+      try (Stream<Path> files = Files.list(directory)) {
+        for (Path file : files.collect(Collectors.toList())) {
+          Files.delete(file);
+        }
+      }
+
+      Files.delete(directory);
+    }
+  }
+
+  /**
+   * Gets the range of ids, which the model does whenever its cached range
+   * goes stale.
+   *
+   * @return The range
+   */
+  @Benchmark
+  public FortuneIdRange idRange() {
+    return reader.withHandle(handle -> new FortuneAccessor(handle).getIdRange());
+  }
+
+  /**
+   * Gets a random fortune.
+   *
+   * @return The fortune
+   */
+  @Benchmark
+  public String randomFortune() {
+    return reader.withHandle(handle -> new FortuneAccessor(handle).getRandomFortune(range));
+  }
+
+  /**
+   * Gets ten random fortunes.
+   *
+   * @return The fortunes
+   */
+  @Benchmark
+  public List<String> randomFortunes() {
+    return reader.withHandle(handle -> new FortuneAccessor(handle).getRandomFortunes(range, 10));
+  }
+
+  /**
+   * Gets a fortune by a random id.
+   *
+   * @return The fortune
+   */
+  @Benchmark
+  public String fortuneById() {
+    long id = range.randomId();
+    return reader.withHandle(handle -> new FortuneAccessor(handle).getFortuneById(id));
+  }
+
+  /**
+   * Gets a page of fortunes starting at a random id.
+   *
+   * @return The page
+   */
+  @Benchmark
+  public FortunePage fortunePage() {
+    long lastId = range.randomId();
+    return reader.withHandle(handle -> new FortuneAccessor(handle).getFortunePage(lastId, PAGE_SIZE));
+  }
+
+  /**
+   * Searches for fortunes with a word that many of them contain.
+   *
+   * @return The fortunes
+   */
+  @Benchmark
+  public List<String> search() {
+    return reader.withHandle(handle -> new FortuneAccessor(handle).searchFortunes(Corpus.SEARCH_WORD, 10));
+  }
+}
@@ -0,0 +1,94 @@
+package net.shinton.fortune.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import net.shinton.fortune.factory.ObjectMapperFactory;
+import net.shinton.fortune.model.RestResponseStatus;
+import net.shinton.fortune.model.immutable.ImmutableRestResponse;
+import net.shinton.fortune.model.immutable.RestResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures turning a <code>RestResponse</code> into JSON and back with the
+ * mapper the server and the client share, for payloads of several sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ObjectMapperBenchmark {
+  private static final TypeReference<RestResponse<List<String>>> RESPONSE_TYPE = new TypeReference<>() {};
+
+  @Param({"1", "10", "100", "1000"})
+  private int fortunes;
+
+  private ObjectMapper mapper;
+  private RestResponse<List<String>> response;
+  private byte[] json;
+
+  /**
+   * Creates the mapper, the response and its JSON.
+   *
+   * @throws IOException The response could not be serialized
+   */
+  @Setup
+  public void setup() throws IOException {
+    mapper = new ObjectMapperFactory().newMapper();
+    response = ImmutableRestResponse.<List<String>>builder()
+        .status(RestResponseStatus.success)
+        .code(200)
+        .message("OK")
+        .data(Corpus.fortunes(fortunes))
+        .build();
+    json = mapper.writeValueAsBytes(response);
+  }
+
+  /**
+   * Serializes the response.
+   *
+   * @return The JSON
+   * @throws IOException The response could not be serialized
+   */
+  @Benchmark
+  public byte[] serialize() throws IOException {
+    return mapper.writeValueAsBytes(response);
+  }
+
+  /**
+   * Deserializes the response.
+   *
+   * @return The response
+   * @throws IOException The response could not be deserialized
+   */
+  @Benchmark
+  public RestResponse<List<String>> deserialize() throws IOException {
+    return mapper.readValue(json, RESPONSE_TYPE);
+  }
+
+  /**
+   * Serializes the response and reads it back, the way it travels from the
+   * server to the client.
+   *
+   * @return The response
+   * @throws IOException The response could not be serialized or deserialized
+   */
+  @Benchmark
+  public RestResponse<List<String>> roundTrip() throws IOException {
+    return mapper.readValue(mapper.writeValueAsBytes(response), RESPONSE_TYPE);
+  }
+}
@@ -0,0 +1,164 @@
+package net.shinton.fortune.benchmark;
+
+import io.javalin.http.Context;
+import io.javalin.http.HttpStatus;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import net.shinton.fortune.FortuneApiConfig;
+import net.shinton.fortune.handler.BaseHandler;
+import net.shinton.fortune.model.RestResponseStatus;
+import net.shinton.util.BearerTokenTool;
+import org.aeonbits.owner.ConfigFactory;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ *   Measures how long <code>BaseHandler.response</code> takes to wrap a
+ *   payload in a <code>RestResponse</code>, serialize it and hand it to the
+ *   context. The context is a bare proxy that only keeps the result, so the
+ *   time is the handler's own and not that of a mocking library.
+ * </p>
+ * <p>
+ *   The payloads are lists of fortunes of the sizes a client is likely to
+ *   ask for, from a single fortune up to a large batch.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseBenchmark {
+  @Param({"1", "10", "100", "1000"})
+  private int fortunes;
+
+  private ResponseHandler handler;
+  private ResultContext result;
+  private Context ctx;
+  private List<String> data;
+
+  /**
+   * Creates the handler, the context and the payload.
+   */
+  @Setup
+  public void setup() {
+    FortuneApiConfig config = ConfigFactory.create(FortuneApiConfig.class,
+        Map.of("FORTUNE_JWT_SIGNING_KEY", BearerTokenTool.newSigningKey()));
+
+    handler = new ResponseHandler(config);
+    result = new ResultContext();
+    ctx = result.newContext();
+    data = Corpus.fortunes(fortunes);
+  }
+
+  /**
+   * Sends a successful response with the payload.
+   *
+   * @return The serialized response
+   */
+  @Benchmark
+  public Object response() {
+    handler.respond(ctx, data);
+    return result.getResult();
+  }
+
+  /**
+   * Sends an error response without a payload, which is what every rejected
+   * request pays.
+   *
+   * @return The serialized response
+   */
+  @Benchmark
+  public Object error() {
+    handler.respond(ctx, HttpStatus.UNAUTHORIZED);
+    return result.getResult();
+  }
+
+  /**
+   * A handler that does nothing on its own and exposes the response methods
+   * of the base handler.
+   */
+  private static class ResponseHandler extends BaseHandler {
+    /**
+     * Creates a new handler.
+     *
+     * @param config The API config
+     */
+    ResponseHandler(FortuneApiConfig config) {
+      super(config);
+    }
+
+    /**
+     * Sends a successful response.
+     *
+     * @param ctx The context
+     * @param data The payload
+     */
+    void respond(Context ctx, List<String> data) {
+      response(ctx, HttpStatus.OK, RestResponseStatus.success, data, HttpStatus.OK.getMessage());
+    }
+
+    /**
+     * Sends a response without a payload.
+     *
+     * @param ctx The context
+     * @param code The HTTP status code
+     */
+    void respond(Context ctx, HttpStatus code) {
+      response(ctx, code);
+    }
+
+    @Override
+    protected void handleRequest(@NotNull Context ctx) {
+      // Never called
+    }
+  }
+
+  /**
+   * Keeps the last result set on a proxied context. Every method that
+   * returns a context returns the proxy itself, so the calls can be chained
+   * the way the handlers do.
+   */
+  private static class ResultContext {
+    private Object result;
+
+    /**
+     * Creates a context backed by this result.
+     *
+     * @return The context
+     */
+    Context newContext() {
+      return (Context) Proxy.newProxyInstance(Context.class.getClassLoader(), new Class<?>[] {Context.class},
+          (proxy, method, args) -> {
+            if ("result".equals(method.getName()) && args != null && args.length == 1) {
+              result = args[0];
+            }
+
+            return method.getReturnType().isInstance(proxy) ? proxy : null;
+          });
+    }
+
+    /**
+     * Gets the last result.
+     *
+     * @return The result
+     */
+    Object getResult() {
+      return result;
+    }
+  }
+}
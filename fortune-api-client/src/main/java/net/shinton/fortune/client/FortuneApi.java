@@ -2,12 +2,14 @@ package net.shinton.fortune.client;
 
 import java.util.List;
 import java.util.Map;
+import net.shinton.fortune.model.InsertStatus;
 import net.shinton.fortune.model.immutable.RestResponse;
 import retrofit2.Call;
 import retrofit2.http.Body;
 import retrofit2.http.GET;
 import retrofit2.http.Header;
 import retrofit2.http.POST;
+import retrofit2.http.Query;
 
 /**
  * This is an interface annotated with <code>Retrofit</code> to generate code
@@ -22,23 +24,75 @@ public interface FortuneApi {
   @GET("/api/v1/fortune")
   Call<RestResponse<Map<String, String>>> getFortune();
 
+  /**
+   * Get a number of distinct fortunes.
+   *
+   * @param count The number of fortunes to get
+   * @return The response object containing a list of fortunes
+   */
+  @GET("/api/v1/fortune")
+  Call<RestResponse<List<Map<String, String>>>> getFortunes(@Query("count") int count);
+
+  /**
+   * Search the fortunes. Every word in the text has to appear in a fortune
+   * for it to match, and the best matches come first.
+   *
+   * @param text The text to search for
+   * @param limit The most fortunes to return
+   * @return The response object containing a list of fortunes
+   */
+  @GET("/api/v1/fortune/search")
+  Call<RestResponse<List<Map<String, String>>>> searchFortunes(@Query("q") String text, @Query("limit") int limit);
+
   /**
    * Add a fortune to the database. The body must contain a key of "fortune" with
-   * the value being the fortune to add.
+   * the value being the fortune to add. It may also contain a key of "weight"
+   * with a positive number.
    *
    * @param bearerToken The token needed for authentication
    * @param body A map of parameters for the call
    * @return The response object
    */
   @POST("/api/v1/fortune")
-  Call<RestResponse<Object>> addFortune(@Header("Authorization") String bearerToken, @Body Map<String, String> body);
+  Call<RestResponse<Object>> addFortune(@Header("Authorization") String bearerToken, @Body Map<String, Object> body);
 
   /**
-   * Get all fortunes.
+   * Add many fortunes to the database in one call. Each element of the body
+   * must contain a key of "fortune" and may contain a key of "weight", just
+   * like {@link #addFortune(String, Map)}.
    *
    * @param bearerToken The token needed for authentication
+   * @param body A list of fortunes to add
+   * @return The response object containing the outcome for each fortune
+   */
+  @POST("/api/v1/fortune/bulk")
+  Call<RestResponse<List<InsertStatus>>> addFortunes(@Header("Authorization") String bearerToken,
+                                                     @Body List<Map<String, Object>> body);
+
+  /**
+   * Get all fortunes. If the entity tag matches the current version of the
+   * fortunes, the response is a <code>304 Not Modified</code> with no body.
+   *
+   * @param bearerToken The token needed for authentication
+   * @param etag The <code>ETag</code> from a previous call or <code>null</code>
    * @return The response object containing a list of fortunes
    */
   @GET("/api/v1/fortune/all")
-  Call<RestResponse<List<String>>> getAllFortunes(@Header("Authorization") String bearerToken);
+  Call<RestResponse<List<String>>> getAllFortunes(@Header("Authorization") String bearerToken,
+                                                  @Header("If-None-Match") String etag);
+
+  /**
+   * Get a page of fortunes.
+   *
+   * @param bearerToken The token needed for authentication
+   * @param limit The most fortunes to put on the page
+   * @param cursor The cursor from the previous page or <code>null</code> for
+   *        the first page
+   * @return The response object containing a list of fortunes and the cursor
+   *         for the next page
+   */
+  @GET("/api/v1/fortune/all")
+  Call<RestResponse<List<String>>> getFortunePage(@Header("Authorization") String bearerToken,
+                                                  @Query("limit") int limit,
+                                                  @Query("cursor") String cursor);
 }
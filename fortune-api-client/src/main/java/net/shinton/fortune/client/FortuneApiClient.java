@@ -3,17 +3,28 @@ package net.shinton.fortune.client;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 import net.shinton.fortune.client.cli.FortuneApiClientCli;
 import net.shinton.fortune.factory.ObjectMapperFactory;
+import net.shinton.fortune.model.InsertStatus;
 import net.shinton.fortune.model.RestResponseStatus;
 import net.shinton.fortune.model.immutable.RestResponse;
 import okhttp3.ResponseBody;
 import org.apache.commons.lang3.StringUtils;
 import picocli.CommandLine;
 import retrofit2.Call;
+import retrofit2.Callback;
 import retrofit2.Response;
 
 /**
@@ -22,9 +33,17 @@ import retrofit2.Response;
  */
 public class FortuneApiClient {
   private static final ObjectMapper objectMapper = new ObjectMapperFactory().newMapper();
+  private static final int HTTP_NOT_MODIFIED = 304;
+
+  /**
+   * The number of fortunes sent per call by {@link #addFortunes(Collection)}.
+   */
+  private static final int BULK_SIZE = 1000;
 
   private final FortuneApi api;
   private volatile String bearerToken;
+  private volatile CachedFortunes cachedFortunes;
+  private volatile LocalFortuneCache localCache;
 
   /**
    * <p>
@@ -53,29 +72,121 @@ public class FortuneApiClient {
   }
 
   /**
-   * Gets a fortune from the API.
+   * Gets a fortune from the API, or from the local copy if
+   * {@link #enableLocalCache(Duration)} has loaded one.
    *
    * @return A fortune
    * @throws IOException There is a problem with the call
    */
   public String getFortune() throws IOException {
+    String local = localFortune();
+    if (local != null) {
+      return local;
+    }
+
     Call<RestResponse<Map<String, String>>> call = api.getFortune();
     RestResponse<Map<String, String>> response = handleResponse(call.execute());
     Map<String, String> data = response.getData();
     return data.get("fortune");
   }
 
+  /**
+   * Gets a fortune from the API without blocking the calling thread. If
+   * {@link #enableLocalCache(Duration)} has loaded a local copy, the future
+   * is already complete with a fortune from it.
+   *
+   * @return A future of the fortune. It fails with an {@link IOException}
+   *         if there is a problem with the call.
+   */
+  public CompletableFuture<String> getFortuneAsync() {
+    String local = localFortune();
+    if (local != null) {
+      return CompletableFuture.completedFuture(local);
+    }
+
+    return enqueue(api.getFortune(), response -> handleResponse(response).getData().get("fortune"));
+  }
+
+  /**
+   * Gets a number of distinct fortunes from the API in a single call. This is
+   * much cheaper than calling {@link #getFortune()} over and over.
+   *
+   * @param count The number of fortunes to get, which must be between 1 and 100
+   * @return The fortunes, which may be fewer than requested if the API does not
+   *         have that many
+   * @throws IOException There is a problem with the call
+   */
+  public List<String> getFortunes(int count) throws IOException {
+    Call<RestResponse<List<Map<String, String>>>> call = api.getFortunes(count);
+    RestResponse<List<Map<String, String>>> response = handleResponse(call.execute());
+
+    return response.getData().stream()
+        .map(data -> data.get("fortune"))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Searches the fortunes for the supplied words. Words are matched on their
+   * stems, so "friends" also finds "friend", and every word has to appear in
+   * a fortune for it to match.
+   *
+   * @param text The text to search for
+   * @param limit The most fortunes to return, which must be between 1 and 100
+   * @return The matching fortunes, best matches first
+   * @throws IOException There is a problem with the call
+   */
+  public List<String> search(String text, int limit) throws IOException {
+    Call<RestResponse<List<Map<String, String>>>> call = api.searchFortunes(text, limit);
+    RestResponse<List<Map<String, String>>> response = handleResponse(call.execute());
+
+    return response.getData().stream()
+        .map(data -> data.get("fortune"))
+        .collect(Collectors.toList());
+  }
+
   /**
    * Gets all the fortunes in the database. This is an authenticated call and
-   * requires a valid bearer token to be stored in the client.
+   * requires a valid bearer token to be stored in the client. The last list is
+   * remembered along with its <code>ETag</code>, so if nothing has changed
+   * since, the API answers with a <code>304 Not Modified</code> and the list is
+   * not sent again.
    *
-   * @return A list of fortunes
+   * @return An unmodifiable list of fortunes
    * @throws IOException There is a problem with the call
    */
   public List<String> getAllFortunes() throws IOException {
-    Call<RestResponse<List<String>>> call = api.getAllFortunes(bearerToken);
-    RestResponse<List<String>> response = handleResponse(call.execute());
-    return response.getData();
+    CachedFortunes cached = cachedFortunes;
+    Call<RestResponse<List<String>>> call = api.getAllFortunes(bearerToken, (cached == null) ? null : cached.etag);
+    return handleAllFortunes(call.execute(), cached);
+  }
+
+  /**
+   * Gets all the fortunes in the database without blocking the calling
+   * thread. Like {@link #getAllFortunes()}, this is an authenticated call and
+   * the list is not sent again if it has not changed.
+   *
+   * @return A future of an unmodifiable list of fortunes. It fails with an
+   *         {@link IOException} if there is a problem with the call.
+   */
+  public CompletableFuture<List<String>> getAllFortunesAsync() {
+    CachedFortunes cached = cachedFortunes;
+    Call<RestResponse<List<String>>> call = api.getAllFortunes(bearerToken, (cached == null) ? null : cached.etag);
+    return enqueue(call, response -> handleAllFortunes(response, cached));
+  }
+
+  /**
+   * Gets an iterator over all the fortunes in the database that fetches them a
+   * page at a time as it goes. Only one page is held in memory at a time, so
+   * this works no matter how many fortunes there are. This is an authenticated
+   * call and requires a valid bearer token to be stored in the client.
+   *
+   * @param pageSize The number of fortunes to fetch per call, between 1 and 1000
+   * @return An iterator over the fortunes. Since the iterator cannot throw an
+   *         {@link IOException}, failed calls are thrown as an
+   *         {@link UncheckedIOException}.
+   */
+  public Iterator<String> getFortuneIterator(int pageSize) {
+    return new FortunePageIterator(pageSize);
   }
 
   /**
@@ -87,9 +198,81 @@ public class FortuneApiClient {
    * @throws IOException There is a problem with the call
    */
   public boolean addFortune(String fortune) throws IOException {
-    Call<RestResponse<Object>> call = api.addFortune(bearerToken, Map.of("fortune", fortune));
-    RestResponse<Object> response = handleResponse(call.execute());
-    return (response.getStatus() == RestResponseStatus.success);
+    return postFortune(Map.<String, Object>of("fortune", fortune));
+  }
+
+  /**
+   * Adds a fortune to the database with a weight. A fortune with a weight of 2
+   * is picked twice as often as one with the default weight of 1. This is an
+   * authenticated call and requires a valid bearer token to be stored in the
+   * client.
+   *
+   * @param fortune The fortune to add
+   * @param weight The relative weight of the fortune, which must be positive
+   * @return <code>true</code> if added
+   * @throws IOException There is a problem with the call
+   */
+  public boolean addFortune(String fortune, double weight) throws IOException {
+    return postFortune(Map.of("fortune", fortune, "weight", weight));
+  }
+
+  /**
+   * Adds a fortune to the database without blocking the calling thread. This
+   * is an authenticated call and requires a valid bearer token to be stored
+   * in the client.
+   *
+   * @param fortune The fortune to add
+   * @return A future of <code>true</code> if added. It fails with an
+   *         {@link IOException} if there is a problem with the call.
+   */
+  public CompletableFuture<Boolean> addFortuneAsync(String fortune) {
+    return enqueue(api.addFortune(bearerToken, Map.<String, Object>of("fortune", fortune)), this::handleAdded);
+  }
+
+  /**
+   * Adds a fortune to the database with a weight without blocking the
+   * calling thread. This is an authenticated call and requires a valid
+   * bearer token to be stored in the client.
+   *
+   * @param fortune The fortune to add
+   * @param weight The relative weight of the fortune, which must be positive
+   * @return A future of <code>true</code> if added. It fails with an
+   *         {@link IOException} if there is a problem with the call.
+   */
+  public CompletableFuture<Boolean> addFortuneAsync(String fortune, double weight) {
+    return enqueue(api.addFortune(bearerToken, Map.of("fortune", fortune, "weight", weight)), this::handleAdded);
+  }
+
+  /**
+   * Adds many fortunes to the database with the default weight. They are sent
+   * {@value #BULK_SIZE} at a time, and each call is a single transaction on the
+   * server, which is far faster than adding them one by one. This is an
+   * authenticated call and requires a valid bearer token to be stored in the
+   * client.
+   *
+   * @param fortunes The fortunes to add
+   * @return The outcome for each fortune, in the same order they were supplied
+   * @throws IOException There is a problem with a call. Batches sent before
+   *         the failure have already been added.
+   */
+  public List<InsertStatus> addFortunes(Collection<String> fortunes) throws IOException {
+    List<InsertStatus> statuses = new ArrayList<>(fortunes.size());
+    List<Map<String, Object>> batch = new ArrayList<>(BULK_SIZE);
+
+    for (String fortune : fortunes) {
+      batch.add(Collections.singletonMap("fortune", fortune));
+
+      if (batch.size() == BULK_SIZE) {
+        statuses.addAll(postFortunes(batch));
+        batch.clear();
+      }
+    }
+
+    if (!batch.isEmpty()) {
+      statuses.addAll(postFortunes(batch));
+    }
+
+    return statuses;
   }
 
   /**
@@ -101,6 +284,151 @@ public class FortuneApiClient {
     this.bearerToken = bearerToken;
   }
 
+  /**
+   * <p>
+   *   Keeps a copy of all the fortunes in the client and serves
+   *   {@link #getFortune()} and {@link #getFortuneAsync()} from it instead of
+   *   calling the API. The copy is loaded before this returns, if the API can
+   *   be reached, and refreshed in the background every interval. When a
+   *   refresh fails the last good copy keeps being used. Until there is a
+   *   copy, fortunes come from the API as usual.
+   * </p>
+   * <p>
+   *   Loading the copy is an authenticated call, so set the bearer token
+   *   first. Fortunes are picked from the copy with equal odds, because the
+   *   weights are not sent with the list. Enabling the cache again replaces
+   *   the old one.
+   * </p>
+   *
+   * @param refreshInterval The time between refreshes, which must be positive
+   */
+  public void enableLocalCache(Duration refreshInterval) {
+    LocalFortuneCache cache = new LocalFortuneCache(this, refreshInterval.toMillis());
+    disableLocalCache();
+    cache.start();
+    localCache = cache;
+  }
+
+  /**
+   * Stops using and refreshing the local copy of the fortunes, if there is
+   * one. Fortunes come from the API again afterwards.
+   */
+  public void disableLocalCache() {
+    LocalFortuneCache cache = localCache;
+    localCache = null;
+    if (cache != null) {
+      cache.stop();
+    }
+  }
+
+  /**
+   * Utility method to pick a fortune from the local copy.
+   *
+   * @return A fortune or <code>null</code> if there is no local copy to
+   *         pick from
+   */
+  private String localFortune() {
+    LocalFortuneCache cache = localCache;
+    return (cache == null) ? null : cache.randomFortune();
+  }
+
+  /**
+   * Utility method to send the body of an add call.
+   *
+   * @param body The body of the call
+   * @return <code>true</code> if added
+   * @throws IOException There is a problem with the call
+   */
+  private boolean postFortune(Map<String, Object> body) throws IOException {
+    Call<RestResponse<Object>> call = api.addFortune(bearerToken, body);
+    return handleAdded(call.execute());
+  }
+
+  /**
+   * Utility method to send one batch of a bulk add.
+   *
+   * @param batch The fortunes to add
+   * @return The outcome for each fortune
+   * @throws IOException There is a problem with the call
+   */
+  private List<InsertStatus> postFortunes(List<Map<String, Object>> batch) throws IOException {
+    Call<RestResponse<List<InsertStatus>>> call = api.addFortunes(bearerToken, batch);
+    return handleResponse(call.execute()).getData();
+  }
+
+  /**
+   * Utility method to make a call asynchronously. The response is handled on
+   * the thread that receives it and the result completes the future. Failed
+   * calls complete it exceptionally with the same exceptions the blocking
+   * calls throw, and cancelling the future cancels the call.
+   *
+   * @param call The call
+   * @param handler Turns the response into the result
+   * @return The future of the result
+   * @param <T> The type of the response
+   * @param <R> The type of the result
+   */
+  private <T, R> CompletableFuture<R> enqueue(Call<T> call, ResponseHandler<T, R> handler) {
+    CompletableFuture<R> future = new CompletableFuture<>();
+    future.whenComplete((result, e) -> {
+      if (future.isCancelled()) {
+        call.cancel();
+      }
+    });
+
+    call.enqueue(new Callback<>() {
+      @Override
+      public void onResponse(Call<T> call, Response<T> response) {
+        try {
+          future.complete(handler.handle(response));
+        } catch (IOException | RuntimeException e) {
+          future.completeExceptionally(e);
+        }
+      }
+
+      @Override
+      public void onFailure(Call<T> call, Throwable failure) {
+        future.completeExceptionally(failure);
+      }
+    });
+
+    return future;
+  }
+
+  /**
+   * Utility method to handle the response to a call for all fortunes,
+   * remembering the list if it came with an <code>ETag</code>.
+   *
+   * @param response The <code>retrofit</code> response
+   * @param cached The list that was remembered when the call was made
+   * @return An unmodifiable list of fortunes
+   * @throws IOException There is a problem obtaining the REST response
+   */
+  private List<String> handleAllFortunes(Response<RestResponse<List<String>>> response, CachedFortunes cached)
+      throws IOException {
+    // Retrofit hands a 304 back as an unsuccessful response with no body
+    if (cached != null && response.code() == HTTP_NOT_MODIFIED) {
+      return cached.fortunes;
+    }
+
+    List<String> fortunes = Collections.unmodifiableList(handleResponse(response).getData());
+    String etag = response.headers().get("ETag");
+    cachedFortunes = (etag == null) ? null : new CachedFortunes(etag, fortunes);
+
+    return fortunes;
+  }
+
+  /**
+   * Utility method to handle the response to an add call.
+   *
+   * @param response The <code>retrofit</code> response
+   * @return <code>true</code> if added
+   * @throws IOException There is a problem obtaining the REST response
+   */
+  private boolean handleAdded(Response<RestResponse<Object>> response) throws IOException {
+    return (handleResponse(response).getStatus() == RestResponseStatus.success);
+  }
+
   /**
    * Utility method to do the repetitive task of parsing response objects.
    *
@@ -139,4 +467,98 @@ public class FortuneApiClient {
   public static void main(String[] args) {
     System.exit(new CommandLine(new FortuneApiClientCli()).execute(args));
   }
+
+  /**
+   * Iterates over the pages of fortunes, fetching the next page only when the
+   * current one runs out.
+   */
+  private class FortunePageIterator implements Iterator<String> {
+    private final int pageSize;
+    private Iterator<String> page = Collections.emptyIterator();
+    private String cursor;
+    private boolean lastPage;
+
+    /**
+     * Creates a new iterator. Nothing is fetched until it is used.
+     *
+     * @param pageSize The number of fortunes to fetch per call
+     */
+    FortunePageIterator(int pageSize) {
+      this.pageSize = pageSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+      // Keep going in case the server ever hands back an empty page that is not the last
+      while (!page.hasNext() && !lastPage) {
+        fetchPage();
+      }
+
+      return page.hasNext();
+    }
+
+    @Override
+    public String next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+
+      return page.next();
+    }
+
+    /**
+     * Fetches the next page of fortunes.
+     */
+    private void fetchPage() {
+      try {
+        Call<RestResponse<List<String>>> call = api.getFortunePage(bearerToken, pageSize, cursor);
+        RestResponse<List<String>> response = handleResponse(call.execute());
+
+        List<String> fortunes = response.getData();
+        page = (fortunes == null) ? Collections.emptyIterator() : fortunes.iterator();
+        cursor = response.getCursor();
+        lastPage = (cursor == null);
+
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /**
+   * The last list of all fortunes and the entity tag it was sent with.
+   */
+  private static class CachedFortunes {
+    private final String etag;
+    private final List<String> fortunes;
+
+    /**
+     * Creates a new cache entry.
+     *
+     * @param etag The entity tag
+     * @param fortunes The fortunes
+     */
+    CachedFortunes(String etag, List<String> fortunes) {
+      this.etag = etag;
+      this.fortunes = fortunes;
+    }
+  }
+
+  /**
+   * Turns the response to a call into its result.
+   *
+   * @param <T> The type of the response
+   * @param <R> The type of the result
+   */
+  @FunctionalInterface
+  private interface ResponseHandler<T, R> {
+    /**
+     * Handles the response.
+     *
+     * @param response The <code>retrofit</code> response
+     * @return The result
+     * @throws IOException There is a problem obtaining the REST response
+     */
+    R handle(Response<T> response) throws IOException;
+  }
 }
@@ -86,4 +86,48 @@ public interface FortuneApiClientConfig extends Config {
   @Nullable
   @Key("FORTUNE_SSL_CERTS")
   String sslCerts();
+
+  /**
+   * Determines if HTTP/2 should be spoken without TLS from the first byte
+   * (h2c with prior knowledge). This only works with <code>http</code> URLs
+   * of a server that accepts h2c. Over <code>https</code>, HTTP/2 is always
+   * preferred and negotiated through ALPN.
+   *
+   * @return <code>true</code> if h2c is used
+   */
+  @Key("FORTUNE_H2C_PRIOR_KNOWLEDGE")
+  @DefaultValue("false")
+  @Value.Default
+  default boolean h2cPriorKnowledge() {
+    return false;
+  }
+
+  /**
+   * The most asynchronous calls that can be in flight at once. Calls beyond
+   * that wait in a queue without holding a thread. Blocking calls are not
+   * limited. Zero keeps the OkHttp default.
+   *
+   * @return The maximum number of calls
+   */
+  @Key("FORTUNE_MAX_REQUESTS")
+  @DefaultValue("64")
+  @Value.Default
+  default int maxRequests() {
+    return 64;
+  }
+
+  /**
+   * The most asynchronous calls that can be in flight at once to the same
+   * host. Over HTTP/2 they share one connection, so this can be raised well
+   * past the number of connections the server would otherwise see. Zero
+   * keeps the OkHttp default.
+   *
+   * @return The maximum number of calls per host
+   */
+  @Key("FORTUNE_MAX_REQUESTS_PER_HOST")
+  @DefaultValue("5")
+  @Value.Default
+  default int maxRequestsPerHost() {
+    return 5;
+  }
 }
@@ -0,0 +1,112 @@
+package net.shinton.fortune.client;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ *   Keeps a copy of every fortune on the client so random fortunes can be
+ *   picked without a call to the API. The copy is loaded with
+ *   {@link FortuneApiClient#getAllFortunes()} and refreshed on a daemon
+ *   thread, which costs next to nothing while the fortunes are unchanged
+ *   since the API answers with a <code>304 Not Modified</code>.
+ * </p>
+ * <p>
+ *   A refresh that fails leaves the last good copy in place, so fortunes
+ *   keep coming while the API is unreachable. Until the first load succeeds
+ *   it is retried more often than the refresh interval.
+ * </p>
+ */
+class LocalFortuneCache {
+  private static final Logger log = LoggerFactory.getLogger(LocalFortuneCache.class);
+
+  /**
+   * The longest wait between attempts while there is no copy yet, in
+   * milliseconds.
+   */
+  private static final long RETRY_MILLIS = 10_000;
+
+  private final FortuneApiClient client;
+  private final long refreshMillis;
+  private final ScheduledExecutorService scheduler;
+  private volatile List<String> fortunes = List.of();
+
+  /**
+   * Creates a new cache. Nothing is loaded until {@link #start()} is called.
+   *
+   * @param client The client to load the fortunes with
+   * @param refreshMillis The time between refreshes in milliseconds
+   */
+  LocalFortuneCache(FortuneApiClient client, long refreshMillis) {
+    if (refreshMillis <= 0) {
+      throw new IllegalArgumentException("The refresh interval must be positive");
+    }
+
+    this.client = client;
+    this.refreshMillis = refreshMillis;
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "fortune-cache-refresh");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Loads the fortunes on the calling thread and schedules the refreshes.
+   */
+  void start() {
+    refresh();
+  }
+
+  /**
+   * Stops refreshing. The copy already loaded can still be used.
+   */
+  void stop() {
+    scheduler.shutdownNow();
+  }
+
+  /**
+   * Picks a fortune from the copy at random. Every fortune is equally
+   * likely, since the API does not send the weights with the list.
+   *
+   * @return A fortune or <code>null</code> if there is no copy yet or it is
+   *         empty
+   */
+  String randomFortune() {
+    List<String> current = fortunes;
+    if (current.isEmpty()) {
+      return null;
+    }
+
+    return current.get(ThreadLocalRandom.current().nextInt(current.size()));
+  }
+
+  /**
+   * Loads the fortunes, keeping the last copy if that fails, and schedules
+   * the next refresh.
+   */
+  private void refresh() {
+    long delay = refreshMillis;
+    try {
+      fortunes = client.getAllFortunes();
+    } catch (IOException | RuntimeException e) {
+      log.warn("Unable to refresh the local fortunes, keeping the last copy: {}", e.getMessage());
+      if (fortunes.isEmpty()) {
+        delay = Math.min(refreshMillis, RETRY_MILLIS);
+      }
+    }
+
+    try {
+      scheduler.schedule(this::refresh, delay, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      // Stopped while refreshing, so there is nothing left to schedule
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package net.shinton.fortune.client.bench;
+
+import java.io.IOException;
+import net.shinton.fortune.client.FortuneApiClient;
+
+/**
+ * The calls the load generator can make. The calls other than {@link #GET}
+ * are authenticated, so the client needs a bearer token to make them.
+ */
+public enum BenchOperation {
+  /**
+   * Gets a random fortune.
+   */
+  GET {
+    @Override
+    boolean call(FortuneApiClient client, String fortune) throws IOException {
+      return client.getFortune() != null;
+    }
+  },
+
+  /**
+   * Gets all the fortunes. The client remembers the last list, so unless
+   * fortunes were added since, the server only answers that nothing changed.
+   */
+  GET_ALL {
+    @Override
+    boolean call(FortuneApiClient client, String fortune) throws IOException {
+      return client.getAllFortunes() != null;
+    }
+  },
+
+  /**
+   * Adds a fortune.
+   */
+  POST {
+    @Override
+    boolean call(FortuneApiClient client, String fortune) throws IOException {
+      return client.addFortune(fortune);
+    }
+  };
+
+  /**
+   * Makes the call.
+   *
+   * @param client The client to make the call with
+   * @param fortune A fortune that has never been added, for calls that add one
+   * @return <code>true</code> if the call succeeded
+   * @throws IOException There is a problem with the call
+   */
+  abstract boolean call(FortuneApiClient client, String fortune) throws IOException;
+}
@@ -0,0 +1,176 @@
+package net.shinton.fortune.client.bench;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import net.shinton.fortune.client.FortuneApiClient;
+
+/**
+ * <p>
+ *   Drives a Fortune API at a fixed rate to find out what latency it gives
+ *   at that rate. The load is open: call <i>n</i> is meant to start
+ *   <i>n</i> intervals after the run starts, no matter how long the calls
+ *   before it took. A pool of workers takes the calls in order, waits for
+ *   the moment each is meant to start, and makes it.
+ * </p>
+ * <p>
+ *   When the server slows down and every worker is busy, calls start late.
+ *   Their latency is measured from when they were meant to start, which is
+ *   what a client sending at that rate would have seen. Measuring from when
+ *   they did start would hide the stall, which is known as coordinated
+ *   omission.
+ * </p>
+ * <p>
+ *   The operations are mixed by weight in a fixed order that is the same on
+ *   every run. Calls meant to start during the warm-up are made but not
+ *   reported.
+ * </p>
+ */
+public class LoadGenerator {
+  /**
+   * The seed used to shuffle the mix, so every run makes the same calls in
+   * the same order.
+   */
+  private static final long MIX_SEED = 0x5EED;
+
+  /**
+   * How long the workers get to start before the first call is due.
+   */
+  private static final long START_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private final FortuneApiClient client;
+  private final double intervalNanos;
+  private final int concurrency;
+  private final long durationNanos;
+  private final long warmupNanos;
+  private final BenchOperation[] schedule;
+  private final String runId = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+
+  /**
+   * Creates a new load generator.
+   *
+   * @param client The client to make the calls with
+   * @param rate The number of calls to start per second
+   * @param concurrency The number of calls that can be in flight at once
+   * @param duration How long to measure for
+   * @param warmup How long to run before measuring
+   * @param mix The relative weight of each operation
+   * @throws IllegalArgumentException A setting is out of range
+   */
+  public LoadGenerator(FortuneApiClient client, double rate, int concurrency, Duration duration, Duration warmup,
+                       Map<BenchOperation, Integer> mix) {
+    if (rate <= 0 || concurrency <= 0) {
+      throw new IllegalArgumentException("The rate and concurrency must be positive");
+    }
+
+    if (duration.isNegative() || duration.isZero() || warmup.isNegative()) {
+      throw new IllegalArgumentException("The duration must be positive and the warm-up cannot be negative");
+    }
+
+    this.client = client;
+    this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+    this.concurrency = concurrency;
+    this.durationNanos = duration.toNanos();
+    this.warmupNanos = warmup.toNanos();
+    this.schedule = newSchedule(mix);
+  }
+
+  /**
+   * Runs the load and waits for the last call to finish.
+   *
+   * @return The report of the measured part of the run
+   * @throws InterruptedException The thread was interrupted while waiting
+   */
+  public LoadReport run() throws InterruptedException {
+    final long start = System.nanoTime() + START_DELAY_NANOS;
+    final long measureFrom = start + warmupNanos;
+    final long end = measureFrom + durationNanos;
+    final LoadReport report = new LoadReport(measureFrom, end);
+    final AtomicLong next = new AtomicLong();
+
+    List<Thread> workers = new ArrayList<>(concurrency);
+    for (int i = 0; i < concurrency; i++) {
+      Thread worker = new Thread(() -> work(next, start, measureFrom, end, report), "fortune-bench-" + i);
+      worker.setDaemon(true);
+      worker.start();
+      workers.add(worker);
+    }
+
+    for (Thread worker : workers) {
+      worker.join();
+    }
+
+    return report;
+  }
+
+  /**
+   * The loop each worker runs. It takes the next call, waits until it is due
+   * and makes it, until the next call is due after the end of the run.
+   *
+   * @param next The number of the next call
+   * @param start When the first call is due
+   * @param measureFrom When the first call that is reported is due
+   * @param end When the run is over
+   * @param report The report to record the calls in
+   */
+  private void work(AtomicLong next, long start, long measureFrom, long end, LoadReport report) {
+    while (true) {
+      long number = next.getAndIncrement();
+      long intended = start + (long) (number * intervalNanos);
+      if (intended >= end) {
+        return;
+      }
+
+      for (long wait = intended - System.nanoTime(); wait > 0; wait = intended - System.nanoTime()) {
+        LockSupport.parkNanos(wait);
+      }
+
+      BenchOperation operation = schedule[(int) (number % schedule.length)];
+      String error;
+      try {
+        error = operation.call(client, "Benchmark fortune " + runId + "-" + number) ? null : "The call was not successful";
+      } catch (IOException | RuntimeException e) {
+        error = String.valueOf(e.getMessage());
+      }
+
+      if (intended >= measureFrom) {
+        report.record(operation, intended, System.nanoTime(), error);
+      }
+    }
+  }
+
+  /**
+   * Utility method to lay the operations out in the order they are made.
+   * Each operation appears as many times as its weight, shuffled so that
+   * the heavy and light ones are spread out.
+   *
+   * @param mix The relative weight of each operation
+   * @return The order of the operations
+   * @throws IllegalArgumentException A weight is negative or they are all zero
+   */
+  private static BenchOperation[] newSchedule(Map<BenchOperation, Integer> mix) {
+    List<BenchOperation> schedule = new ArrayList<>();
+    for (BenchOperation operation : BenchOperation.values()) {
+      int weight = mix.getOrDefault(operation, 0);
+      if (weight < 0) {
+        throw new IllegalArgumentException("Weights cannot be negative: " + weight);
+      }
+
+      schedule.addAll(Collections.nCopies(weight, operation));
+    }
+
+    if (schedule.isEmpty()) {
+      throw new IllegalArgumentException("At least one operation needs a weight");
+    }
+
+    Collections.shuffle(schedule, new Random(MIX_SEED));
+    return schedule.toArray(new BenchOperation[0]);
+  }
+}
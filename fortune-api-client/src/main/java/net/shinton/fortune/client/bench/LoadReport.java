@@ -0,0 +1,119 @@
+package net.shinton.fortune.client.bench;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import net.shinton.util.LatencyHistogram;
+
+/**
+ * The outcome of a load test: the latency of every call that succeeded and
+ * the number that failed, by operation, over the measured part of the run.
+ * The latency of a call is measured from the moment it was meant to start,
+ * not the moment it did, so time spent waiting for a free worker counts.
+ */
+public class LoadReport {
+  private final Map<BenchOperation, LatencyHistogram> latencies = new EnumMap<>(BenchOperation.class);
+  private final Map<BenchOperation, AtomicLong> errors = new EnumMap<>(BenchOperation.class);
+  private final Map<BenchOperation, AtomicReference<String>> firstErrors = new EnumMap<>(BenchOperation.class);
+  private final LatencyHistogram total = new LatencyHistogram();
+  private final AtomicLong lastDone = new AtomicLong();
+  private final long measureFrom;
+
+  /**
+   * Creates an empty report.
+   *
+   * @param measureFrom When the measured part of the run starts, from {@link System#nanoTime()}
+   * @param measureUntil When the last call of the run is meant to start, from {@link System#nanoTime()}
+   */
+  LoadReport(long measureFrom, long measureUntil) {
+    this.measureFrom = measureFrom;
+    for (BenchOperation operation : BenchOperation.values()) {
+      latencies.put(operation, new LatencyHistogram());
+      errors.put(operation, new AtomicLong());
+      firstErrors.put(operation, new AtomicReference<>());
+    }
+
+    lastDone.set(measureUntil);
+  }
+
+  /**
+   * Records the outcome of a call.
+   *
+   * @param operation The operation
+   * @param intended When the call was meant to start, from {@link System#nanoTime()}
+   * @param done When the call finished, from {@link System#nanoTime()}
+   * @param error Why the call failed or <code>null</code> if it succeeded
+   */
+  void record(BenchOperation operation, long intended, long done, String error) {
+    if (error == null) {
+      latencies.get(operation).record(done - intended);
+      total.record(done - intended);
+    } else {
+      errors.get(operation).incrementAndGet();
+      firstErrors.get(operation).compareAndSet(null, error);
+    }
+
+    lastDone.accumulateAndGet(done, Math::max);
+  }
+
+  /**
+   * Gets the latencies of the calls of one operation that succeeded.
+   *
+   * @param operation The operation
+   * @return The latencies
+   */
+  public LatencyHistogram getLatencies(BenchOperation operation) {
+    return latencies.get(operation);
+  }
+
+  /**
+   * Gets the latencies of all the calls that succeeded.
+   *
+   * @return The latencies
+   */
+  public LatencyHistogram getLatencies() {
+    return total;
+  }
+
+  /**
+   * Gets the number of calls of one operation that failed.
+   *
+   * @param operation The operation
+   * @return The number of errors
+   */
+  public long getErrors(BenchOperation operation) {
+    return errors.get(operation).get();
+  }
+
+  /**
+   * Gets the number of calls that failed.
+   *
+   * @return The number of errors
+   */
+  public long getErrors() {
+    return errors.values().stream().mapToLong(AtomicLong::get).sum();
+  }
+
+  /**
+   * Gets why the first call of one operation that failed did, so a run that
+   * fails every call does not need a line per call to explain itself.
+   *
+   * @param operation The operation
+   * @return The reason or <code>null</code> if no call failed
+   */
+  public String getFirstError(BenchOperation operation) {
+    return firstErrors.get(operation).get();
+  }
+
+  /**
+   * Gets the number of calls that succeeded per second, from the start of the
+   * measured part of the run until it was over and the last call finished.
+   *
+   * @return The throughput
+   */
+  public double getThroughput() {
+    long elapsed = lastDone.get() - measureFrom;
+    return (elapsed <= 0) ? 0.0 : total.getCount() * 1e9 / elapsed;
+  }
+}
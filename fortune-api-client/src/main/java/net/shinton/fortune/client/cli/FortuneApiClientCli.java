@@ -1,11 +1,29 @@
 package net.shinton.fortune.client.cli;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import net.shinton.annotation.SuppressForbidden;
 import net.shinton.fortune.client.FortuneApiClient;
 import net.shinton.fortune.client.FortuneApiClientConfig;
 import net.shinton.fortune.client.ImmutableFortuneApiClientConfig;
+import net.shinton.fortune.client.bench.BenchOperation;
+import net.shinton.fortune.client.bench.LoadGenerator;
+import net.shinton.fortune.client.bench.LoadReport;
 import net.shinton.fortune.client.factory.FortuneApiClientFactory;
+import net.shinton.fortune.model.InsertStatus;
+import net.shinton.util.BearerTokenTool;
+import net.shinton.util.LatencyHistogram;
+import org.apache.commons.lang3.StringUtils;
 import picocli.CommandLine;
 
 /**
@@ -17,7 +35,8 @@ import picocli.CommandLine;
     mixinStandardHelpOptions = true,
     version = "FortuneApiClient 1.0",
     description = "Utility for querying fortune api",
-    subcommands = {FortuneApiClientCli.Get.class, FortuneApiClientCli.GetAll.class, FortuneApiClientCli.Add.class})
+    subcommands = {FortuneApiClientCli.Get.class, FortuneApiClientCli.GetAll.class, FortuneApiClientCli.Search.class,
+        FortuneApiClientCli.Add.class, FortuneApiClientCli.Import.class, FortuneApiClientCli.Bench.class})
 public class FortuneApiClientCli {
   @SuppressForbidden(reason = "System#out")
   @CommandLine.Command(name = "get", description = "Get a new fortune")
@@ -27,6 +46,11 @@ public class FortuneApiClientCli {
         required = true)
     private String url;
 
+    @CommandLine.Option(names = {"-n", "--count"},
+        description = "The number of distinct fortunes to get (default: ${DEFAULT-VALUE}).",
+        defaultValue = "1")
+    private int count;
+
     @Override
     public Integer call() throws Exception {
       FortuneApiClientConfig config = ImmutableFortuneApiClientConfig.builder()
@@ -38,7 +62,14 @@ public class FortuneApiClientCli {
 
       FortuneApiClient client = new FortuneApiClientFactory().newFortuneApiClient(config);
 
-      System.out.println(client.getFortune());
+      if (count == 1) {
+        System.out.println(client.getFortune());
+      } else {
+        for (String fortune : client.getFortunes(count)) {
+          System.out.println(fortune);
+        }
+      }
+
       return 0;
     }
   }
@@ -56,6 +87,11 @@ public class FortuneApiClientCli {
         required = true)
     private String bearerToken;
 
+    @CommandLine.Option(names = {"-p", "--page-size"},
+        description = "The number of fortunes to fetch per call (default: ${DEFAULT-VALUE}).",
+        defaultValue = "500")
+    private int pageSize;
+
     @Override
     public Integer call() throws Exception {
       FortuneApiClientConfig config = ImmutableFortuneApiClientConfig.builder()
@@ -68,7 +104,46 @@ public class FortuneApiClientCli {
       FortuneApiClient client = new FortuneApiClientFactory().newFortuneApiClient(config);
       client.updateBearerToken(bearerToken);
 
-      for (String fortune : client.getAllFortunes()) {
+      // Page through the fortunes so that only one page is ever held in memory
+      Iterator<String> fortunes = client.getFortuneIterator(pageSize);
+      while (fortunes.hasNext()) {
+        System.out.println(fortunes.next());
+      }
+
+      return 0;
+    }
+  }
+
+  @SuppressForbidden(reason = "System#out")
+  @CommandLine.Command(name = "search", description = "Search the fortunes")
+  static class Search implements Callable<Integer> {
+    @CommandLine.Option(names = {"-u", "--url"},
+        description = "The base url of the Fortune API. For example: http://fortune.shinton.net.",
+        required = true)
+    private String url;
+
+    @CommandLine.Option(names = {"-q", "--query"},
+        description = "The words to search for.",
+        required = true)
+    private String query;
+
+    @CommandLine.Option(names = {"-n", "--limit"},
+        description = "The most fortunes to return (default: ${DEFAULT-VALUE}).",
+        defaultValue = "10")
+    private int limit;
+
+    @Override
+    public Integer call() throws Exception {
+      FortuneApiClientConfig config = ImmutableFortuneApiClientConfig.builder()
+          .baseUrl(url)
+          .connectTimeout(10_000L)
+          .readTimeout(10_000L)
+          .writeTimeout(10_000L)
+          .build();
+
+      FortuneApiClient client = new FortuneApiClientFactory().newFortuneApiClient(config);
+
+      for (String fortune : client.search(query, limit)) {
         System.out.println(fortune);
       }
 
@@ -94,6 +169,11 @@ public class FortuneApiClientCli {
         required = true)
     private String fortune;
 
+    @CommandLine.Option(names = {"-w", "--weight"},
+        description = "How often the fortune is picked relative to the others (default: ${DEFAULT-VALUE}).",
+        defaultValue = "1.0")
+    private double weight;
+
     @Override
     public Integer call() throws Exception {
       FortuneApiClientConfig config = ImmutableFortuneApiClientConfig.builder()
@@ -106,7 +186,7 @@ public class FortuneApiClientCli {
       FortuneApiClient client = new FortuneApiClientFactory().newFortuneApiClient(config);
       client.updateBearerToken(bearerToken);
 
-      if (client.addFortune(fortune)) {
+      if (client.addFortune(fortune, weight)) {
         System.out.println("Fortune successfully added");
       } else {
         System.out.println("Unable to add fortune");
@@ -115,4 +195,170 @@ public class FortuneApiClientCli {
       return 0;
     }
   }
+
+  @SuppressForbidden(reason = "System#out")
+  @CommandLine.Command(name = "import", description = "Add every fortune in a file, one per line")
+  static class Import implements Callable<Integer> {
+    @CommandLine.Option(names = {"-u", "--url"},
+        description = "The base url of the Fortune API. For example: http://fortune.shinton.net.",
+        required = true)
+    private String url;
+
+    @CommandLine.Option(names = {"-a", "--auth-token"},
+        description = "The bearer token to use to authenticate this call.",
+        required = true)
+    private String bearerToken;
+
+    @CommandLine.Option(names = {"-i", "--input"},
+        description = "The UTF-8 file of fortunes. Blank lines are skipped.",
+        required = true)
+    private Path input;
+
+    @Override
+    public Integer call() throws Exception {
+      FortuneApiClientConfig config = ImmutableFortuneApiClientConfig.builder()
+          .baseUrl(url)
+          .connectTimeout(10_000L)
+          .readTimeout(60_000L)
+          .writeTimeout(60_000L)
+          .build();
+
+      FortuneApiClient client = new FortuneApiClientFactory().newFortuneApiClient(config);
+      client.updateBearerToken(bearerToken);
+
+      List<String> fortunes = Files.readAllLines(input, StandardCharsets.UTF_8).stream()
+          .filter(StringUtils::isNotBlank)
+          .collect(Collectors.toList());
+
+      Map<InsertStatus, Long> counts = client.addFortunes(fortunes).stream()
+          .collect(Collectors.groupingBy(Function.identity(), () -> new EnumMap<>(InsertStatus.class), Collectors.counting()));
+
+      for (InsertStatus status : InsertStatus.values()) {
+        System.out.println(status + ": " + counts.getOrDefault(status, 0L));
+      }
+
+      return 0;
+    }
+  }
+
+  @SuppressForbidden(reason = "System#out")
+  @CommandLine.Command(name = "bench", description = "Drive the API at a fixed rate and report the latency")
+  static class Bench implements Callable<Integer> {
+    private static final double[] PERCENTILES = {50.0, 90.0, 99.0, 99.9};
+
+    @CommandLine.Option(names = {"-u", "--url"},
+        description = "The base url of the Fortune API. For example: http://fortune.shinton.net.",
+        required = true)
+    private String url;
+
+    @CommandLine.Option(names = {"-r", "--rate"},
+        description = "The number of calls to start per second (default: ${DEFAULT-VALUE}).",
+        defaultValue = "100")
+    private double rate;
+
+    @CommandLine.Option(names = {"-c", "--concurrency"},
+        description = "The most calls in flight at once (default: ${DEFAULT-VALUE}).",
+        defaultValue = "16")
+    private int concurrency;
+
+    @CommandLine.Option(names = {"-d", "--duration"},
+        description = "The number of seconds to measure for (default: ${DEFAULT-VALUE}).",
+        defaultValue = "60")
+    private int duration;
+
+    @CommandLine.Option(names = {"-w", "--warmup"},
+        description = "The number of seconds to run before measuring (default: ${DEFAULT-VALUE}).",
+        defaultValue = "10")
+    private int warmup;
+
+    @CommandLine.Option(names = {"-m", "--mix"},
+        description = "The relative weight of each of ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE}).",
+        split = ",",
+        defaultValue = "GET=100")
+    private Map<BenchOperation, Integer> mix;
+
+    @CommandLine.Option(names = {"-a", "--auth-token"},
+        description = "The bearer token to use for GET_ALL and POST.")
+    private String bearerToken;
+
+    @CommandLine.Option(names = {"-k", "--signing-key"},
+        description = "A Base64 encoded HS512 signing key to generate the bearer token with instead.")
+    private String signingKey;
+
+    @CommandLine.Option(names = {"-p", "--public-host"},
+        description = "The public hostname of the api (e.g. fortune.shinton.net), to generate the bearer token with.")
+    private String publicHost;
+
+    @CommandLine.Option(names = {"--api-path"},
+        description = "The API path for the generated bearer token (default: ${DEFAULT-VALUE}).",
+        defaultValue = "/api/v1/fortune")
+    private String apiPath;
+
+    @Override
+    public Integer call() throws Exception {
+      FortuneApiClientConfig config = ImmutableFortuneApiClientConfig.builder()
+          .baseUrl(url)
+          .connectTimeout(10_000L)
+          .readTimeout(10_000L)
+          .writeTimeout(10_000L)
+          .build();
+
+      FortuneApiClient client = new FortuneApiClientFactory().newFortuneApiClient(config);
+
+      if (signingKey != null) {
+        if (publicHost == null) {
+          System.out.println("A public host is needed to generate a bearer token");
+          return 2;
+        }
+
+        // The token has to outlive the run, with some room for calls that run over
+        int expiresIn = warmup + duration + 300;
+        bearerToken = new BearerTokenTool(signingKey, publicHost).generate(expiresIn, apiPath);
+      }
+
+      client.updateBearerToken(bearerToken);
+
+      System.out.printf(Locale.ROOT, "Running %s at %.1f calls/s with up to %d in flight for %d s after %d s of warm-up%n",
+          mix, rate, concurrency, duration, warmup);
+
+      LoadReport report = new LoadGenerator(client, rate, concurrency, Duration.ofSeconds(duration),
+          Duration.ofSeconds(warmup), mix).run();
+
+      System.out.printf(Locale.ROOT, "%-8s %10s %8s %10s %10s %10s %10s %10s%n",
+          "", "calls", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+      for (BenchOperation operation : BenchOperation.values()) {
+        if (mix.getOrDefault(operation, 0) > 0) {
+          printLine(operation.name(), report.getLatencies(operation), report.getErrors(operation));
+        }
+      }
+
+      printLine("total", report.getLatencies(), report.getErrors());
+      System.out.printf(Locale.ROOT, "Throughput: %.1f calls/s%n", report.getThroughput());
+
+      for (BenchOperation operation : BenchOperation.values()) {
+        if (report.getFirstError(operation) != null) {
+          System.out.println("First " + operation + " error: " + report.getFirstError(operation));
+        }
+      }
+
+      return (report.getErrors() == 0) ? 0 : 1;
+    }
+
+    /**
+     * Utility method to print the latencies and errors of one operation.
+     *
+     * @param name The name of the operation
+     * @param latencies The latencies of the calls that succeeded
+     * @param errors The number of calls that failed
+     */
+    private static void printLine(String name, LatencyHistogram latencies, long errors) {
+      StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "%-8s %10d %8d", name, latencies.getCount(), errors));
+      for (double percentile : PERCENTILES) {
+        line.append(String.format(Locale.ROOT, " %10.3f", latencies.getValueAtPercentile(percentile) / 1000.0));
+      }
+
+      line.append(String.format(Locale.ROOT, " %10.3f", latencies.getValueAtPercentile(100.0) / 1000.0));
+      System.out.println(line);
+    }
+  }
 }
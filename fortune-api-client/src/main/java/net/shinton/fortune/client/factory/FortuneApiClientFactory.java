@@ -4,6 +4,7 @@ import java.security.KeyManagementException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocketFactory;
@@ -15,7 +16,9 @@ import net.shinton.fortune.client.FortuneApiClient;
 import net.shinton.fortune.client.FortuneApiClientConfig;
 import net.shinton.fortune.factory.KeystoreFactory;
 import net.shinton.fortune.factory.ObjectMapperFactory;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import retrofit2.Retrofit;
 import retrofit2.converter.jackson.JacksonConverterFactory;
 
@@ -36,11 +39,53 @@ public class FortuneApiClientFactory {
   public FortuneApiClient newFortuneApiClient(FortuneApiClientConfig config) throws
       NoSuchAlgorithmException, KeyStoreException, KeyManagementException {
 
+    // Initialize Retrofit
+    Retrofit retrofit = new Retrofit.Builder()
+        .baseUrl(config.baseUrl())
+        .client(newHttpClient(config))
+        .addConverterFactory(JacksonConverterFactory.create(
+            new ObjectMapperFactory().newMapper()))
+        .build();
+
+    // Create the client interface
+    return new FortuneApiClient(retrofit.create(FortuneApi.class));
+  }
+
+  /**
+   * Create the HTTP client used to talk to the Fortune API. HTTP/2 is
+   * preferred so that concurrent calls share one connection instead of each
+   * opening its own. The dispatcher that runs asynchronous calls is limited
+   * as the config asks.
+   *
+   * @param config The configuration
+   * @return A new HTTP client
+   * @throws NoSuchAlgorithmException There is a problem initializing the trust
+   *         manager used for SSL
+   * @throws KeyStoreException There is a problem initializing the keystore
+   * @throws KeyManagementException SSL cannot be initialized
+   */
+  public OkHttpClient newHttpClient(FortuneApiClientConfig config) throws
+      NoSuchAlgorithmException, KeyStoreException, KeyManagementException {
+
     // Initialize the HTTP Client
     OkHttpClient.Builder builder = new OkHttpClient.Builder()
         .connectTimeout(config.connectTimeout(), TimeUnit.MILLISECONDS)
         .readTimeout(config.readTimeout(), TimeUnit.MILLISECONDS)
-        .writeTimeout(config.writeTimeout(), TimeUnit.MILLISECONDS);
+        .writeTimeout(config.writeTimeout(), TimeUnit.MILLISECONDS)
+        .protocols(config.h2cPriorKnowledge() ?
+            List.of(Protocol.H2_PRIOR_KNOWLEDGE) :
+            List.of(Protocol.HTTP_2, Protocol.HTTP_1_1));
+
+    Dispatcher dispatcher = new Dispatcher();
+    if (config.maxRequests() > 0) {
+      dispatcher.setMaxRequests(config.maxRequests());
+    }
+
+    if (config.maxRequestsPerHost() > 0) {
+      dispatcher.setMaxRequestsPerHost(config.maxRequestsPerHost());
+    }
+
+    builder.dispatcher(dispatcher);
 
     // Configure any self-signed certificates
     if (config.sslCerts() != null) {
@@ -59,15 +104,6 @@ public class FortuneApiClientFactory {
       builder.sslSocketFactory(sslSocketFactory, x509TrustManager);
     }
 
-    // Initialize Retrofit
-    Retrofit retrofit = new Retrofit.Builder()
-        .baseUrl(config.baseUrl())
-        .client(builder.build())
-        .addConverterFactory(JacksonConverterFactory.create(
-            new ObjectMapperFactory().newMapper()))
-        .build();
-
-    // Create the client interface
-    return new FortuneApiClient(retrofit.create(FortuneApi.class));
+    return builder.build();
   }
 }
@@ -2,18 +2,40 @@ package net.shinton.fortune;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import net.shinton.fortune.client.FortuneApiClient;
 import net.shinton.fortune.client.FortuneApiClientConfig;
+import net.shinton.fortune.client.bench.BenchOperation;
+import net.shinton.fortune.client.bench.LoadGenerator;
+import net.shinton.fortune.client.bench.LoadReport;
 import net.shinton.fortune.client.factory.FortuneApiClientFactory;
+import net.shinton.fortune.model.InsertStatus;
 import net.shinton.util.BearerTokenTool;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
 import org.apache.commons.lang3.StringUtils;
 import org.jdbi.v3.core.Jdbi;
 import org.junit.BeforeClass;
@@ -34,6 +56,7 @@ public class FortuneApiClientTest {
   private static final String API_PATH = "/api/v1/fortune";
   private static final String PUBLIC_HOST = "localhost";
   private static String bearerToken;
+  private static String metricsToken;
 
   private static final String CERTS =
       "LS0tLS1CRUdJTiBDRVJUSUZJQ0FURS0tLS0tCk1JSURpVENDQW5HZ0F3SUJBZ0lKQUxHM" +
@@ -107,6 +130,8 @@ public class FortuneApiClientTest {
 
     bearerToken = new BearerTokenTool(signingKey, PUBLIC_HOST)
         .generate(300, API_PATH);
+    metricsToken = new BearerTokenTool(signingKey, PUBLIC_HOST)
+        .generate(300, "/metrics");
 
     /*
      * Configure the API to create a server running on a random port with an
@@ -120,6 +145,201 @@ public class FortuneApiClientTest {
     when(apiConfig.sslCerts()).thenReturn(CERTS);
     when(apiConfig.jwtSigningKey()).thenReturn(signingKey);
     when(apiConfig.publicHost()).thenReturn(PUBLIC_HOST);
+    when(apiConfig.streamingEnabled()).thenReturn(true);
+    when(apiConfig.precompressionEnabled()).thenReturn(true);
+    when(apiConfig.http2Enabled()).thenReturn(true);
+    when(apiConfig.metricsEnabled()).thenReturn(true);
+    when(apiConfig.serverTimingEnabled()).thenReturn(true);
+    when(apiConfig.serverTimingLogEvery()).thenReturn(1);
+  }
+
+  /**
+   * Tests that responses say where the time went.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testServerTiming() throws Exception {
+    try (FortuneApi fortuneApi = new FortuneApi(apiConfig)) {
+      // Run the server
+      fortuneApi.run();
+
+      for (String localAddress : fortuneApi.getLocalAddresses()) {
+        FortuneApiClientConfig clientConfig = mock(FortuneApiClientConfig.class);
+        when(clientConfig.sslCerts()).thenReturn(CERTS);
+
+        OkHttpClient httpClient = new FortuneApiClientFactory().newHttpClient(clientConfig);
+        try (Response response = httpClient.newCall(new Request.Builder().url(localAddress + API_PATH).build()).execute()) {
+          String timing = response.header("Server-Timing");
+          assertNotNull(timing);
+          assertTrue(timing, timing.contains("db;desc=\"Database\";dur="));
+          assertTrue(timing, timing.contains("ser;desc=\"Serialization\";dur="));
+          assertTrue(timing, timing.contains("total;desc=\"Handler\";dur="));
+        }
+
+        // A streamed response has already sent its headers, so this one is a plain JSON response
+        Request request = new Request.Builder()
+            .url(localAddress + API_PATH)
+            .header("Authorization", bearerToken)
+            .post(RequestBody.create(MediaType.get("application/json"), "{\"fortune\":\"Time will tell.\"}"))
+            .build();
+        try (Response response = httpClient.newCall(request).execute()) {
+          assertEquals(201, response.code());
+          assertTrue(response.header("Server-Timing").contains("auth;desc=\"Authorization\";dur="));
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests that requests made through the client show up in the metrics.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testMetrics() throws Exception {
+    try (FortuneApi fortuneApi = new FortuneApi(apiConfig)) {
+      // Run the server
+      fortuneApi.run();
+
+      for (String localAddress : fortuneApi.getLocalAddresses()) {
+        FortuneApiClientConfig clientConfig = mock(FortuneApiClientConfig.class);
+        when(clientConfig.baseUrl()).thenReturn(localAddress);
+        when(clientConfig.sslCerts()).thenReturn(CERTS);
+
+        FortuneApiClient client = new FortuneApiClientFactory().newFortuneApiClient(clientConfig);
+        assertTrue(StringUtils.isNotBlank(client.getFortune()));
+
+        OkHttpClient httpClient = new FortuneApiClientFactory().newHttpClient(clientConfig);
+
+        // The metrics need a token for their own path
+        for (String token : new String[] {null, bearerToken}) {
+          Request.Builder request = new Request.Builder().url(localAddress + "/metrics");
+          if (token != null) {
+            request.header("Authorization", token);
+          }
+
+          try (Response response = httpClient.newCall(request.build()).execute()) {
+            assertEquals(401, response.code());
+          }
+        }
+
+        Request request = new Request.Builder().url(localAddress + "/metrics").header("Authorization", metricsToken).build();
+        try (Response response = httpClient.newCall(request).execute()) {
+          assertEquals(200, response.code());
+          assertTrue(response.header("Content-Type").startsWith("text/plain"));
+
+          String body = response.body().string();
+          assertTrue(body.contains(
+              "fortune_http_request_duration_seconds_count{method=\"GET\",route=\"/api/v1/fortune\",status=\"200\"} 1\n"));
+          assertTrue(body.contains("fortune_db_connections_active{pool=\"fortune\"}"));
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests that HTTP/2 is negotiated over HTTPS.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testHttp2() throws Exception {
+    try (FortuneApi fortuneApi = new FortuneApi(apiConfig)) {
+      // Run the server
+      fortuneApi.run();
+
+      for (String localAddress : fortuneApi.getLocalAddresses()) {
+        FortuneApiClientConfig clientConfig = mock(FortuneApiClientConfig.class);
+        when(clientConfig.sslCerts()).thenReturn(CERTS);
+
+        OkHttpClient httpClient = new FortuneApiClientFactory().newHttpClient(clientConfig);
+        try (Response response = httpClient.newCall(new Request.Builder().url(localAddress + API_PATH).build()).execute()) {
+          assertEquals(200, response.code());
+          assertEquals(Protocol.HTTP_2, response.protocol());
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests that HTTP and HTTPS can be served at the same time, with the
+   * connectors tuned from the config.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testHttpWithHttps() throws Exception {
+    FortuneApiConfig dualConfig = mock(FortuneApiConfig.class);
+    when(dualConfig.logLevel()).thenReturn("INFO");
+    when(dualConfig.jdbcUrl()).thenReturn("jdbc:sqlite::memory:");
+    when(dualConfig.sslKey()).thenReturn(KEY);
+    when(dualConfig.sslCerts()).thenReturn(CERTS);
+    when(dualConfig.httpWithHttpsEnabled()).thenReturn(true);
+    when(dualConfig.acceptors()).thenReturn(1);
+    when(dualConfig.selectors()).thenReturn(1);
+    when(dualConfig.acceptQueueSize()).thenReturn(16);
+    when(dualConfig.idleTimeoutMillis()).thenReturn(5000);
+    when(dualConfig.outputBufferSize()).thenReturn(8192);
+    when(dualConfig.minThreads()).thenReturn(4);
+    when(dualConfig.maxThreads()).thenReturn(16);
+    when(dualConfig.bufferPoolMaxHeapMemory()).thenReturn(1_048_576L);
+    when(dualConfig.bufferPoolMaxDirectMemory()).thenReturn(1_048_576L);
+
+    try (FortuneApi fortuneApi = new FortuneApi(dualConfig)) {
+      // Run the server
+      fortuneApi.run();
+
+      List<String> localAddresses = fortuneApi.getLocalAddresses();
+      assertEquals(2, localAddresses.size());
+      assertTrue(localAddresses.get(0).startsWith("https:"));
+      assertTrue(localAddresses.get(1).startsWith("http:"));
+
+      for (String localAddress : localAddresses) {
+        FortuneApiClientConfig clientConfig = mock(FortuneApiClientConfig.class);
+        when(clientConfig.baseUrl()).thenReturn(localAddress);
+        when(clientConfig.sslCerts()).thenReturn(CERTS);
+
+        FortuneApiClient client = new FortuneApiClientFactory().newFortuneApiClient(clientConfig);
+        assertEquals(10, client.getFortunes(10).size());
+      }
+    }
+  }
+
+  /**
+   * Tests that HTTP/2 can be spoken without TLS when both sides agree to it.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testH2c() throws Exception {
+    FortuneApiConfig h2cConfig = mock(FortuneApiConfig.class);
+    when(h2cConfig.logLevel()).thenReturn("INFO");
+    when(h2cConfig.jdbcUrl()).thenReturn("jdbc:sqlite::memory:");
+    when(h2cConfig.port()).thenReturn(0);
+    when(h2cConfig.h2cEnabled()).thenReturn(true);
+
+    try (FortuneApi fortuneApi = new FortuneApi(h2cConfig)) {
+      // Run the server
+      fortuneApi.run();
+
+      for (String localAddress : fortuneApi.getLocalAddresses()) {
+        assertTrue(localAddress.startsWith("http:"));
+
+        FortuneApiClientConfig clientConfig = mock(FortuneApiClientConfig.class);
+        when(clientConfig.baseUrl()).thenReturn(localAddress);
+        when(clientConfig.h2cPriorKnowledge()).thenReturn(true);
+
+        OkHttpClient httpClient = new FortuneApiClientFactory().newHttpClient(clientConfig);
+        try (Response response = httpClient.newCall(new Request.Builder().url(localAddress + API_PATH).build()).execute()) {
+          assertEquals(200, response.code());
+          assertEquals(Protocol.H2_PRIOR_KNOWLEDGE, response.protocol());
+        }
+
+        FortuneApiClient client = new FortuneApiClientFactory().newFortuneApiClient(clientConfig);
+        assertTrue(StringUtils.isNotBlank(client.getFortune()));
+      }
+    }
   }
 
   /**
@@ -156,6 +376,70 @@ public class FortuneApiClientTest {
     }
   }
 
+  /**
+   * Tests the {@link FortuneApiClient#getFortunes(int)} method.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testGetFortunes() throws Exception {
+    try (FortuneApi fortuneApi = new FortuneApi(apiConfig)) {
+      // Run the server
+      fortuneApi.run();
+
+      for (String localAddress : fortuneApi.getLocalAddresses()) {
+        // Create a new client
+        FortuneApiClientConfig clientConfig = mock(FortuneApiClientConfig.class);
+        when(clientConfig.baseUrl()).thenReturn(localAddress);
+        when(clientConfig.sslCerts()).thenReturn(CERTS);
+
+        FortuneApiClient client = new FortuneApiClientFactory().newFortuneApiClient(clientConfig);
+
+        // Get a page worth of fortunes in one call
+        List<String> fortunes = client.getFortunes(10);
+        assertEquals(10, fortunes.size());
+        assertEquals(10, new HashSet<>(fortunes).size());
+      }
+    }
+  }
+
+  /**
+   * Tests the {@link FortuneApiClient#search(String, int)} method.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testSearch() throws Exception {
+    try (FortuneApi fortuneApi = new FortuneApi(apiConfig)) {
+      // Run the server
+      fortuneApi.run();
+
+      for (String localAddress : fortuneApi.getLocalAddresses()) {
+        // Create a new client
+        FortuneApiClientConfig clientConfig = mock(FortuneApiClientConfig.class);
+        when(clientConfig.baseUrl()).thenReturn(localAddress);
+        when(clientConfig.sslCerts()).thenReturn(CERTS);
+
+        FortuneApiClient client = new FortuneApiClientFactory().newFortuneApiClient(clientConfig);
+
+        List<String> fortunes = client.search("friend money", 10);
+        assertEquals(List.of("A friend asks only for your time not your money."), fortunes);
+        assertEquals(1, client.search("you", 1).size());
+        assertTrue(client.search("zebra", 10).isEmpty());
+
+        try {
+          client.search(" ", 10);
+
+          // If we get here, then a blank search was accepted
+          fail();
+
+        } catch (IOException e) {
+          assertTrue(e.getMessage().contains("(400)"));
+        }
+      }
+    }
+  }
+
   /**
    * Tests the {@link FortuneApiClient#addFortune(String)} method.
    *
@@ -201,6 +485,48 @@ public class FortuneApiClientTest {
     }
   }
 
+  /**
+   * Tests the {@link FortuneApiClient#addFortunes(Collection)} method with
+   * more fortunes than fit in a single call.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testAddFortunes() throws Exception {
+    try (FortuneApi fortuneApi = new FortuneApi(apiConfig)) {
+      // Run the server
+      fortuneApi.run();
+
+      // Get the database connection for verification
+      Jdbi jdbi = fortuneApi.getJdbi();
+
+      for (String localAddress : fortuneApi.getLocalAddresses()) {
+        // Create a new client
+        FortuneApiClientConfig clientConfig = mock(FortuneApiClientConfig.class);
+        when(clientConfig.baseUrl()).thenReturn(localAddress);
+        when(clientConfig.sslCerts()).thenReturn(CERTS);
+
+        FortuneApiClient client = new FortuneApiClientFactory().newFortuneApiClient(clientConfig);
+        client.updateBearerToken(bearerToken);
+
+        // Enough unique fortunes to need a few calls, plus one that is already there
+        List<String> fortunes = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+          fortunes.add(String.format(Locale.ROOT, "Fortune number %d (%s)", i, localAddress));
+        }
+        fortunes.add(client.getAllFortunes().get(0));
+
+        final int count = getCount(jdbi);
+        List<InsertStatus> statuses = client.addFortunes(fortunes);
+
+        assertEquals(fortunes.size(), statuses.size());
+        assertEquals(2500, Collections.frequency(statuses, InsertStatus.created));
+        assertEquals(InsertStatus.duplicate, statuses.get(2500));
+        assertEquals(count + 2500, getCount(jdbi));
+      }
+    }
+  }
+
   /**
    * Tests the {@link FortuneApiClient#addFortune(String)} method without proper
    * authentication to ensure auth is working.
@@ -293,6 +619,43 @@ public class FortuneApiClientTest {
         // Ensure we got all of them
         assertNotNull(fortunes);
         assertEquals(count, fortunes.size());
+
+        // Nothing changed, so the server says so and the same list comes back
+        assertSame(fortunes, client.getAllFortunes());
+
+        // Adding a fortune means the list has to be sent again
+        assertTrue(client.addFortune("The ETag has changed, go get the new list."));
+        assertEquals(count + 1, client.getAllFortunes().size());
+      }
+    }
+  }
+
+  /**
+   * Tests the {@link FortuneApiClient#getFortuneIterator(int)} method.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testGetFortuneIterator() throws Exception {
+    try (FortuneApi fortuneApi = new FortuneApi(apiConfig)) {
+      // Run the server
+      fortuneApi.run();
+
+      for (String localAddress : fortuneApi.getLocalAddresses()) {
+        // Create a new client
+        FortuneApiClientConfig clientConfig = mock(FortuneApiClientConfig.class);
+        when(clientConfig.baseUrl()).thenReturn(localAddress);
+        when(clientConfig.sslCerts()).thenReturn(CERTS);
+
+        FortuneApiClient client = new FortuneApiClientFactory().newFortuneApiClient(clientConfig);
+        client.updateBearerToken(bearerToken);
+
+        // Use a page size that does not divide evenly into the number of fortunes
+        List<String> fortunes = new ArrayList<>();
+        client.getFortuneIterator(7).forEachRemaining(fortunes::add);
+
+        // The pages should add up to the whole list, in order
+        assertEquals(client.getAllFortunes(), fortunes);
       }
     }
   }
@@ -367,4 +730,156 @@ public class FortuneApiClientTest {
             .mapTo(int.class)
             .first());
   }
+
+  /**
+   * Tests the asynchronous calls of the {@link FortuneApiClient} and the
+   * limits of the dispatcher that runs them.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testAsync() throws Exception {
+    try (FortuneApi fortuneApi = new FortuneApi(apiConfig)) {
+      fortuneApi.run();
+      final Jdbi jdbi = fortuneApi.getJdbi();
+
+      FortuneApiClientConfig clientConfig = mock(FortuneApiClientConfig.class);
+      when(clientConfig.baseUrl()).thenReturn(fortuneApi.getLocalAddresses().get(0));
+      when(clientConfig.sslCerts()).thenReturn(CERTS);
+      when(clientConfig.maxRequests()).thenReturn(32);
+      when(clientConfig.maxRequestsPerHost()).thenReturn(16);
+
+      OkHttpClient httpClient = new FortuneApiClientFactory().newHttpClient(clientConfig);
+      assertEquals(32, httpClient.dispatcher().getMaxRequests());
+      assertEquals(16, httpClient.dispatcher().getMaxRequestsPerHost());
+
+      FortuneApiClient client = new FortuneApiClientFactory().newFortuneApiClient(clientConfig);
+
+      // Calls that need no token
+      List<CompletableFuture<String>> futures = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+        futures.add(client.getFortuneAsync());
+      }
+
+      for (CompletableFuture<String> future : futures) {
+        assertTrue(StringUtils.isNotBlank(future.get(10, TimeUnit.SECONDS)));
+      }
+
+      // Failures are the same exceptions the blocking calls throw
+      String fortune = "Patience is a virtue, even for callbacks";
+      try {
+        client.addFortuneAsync(fortune).get(10, TimeUnit.SECONDS);
+        fail();
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof IOException);
+        assertTrue(e.getCause().getMessage().contains("Unauthorized"));
+      }
+
+      assertEquals(0, getCount(jdbi, fortune));
+
+      // Calls that need a token
+      client.updateBearerToken(bearerToken);
+      assertTrue(client.addFortuneAsync(fortune).get(10, TimeUnit.SECONDS));
+      assertTrue(client.addFortuneAsync(fortune + "!", 2.0).get(10, TimeUnit.SECONDS));
+      assertEquals(1, getCount(jdbi, fortune));
+
+      List<String> all = client.getAllFortunesAsync().get(10, TimeUnit.SECONDS);
+      assertTrue(all.contains(fortune));
+      assertTrue(all.contains(fortune + "!"));
+
+      // Nothing changed, so the list that was remembered comes back
+      assertSame(all, client.getAllFortunesAsync().get(10, TimeUnit.SECONDS));
+    }
+  }
+
+  /**
+   * Tests that the local cache serves fortunes without calling the API, picks
+   * up changes when it refreshes and keeps its last copy once the API is gone.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testLocalCache() throws Exception {
+    FortuneApiClient client;
+    List<String> all;
+    String fortune = "A fortune close at hand is worth two on the server";
+
+    try (FortuneApi fortuneApi = new FortuneApi(apiConfig)) {
+      fortuneApi.run();
+
+      FortuneApiClientConfig clientConfig = mock(FortuneApiClientConfig.class);
+      when(clientConfig.baseUrl()).thenReturn(fortuneApi.getLocalAddresses().get(0));
+      when(clientConfig.sslCerts()).thenReturn(CERTS);
+
+      client = new FortuneApiClientFactory().newFortuneApiClient(clientConfig);
+      client.updateBearerToken(bearerToken);
+      client.enableLocalCache(Duration.ofMillis(100));
+      assertTrue(StringUtils.isNotBlank(client.getFortune()));
+      assertTrue(StringUtils.isNotBlank(client.getFortuneAsync().get(10, TimeUnit.SECONDS)));
+
+      // The next refresh brings in the new fortune
+      assertTrue(client.addFortune(fortune));
+      all = client.getAllFortunes();
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      boolean seen = false;
+      while (!seen && System.nanoTime() < deadline) {
+        seen = fortune.equals(client.getFortune());
+      }
+
+      assertTrue(seen);
+    }
+
+    // The API is gone, but the last copy is still there
+    Thread.sleep(300);
+    for (int i = 0; i < 100; i++) {
+      assertTrue(all.contains(client.getFortune()));
+    }
+
+    assertTrue(all.contains(client.getFortuneAsync().get(10, TimeUnit.SECONDS)));
+
+    // Without the cache the calls fail again
+    client.disableLocalCache();
+    assertThrows(IOException.class, client::getFortune);
+  }
+
+  /**
+   * Tests that the {@link LoadGenerator} makes every call in the mix at the
+   * rate it is asked for and reports them.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testLoadGenerator() throws Exception {
+    try (FortuneApi fortuneApi = new FortuneApi(apiConfig)) {
+      fortuneApi.run();
+
+      FortuneApiClientConfig clientConfig = mock(FortuneApiClientConfig.class);
+      when(clientConfig.baseUrl()).thenReturn(fortuneApi.getLocalAddresses().get(0));
+      when(clientConfig.sslCerts()).thenReturn(CERTS);
+
+      FortuneApiClient client = new FortuneApiClientFactory().newFortuneApiClient(clientConfig);
+      client.updateBearerToken(bearerToken);
+
+      Map<BenchOperation, Integer> mix = new EnumMap<>(BenchOperation.class);
+      mix.put(BenchOperation.GET, 8);
+      mix.put(BenchOperation.GET_ALL, 1);
+      mix.put(BenchOperation.POST, 1);
+
+      // 100 calls a second for one second after a short warm-up
+      LoadReport report = new LoadGenerator(client, 100, 4, Duration.ofSeconds(1), Duration.ofMillis(200), mix).run();
+
+      assertEquals(0, report.getErrors());
+      assertEquals(100, report.getLatencies().getCount());
+      assertEquals(80, report.getLatencies(BenchOperation.GET).getCount());
+      assertEquals(10, report.getLatencies(BenchOperation.GET_ALL).getCount());
+      assertEquals(10, report.getLatencies(BenchOperation.POST).getCount());
+      assertTrue(report.getLatencies().getValueAtPercentile(99.0) > 0);
+      assertTrue(report.getThroughput() > 50 && report.getThroughput() <= 101);
+
+      // Weights that add up to nothing cannot be run
+      Map<BenchOperation, Integer> none = Map.of(BenchOperation.GET, 0);
+      assertThrows(IllegalArgumentException.class,
+          () -> new LoadGenerator(client, 100, 4, Duration.ofSeconds(1), Duration.ZERO, none));
+    }
+  }
 }
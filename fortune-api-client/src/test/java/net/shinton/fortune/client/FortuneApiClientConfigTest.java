@@ -1,8 +1,10 @@
 package net.shinton.fortune.client;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import net.shinton.fortune.client.factory.FortuneApiClientConfigFactory;
 import org.junit.Test;
@@ -28,6 +30,9 @@ public class FortuneApiClientConfigTest {
     assertEquals(Long.valueOf(10000), config.readTimeout());
     assertEquals(Long.valueOf(10000), config.writeTimeout());
     assertNull(config.sslCerts());
+    assertFalse(config.h2cPriorKnowledge());
+    assertEquals(64, config.maxRequests());
+    assertEquals(5, config.maxRequestsPerHost());
   }
 
   /**
@@ -44,6 +49,9 @@ public class FortuneApiClientConfigTest {
         .readTimeout(2L)
         .writeTimeout(3L)
         .sslCerts("there")
+        .h2cPriorKnowledge(true)
+        .maxRequests(4)
+        .maxRequestsPerHost(5)
         .build();
 
     // Ensure values are set
@@ -53,6 +61,9 @@ public class FortuneApiClientConfigTest {
     assertEquals(Long.valueOf(2), config.readTimeout());
     assertEquals(Long.valueOf(3), config.writeTimeout());
     assertEquals("there", config.sslCerts());
+    assertTrue(config.h2cPriorKnowledge());
+    assertEquals(4, config.maxRequests());
+    assertEquals(5, config.maxRequestsPerHost());
 
     // Test nullable fields
     config = ImmutableFortuneApiClientConfig.builder()
@@ -63,5 +74,8 @@ public class FortuneApiClientConfigTest {
         .build();
 
     assertNull(config.sslCerts());
+    assertFalse(config.h2cPriorKnowledge());
+    assertEquals(64, config.maxRequests());
+    assertEquals(5, config.maxRequestsPerHost());
   }
 }
\ No newline at end of file
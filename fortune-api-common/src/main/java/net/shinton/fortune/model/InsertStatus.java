@@ -0,0 +1,10 @@
+package net.shinton.fortune.model;
+
+/**
+ * The outcome of adding a single fortune as part of a bulk insert.
+ */
+public enum InsertStatus {
+  created,
+  duplicate,
+  invalid
+}
@@ -44,4 +44,14 @@ public interface RestResponse<T> {
    */
   @Nullable
   T getData();
+
+  /**
+   * An opaque value to pass back to the API to get the next page of a paged
+   * response. It is missing on the last page and on responses that are not
+   * paged.
+   *
+   * @return The cursor for the next page
+   */
+  @Nullable
+  String getCursor();
 }
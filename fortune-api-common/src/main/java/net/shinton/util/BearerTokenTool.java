@@ -0,0 +1,267 @@
+package net.shinton.util;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.MalformedJwtException;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.crypto.SecretKey;
+import net.shinton.util.cli.BearerTokenToolCli;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine;
+
+/**
+ * <p>
+ *   This tool is used to generate signing keys, generate bearer tokens, and
+ *   validate bearer tokens. For convenience, there is a CLI associated that
+ *   allows it to be invoked on the command line to facilitate automation and
+ *   manual testing.
+ * </p>
+ * <p>
+ *   A tool is thread-safe and meant to live as long as its signing key. The
+ *   key and parser are built once, the audience of each API path is worked
+ *   out once, and tokens that pass validation are remembered until they
+ *   expire. A client that sends the same token over and over only pays for
+ *   the signature check the first time.
+ * </p>
+ */
+public class BearerTokenTool {
+  private static final Logger log = LoggerFactory.getLogger(BearerTokenTool.class);
+
+  private static final String ISSUER = "shinton.net";
+  private static final String TOKEN_PREFIX = "Bearer ";
+  private static final String PATH_DELIMITER = "/";
+
+  /**
+   * The most validated tokens remembered at once. Once full, expired tokens
+   * are dropped to make room, and if none have expired, new tokens are
+   * simply validated every time until some do.
+   */
+  private static final int MAX_CACHED_TOKENS = 10_000;
+
+  private final SecretKey signingKey;
+  private final JwtParser parser;
+  private final String publicHost;
+  private final Map<String, String> audiences = new ConcurrentHashMap<>();
+  private final Map<String, ValidatedToken> validatedTokens = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a new <code>BearerTokenTool</code> that is ready to generate
+   * and validate tokens.
+   *
+   * @param signingKey The JWT signing key or <code>null</code> if there is
+   *        none, in which case every token is rejected
+   * @param publicHost The public host of the API
+   * @throws IllegalArgumentException The signing key is not valid
+   */
+  public BearerTokenTool(String signingKey, String publicHost) {
+    this.signingKey = (signingKey == null) ? null : Keys.hmacShaKeyFor(Base64.getDecoder().decode(signingKey));
+    this.parser = (signingKey == null) ? null : Jwts.parserBuilder().setSigningKey(this.signingKey).build();
+    this.publicHost = publicHost;
+  }
+
+  /**
+   * Validates the bearer token to ensure it is valid. This means that the token
+   * was signed by the JWT signing key, was issued by <code>shinton.net</code>,
+   * and the path encoded in the token matches the path of the API.
+   *
+   * @param token The token to validate
+   * @param apiPath The API path
+   * @return <code>true</code> if valid
+   */
+  public boolean validate(String token, String apiPath) {
+    if (StringUtils.isBlank(token)) {
+      log.warn("Empty bearer token provided");
+      return false;
+    }
+
+    if (!token.startsWith(TOKEN_PREFIX)) {
+      log.warn("Bearer token does not start with '{}': {}", TOKEN_PREFIX, token);
+      return false;
+    }
+
+    if (parser == null) {
+      log.warn("No signing key to validate bearer tokens with");
+      return false;
+    }
+
+    String audience = audiences.computeIfAbsent(apiPath, path -> joinPath(publicHost, path));
+    String digest = digest(token);
+
+    ValidatedToken validated = validatedTokens.get(digest);
+    if (validated != null) {
+      if (System.currentTimeMillis() < validated.expiresAt) {
+        if (validated.audience.equalsIgnoreCase(audience)) {
+          return true;
+        }
+
+        log.warn("Bearer token path mismatch: {}", validated.audience);
+        return false;
+      }
+
+      validatedTokens.remove(digest, validated);
+    }
+
+    try {
+      Jws<Claims> jws = parser.parseClaimsJws(token.substring(TOKEN_PREFIX.length()));
+
+      Claims claims = jws.getBody();
+
+      if (!ISSUER.equals(claims.getIssuer())) {
+        log.warn("Invalid issuer for bearer token: {}", claims);
+        return false;
+      }
+
+      // The signature and issuer do not depend on the path, so remember the token before checking it
+      remember(digest, claims);
+
+      if (!claims.getAudience().equalsIgnoreCase(audience)) {
+        log.warn("Bearer token path mismatch: {}", claims);
+        return false;
+      }
+
+      return true;
+
+    } catch (MalformedJwtException | ExpiredJwtException e) {
+      log.warn(e.getMessage());
+
+    } catch (Exception e) {
+      log.error("Unexpected error while validating token", e);
+    }
+
+    return false;
+  }
+
+  /**
+   * Generates a new bearer token.
+   *
+   * @param expiresIn The number of <code>seconds</code> the token should stay alive
+   * @param apiPath The API path for this token
+   * @return The generated token
+   */
+  public String generate(int expiresIn, String apiPath) {
+    Instant now = Instant.now();
+
+    return TOKEN_PREFIX + Jwts.builder()
+        .setIssuer(ISSUER)
+        .setIssuedAt(Date.from(now))
+        .setAudience(joinPath(publicHost, apiPath))
+        .setExpiration(Date.from(now.plusSeconds(expiresIn)))
+        .signWith(signingKey)
+        .compact();
+  }
+
+  /**
+   * Remembers a token that has a valid signature and issuer until it expires.
+   * Tokens without an expiration or audience are not remembered.
+   *
+   * @param digest The digest of the token
+   * @param claims The claims of the token
+   */
+  private void remember(String digest, Claims claims) {
+    Date expiration = claims.getExpiration();
+    if (expiration == null || claims.getAudience() == null) {
+      return;
+    }
+
+    if (validatedTokens.size() >= MAX_CACHED_TOKENS) {
+      long now = System.currentTimeMillis();
+      validatedTokens.values().removeIf(validated -> validated.expiresAt <= now);
+
+      if (validatedTokens.size() >= MAX_CACHED_TOKENS) {
+        return;
+      }
+    }
+
+    validatedTokens.put(digest, new ValidatedToken(claims.getAudience(), expiration.getTime()));
+  }
+
+  /**
+   * Utility method to get the digest a token is remembered by. This keeps the
+   * tokens themselves out of memory and gives every key the same length.
+   *
+   * @param token The token
+   * @return The Base64 encoded SHA-256 digest of the token
+   */
+  private static String digest(String token) {
+    try {
+      MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+      return Base64.getEncoder().encodeToString(sha256.digest(token.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform is required to support SHA-256
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Joins two paths together in a way that prevents double delimitation.
+   *
+   * @param first The first half of the path
+   * @param second The second half of the path
+   * @return The joined path
+   */
+  private String joinPath(String first, String second) {
+    if (first.endsWith(PATH_DELIMITER)) {
+      first = first.substring(0, first.length() - 1);
+    }
+
+    if (second.startsWith(PATH_DELIMITER)) {
+      second = second.substring(1);
+    }
+
+    return first + PATH_DELIMITER + second;
+  }
+
+  /**
+   * This is a static method used to generate new signing keys of the correct
+   * length that are accepted by the <code>BearerTokenTool</code>.
+   *
+   * @return The signing key
+   */
+  public static String newSigningKey() {
+    return Base64.getEncoder().encodeToString(
+        Keys.secretKeyFor(SignatureAlgorithm.HS512).getEncoded());
+  }
+
+  /**
+   * The main method used for command line invocation. For a list of commands
+   * and options, run this class with the argument <code>--help</code>.
+   *
+   * @param args The program arguments
+   */
+  public static void main(String[] args) {
+    System.exit(new CommandLine(new BearerTokenToolCli()).execute(args));
+  }
+
+  /**
+   * A token that passed validation.
+   */
+  private static class ValidatedToken {
+    private final String audience;
+    private final long expiresAt;
+
+    /**
+     * Creates a new validated token.
+     *
+     * @param audience The audience of the token
+     * @param expiresAt When the token expires, in milliseconds since the epoch
+     */
+    ValidatedToken(String audience, long expiresAt) {
+      this.audience = audience;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
@@ -0,0 +1,153 @@
+package net.shinton.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ *   A histogram of latencies in the style of HdrHistogram. Latencies are kept
+ *   in microseconds in buckets whose width doubles with every power of two,
+ *   and each power of two is split into eight sub-buckets. Any latency can be
+ *   read back to within one eighth of its value, from a microsecond up to
+ *   about nineteen hours, in a fixed 272 slots.
+ * </p>
+ * <p>
+ *   Recording is a few shifts and an atomic increment. It never locks and
+ *   never allocates, so it can sit on a request path without distorting the
+ *   latency it measures. Reads can run while values are being recorded and
+ *   see a slightly stale but usable picture.
+ * </p>
+ */
+public final class LatencyHistogram {
+  /**
+   * The number of bits of each value kept below its leading bit.
+   */
+  private static final int SUB_BUCKET_BITS = 3;
+
+  /**
+   * The largest latency in microseconds that can be told apart. Anything
+   * longer is counted as this.
+   */
+  public static final long MAX_MICROS = (1L << 36) - 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(bucketIndex(MAX_MICROS) + 1);
+  private final AtomicLong sumMicros = new AtomicLong();
+
+  /**
+   * Records a latency.
+   *
+   * @param nanos The latency in nanoseconds
+   */
+  public void record(long nanos) {
+    long micros = Math.min(Math.max(nanos / 1000, 0), MAX_MICROS);
+    counts.incrementAndGet(bucketIndex(micros));
+    sumMicros.addAndGet(micros);
+  }
+
+  /**
+   * Gets the number of latencies recorded.
+   *
+   * @return The count
+   */
+  public long getCount() {
+    long count = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      count += counts.get(i);
+    }
+
+    return count;
+  }
+
+  /**
+   * Gets the sum of all latencies recorded.
+   *
+   * @return The sum in microseconds
+   */
+  public long getSumMicros() {
+    return sumMicros.get();
+  }
+
+  /**
+   * Gets the number of latencies recorded that are no longer than a limit. A
+   * bucket only counts if all of it is within the limit, so a bucket that
+   * straddles the limit is left out.
+   *
+   * @param micros The limit in microseconds
+   * @return The count
+   */
+  public long getCountAtOrBelow(long micros) {
+    long count = 0;
+    for (int i = 0; i < counts.length() && highestEquivalentValue(i) <= micros; i++) {
+      count += counts.get(i);
+    }
+
+    return count;
+  }
+
+  /**
+   * Gets the latency that a percentage of the recorded latencies are no
+   * longer than.
+   *
+   * @param percentile The percentage, from 0 to 100
+   * @return The latency in microseconds or zero if nothing is recorded
+   */
+  public long getValueAtPercentile(double percentile) {
+    long total = getCount();
+    if (total == 0) {
+      return 0;
+    }
+
+    long target = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * total));
+    long count = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      count += counts.get(i);
+      if (count >= target) {
+        return highestEquivalentValue(i);
+      }
+    }
+
+    return MAX_MICROS;
+  }
+
+  /**
+   * Rounds a value up to the nearest bucket edge, which is the lowest value
+   * of a bucket. Every bucket lies either wholly below the edge or wholly at
+   * or above it, so {@link #getCountAtOrBelow} is exact one below an edge.
+   *
+   * @param micros The value in microseconds, which must not be negative
+   * @return The lowest value of the first bucket that does not start below
+   *         the value
+   */
+  public static long roundUpToBucketEdge(long micros) {
+    int index = bucketIndex(micros);
+    long highest = highestEquivalentValue(index);
+    int shift = Math.max(0, (index >> SUB_BUCKET_BITS) - 1);
+    long lowest = highest - (1L << shift) + 1;
+    return (lowest == micros) ? micros : highest + 1;
+  }
+
+  /**
+   * Finds the bucket of a value. Values below sixteen get a bucket each.
+   * Above that, the shift drops all but the top four bits, so the index is
+   * the shift followed by the three bits after the leading one.
+   *
+   * @param micros The value, which must not be negative
+   * @return The index of the bucket
+   */
+  static int bucketIndex(long micros) {
+    int shift = Math.max(0, 63 - SUB_BUCKET_BITS - Long.numberOfLeadingZeros(micros));
+    return (shift << SUB_BUCKET_BITS) + (int) (micros >>> shift);
+  }
+
+  /**
+   * Gets the largest value that falls in a bucket.
+   *
+   * @param index The index of the bucket
+   * @return The largest value in microseconds
+   */
+  static long highestEquivalentValue(int index) {
+    int shift = Math.max(0, (index >> SUB_BUCKET_BITS) - 1);
+    long lowest = (long) (index - (shift << SUB_BUCKET_BITS)) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+}
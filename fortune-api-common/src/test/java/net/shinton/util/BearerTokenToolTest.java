@@ -51,4 +51,32 @@ public class BearerTokenToolTest {
     // Test corrupt token
     assertFalse(tool.validate("Bearer " + RandomStringUtils.random(token.length() - 7), API_PATH));
   }
-}
\ No newline at end of file
+
+  /**
+   * Test to ensure remembered tokens are still checked against the path and
+   * are forgotten once they expire.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testRemembered() throws Exception {
+    String signingKey = BearerTokenTool.newSigningKey();
+    BearerTokenTool tool = new BearerTokenTool(signingKey, FORTUNE_PUBLIC_HOST);
+
+    String token = tool.generate(1, API_PATH);
+    assertTrue(tool.validate(token, API_PATH));
+    assertTrue(tool.validate(token, API_PATH));
+    assertFalse(tool.validate(token, StringUtils.reverse(API_PATH)));
+
+    // A token signed with another key is not mistaken for a remembered one
+    String otherToken = new BearerTokenTool(BearerTokenTool.newSigningKey(), FORTUNE_PUBLIC_HOST).generate(1000, API_PATH);
+    assertFalse(tool.validate(otherToken, API_PATH));
+
+    // The expiration has a resolution of a second, so wait long enough to be sure it has passed
+    Thread.sleep(2100);
+    assertFalse(tool.validate(token, API_PATH));
+
+    // Without a signing key nothing is valid
+    assertFalse(new BearerTokenTool(null, FORTUNE_PUBLIC_HOST).validate(tool.generate(1000, API_PATH), API_PATH));
+  }
+}
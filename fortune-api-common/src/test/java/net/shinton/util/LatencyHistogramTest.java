@@ -0,0 +1,89 @@
+package net.shinton.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * <code>JUnit</code> tests for the {@link LatencyHistogram} class.
+ */
+public class LatencyHistogramTest {
+  /**
+   * Test that every value lands in a bucket that holds it, and that the
+   * buckets are no wider than an eighth of the values in them.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testBuckets() throws Exception {
+    for (long value = 0; value < 100_000; value++) {
+      assertBucket(value);
+    }
+
+    for (long value = 100_000; value < LatencyHistogram.MAX_MICROS; value = value * 3 / 2 + 7) {
+      assertBucket(value);
+    }
+
+    assertBucket(LatencyHistogram.MAX_MICROS);
+    assertEquals(LatencyHistogram.MAX_MICROS,
+        LatencyHistogram.highestEquivalentValue(LatencyHistogram.bucketIndex(LatencyHistogram.MAX_MICROS)));
+  }
+
+  /**
+   * Test the counts, sums and percentiles read back from recorded values.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testRecord() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getValueAtPercentile(99));
+
+    // One to a thousand microseconds, recorded in nanoseconds
+    for (long micros = 1; micros <= 1000; micros++) {
+      histogram.record(micros * 1000 + 999);
+    }
+
+    // Negative and enormous latencies are clamped rather than lost
+    histogram.record(-1);
+    histogram.record(Long.MAX_VALUE);
+
+    assertEquals(1002, histogram.getCount());
+    assertEquals(500_500 + LatencyHistogram.MAX_MICROS, histogram.getSumMicros());
+    assertEquals(1, histogram.getCountAtOrBelow(0));
+    assertEquals(16, histogram.getCountAtOrBelow(15));
+    assertEquals(1001, histogram.getCountAtOrBelow(1023));
+    assertEquals(1002, histogram.getCountAtOrBelow(LatencyHistogram.MAX_MICROS));
+
+    // Bounds moved to a bucket edge split the buckets exactly
+    assertEquals(15, LatencyHistogram.roundUpToBucketEdge(15));
+    assertEquals(512, LatencyHistogram.roundUpToBucketEdge(500));
+    assertEquals(512, LatencyHistogram.roundUpToBucketEdge(512));
+    assertEquals(1024, LatencyHistogram.roundUpToBucketEdge(1000));
+    assertEquals(2560, LatencyHistogram.roundUpToBucketEdge(2500));
+    assertEquals(512, histogram.getCountAtOrBelow(LatencyHistogram.roundUpToBucketEdge(500) - 1));
+
+    long median = histogram.getValueAtPercentile(50);
+    assertTrue(median >= 500 && median <= 500 * 9 / 8);
+    long p99 = histogram.getValueAtPercentile(99);
+    assertTrue(p99 >= 990 && p99 <= 990 * 9 / 8);
+    assertEquals(LatencyHistogram.MAX_MICROS, histogram.getValueAtPercentile(100));
+  }
+
+  /**
+   * Utility method to check the bucket of a value.
+   *
+   * @param value The value
+   */
+  private void assertBucket(long value) {
+    int index = LatencyHistogram.bucketIndex(value);
+    long highest = LatencyHistogram.highestEquivalentValue(index);
+    long lowest = (index == 0) ? 0 : LatencyHistogram.highestEquivalentValue(index - 1) + 1;
+
+    assertTrue(value + " above its bucket", value <= highest);
+    assertTrue(value + " below its bucket", value >= lowest);
+    assertTrue(value + " in a bucket that is too wide", (highest - lowest) * 8 <= Math.max(lowest, 8));
+  }
+}
@@ -2,24 +2,46 @@ package net.shinton.fortune;
 
 import io.javalin.Javalin;
 import io.javalin.config.JavalinConfig;
+import io.javalin.http.Handler;
+import io.javalin.http.HandlerType;
 import io.javalin.http.HttpStatus;
 import java.security.KeyStore;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import net.shinton.fortune.data.FortuneDatabase;
+import net.shinton.fortune.data.FortuneModel;
+import net.shinton.fortune.data.FortuneWriteQueue;
 import net.shinton.fortune.factory.FortuneApiConfigFactory;
 import net.shinton.fortune.factory.FortuneDatabaseFactory;
 import net.shinton.fortune.factory.KeystoreFactory;
 import net.shinton.fortune.handler.ErrorHandler;
+import net.shinton.fortune.handler.FortuneBulkPostHandler;
 import net.shinton.fortune.handler.FortuneGetAllHandler;
 import net.shinton.fortune.handler.FortuneGetHandler;
 import net.shinton.fortune.handler.FortunePostHandler;
+import net.shinton.fortune.handler.FortuneSearchHandler;
+import net.shinton.fortune.handler.FortuneSuggestHandler;
+import net.shinton.fortune.handler.MetricsHandler;
+import net.shinton.fortune.metrics.FortuneMetrics;
 import net.shinton.util.MutableLoggingProvider;
+import org.eclipse.jetty.alpn.server.ALPNServerConnectionFactory;
+import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.http2.HTTP2Cipher;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.http2.server.HTTP2ServerConnectionFactory;
+import org.eclipse.jetty.io.ArrayByteBufferPool;
+import org.eclipse.jetty.server.ConnectionFactory;
 import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.SslConnectionFactory;
+import org.eclipse.jetty.util.VirtualThreads;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.jdbi.v3.core.Jdbi;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,6 +56,9 @@ public class FortuneApi implements AutoCloseable {
   private final FortuneApiConfig config;
   private Jdbi jdbi;
   private Javalin app;
+  private FortuneWriteQueue writeQueue;
+  private FortuneMetrics metrics;
+  private boolean virtualThreads;
 
   /**
    * Create a new Fortune API using the config from the environment
@@ -59,19 +84,60 @@ public class FortuneApi implements AutoCloseable {
     // Set the log level
     MutableLoggingProvider.setLevel(config.logLevel());
 
+    // Without a thread pool in front of it, the database needs its own cap
+    virtualThreads = useVirtualThreads();
+
     // Initialize the database
-    jdbi = new FortuneDatabaseFactory().newDatabase(config.jdbcUrl());
+    FortuneDatabase database = new FortuneDatabaseFactory().newDatabase(config, virtualThreads);
+    jdbi = database.getWriter();
 
     // Create and configure the Javalin server
     ErrorHandler errorHandler = new ErrorHandler(config);
 
+    // All handlers share a single model so they see the same snapshot
+    FortuneModel model = new FortuneModel(database, config.snapshotEnabled(), config.duplicateCheckEnabled());
+
+    if (config.writeQueueEnabled()) {
+      writeQueue = new FortuneWriteQueue(model,
+          config.writeQueueCapacity(),
+          config.writeBatchSize(),
+          config.writeBatchDelayMillis());
+    }
+
+    // Metrics are recorded by wrapping each handler as it is registered
+    metrics = config.metricsEnabled() ? new FortuneMetrics(database) : null;
+
     app = Javalin.create(this::configure)
-        .get("/api/v1/fortune", new FortuneGetHandler(config, jdbi))
-        .post("/api/v1/fortune", new FortunePostHandler(config, jdbi))
-        .get("/api/v1/fortune/all", new FortuneGetAllHandler(config, jdbi))
         .error(HttpStatus.NOT_FOUND, errorHandler)
-        .error(HttpStatus.INTERNAL_SERVER_ERROR, errorHandler)
-        .start();
+        .error(HttpStatus.INTERNAL_SERVER_ERROR, errorHandler);
+
+    addRoute(HandlerType.GET, "/api/v1/fortune", new FortuneGetHandler(config, model));
+    addRoute(HandlerType.POST, "/api/v1/fortune", new FortunePostHandler(config, model, writeQueue));
+    addRoute(HandlerType.POST, "/api/v1/fortune/bulk", new FortuneBulkPostHandler(config, model));
+    addRoute(HandlerType.GET, "/api/v1/fortune/search", new FortuneSearchHandler(config, model));
+    addRoute(HandlerType.GET, "/api/v1/fortune/all", new FortuneGetAllHandler(config, model));
+
+    // Suggestions are served from an index that is kept up to date from the snapshot
+    if (model.isSnapshotEnabled()) {
+      addRoute(HandlerType.GET, "/api/v1/fortune/suggest", new FortuneSuggestHandler(config, model));
+    }
+
+    if (metrics != null) {
+      app.get("/metrics", new MetricsHandler(config, metrics));
+    }
+
+    app.start();
+  }
+
+  /**
+   * Registers a handler, wrapping it to record metrics if they are enabled.
+   *
+   * @param method The HTTP method
+   * @param path The path
+   * @param handler The handler
+   */
+  private void addRoute(HandlerType method, String path, Handler handler) {
+    app.addHandler(method, path, (metrics == null) ? handler : metrics.instrument(method.name(), path, handler));
   }
 
   /**
@@ -92,24 +158,36 @@ public class FortuneApi implements AutoCloseable {
       log.error("Could not create keystore", e);
     }
     List<Connector> connectors = new ArrayList<>();
-    Server server = new Server();
+    Server server = new Server(newThreadPool());
+    HttpConfiguration httpConfig = newHttpConfiguration();
+
+    // Every connector picks up the buffer pool from the server, so they all share it
+    server.addBean(new ArrayByteBufferPool(0, -1, -1, -1,
+        config.bufferPoolMaxHeapMemory(),
+        config.bufferPoolMaxDirectMemory()));
 
     /*
      * If we were able to create a keystore, then configure Javalin to accept
-     * HTTPS requests. Otherwise, accept HTTP requests.
+     * HTTPS requests. Otherwise, accept HTTP requests. HTTP can be kept open
+     * next to HTTPS if asked for.
      */
     if (keystore != null) {
       SslContextFactory.Server sslContextFactory = new SslContextFactory.Server();
       sslContextFactory.setKeyStore(keystore);
 
-      ServerConnector sslConnector = new ServerConnector(server, sslContextFactory);
-      sslConnector.setPort(config.sslPort());
-      connectors.add(sslConnector);
+      connectors.add(config.http2Enabled() ?
+          newHttp2Connector(server, httpConfig, sslContextFactory) :
+          newConnector(server, config.sslPort(),
+              new SslConnectionFactory(sslContextFactory, HttpVersion.HTTP_1_1.asString()),
+              new HttpConnectionFactory(httpConfig)));
+    }
 
-    } else {
-      ServerConnector connector = new ServerConnector(server);
-      connector.setPort(config.port());
-      connectors.add(connector);
+    if (keystore == null || config.httpWithHttpsEnabled()) {
+      connectors.add(config.h2cEnabled() ?
+          newConnector(server, config.port(),
+              new HttpConnectionFactory(httpConfig),
+              new HTTP2CServerConnectionFactory(httpConfig)) :
+          newConnector(server, config.port(), new HttpConnectionFactory(httpConfig)));
     }
 
     server.setConnectors(connectors.toArray(new Connector[connectors.size()]));
@@ -121,6 +199,120 @@ public class FortuneApi implements AutoCloseable {
     javalinConfig.showJavalinBanner = false;
   }
 
+  /**
+   * Creates an HTTPS connector that offers HTTP/2 through ALPN. Clients that
+   * do not ask for a protocol, or ask for one the server does not speak, get
+   * HTTP/1.1 as before.
+   *
+   * @param server The Jetty server
+   * @param httpConfig The HTTP settings shared by all connectors
+   * @param sslContextFactory The SSL settings with the keystore installed
+   * @return The connector
+   */
+  private ServerConnector newHttp2Connector(Server server, HttpConfiguration httpConfig,
+                                            SslContextFactory.Server sslContextFactory) {
+    HttpConnectionFactory http11 = new HttpConnectionFactory(httpConfig);
+    HTTP2ServerConnectionFactory h2 = new HTTP2ServerConnectionFactory(httpConfig);
+
+    ALPNServerConnectionFactory alpn = new ALPNServerConnectionFactory();
+    alpn.setDefaultProtocol(http11.getProtocol());
+
+    // HTTP/2 forbids a number of older ciphers, so offer the ones it allows first
+    sslContextFactory.setCipherComparator(HTTP2Cipher.COMPARATOR);
+
+    return newConnector(server, config.sslPort(),
+        new SslConnectionFactory(sslContextFactory, alpn.getProtocol()),
+        alpn,
+        h2,
+        http11);
+  }
+
+  /**
+   * Creates a connector with the acceptor, selector and timeout settings from
+   * the config. Settings of zero keep the Jetty defaults.
+   *
+   * @param server The Jetty server
+   * @param port The port to listen on
+   * @param factories The protocols spoken on the connector, outermost first
+   * @return The connector
+   */
+  private ServerConnector newConnector(Server server, int port, ConnectionFactory... factories) {
+    ServerConnector connector = new ServerConnector(server,
+        (config.acceptors() > 0) ? config.acceptors() : -1,
+        (config.selectors() > 0) ? config.selectors() : -1,
+        factories);
+    connector.setPort(port);
+
+    if (config.acceptQueueSize() > 0) {
+      connector.setAcceptQueueSize(config.acceptQueueSize());
+    }
+
+    if (config.idleTimeoutMillis() > 0) {
+      connector.setIdleTimeout(config.idleTimeoutMillis());
+    }
+
+    return connector;
+  }
+
+  /**
+   * Creates the HTTP settings shared by all connectors.
+   *
+   * @return The HTTP settings
+   */
+  private HttpConfiguration newHttpConfiguration() {
+    HttpConfiguration httpConfig = new HttpConfiguration();
+
+    if (config.outputBufferSize() > 0) {
+      httpConfig.setOutputBufferSize(config.outputBufferSize());
+    }
+
+    return httpConfig;
+  }
+
+  /**
+   * Decides whether requests are handled on virtual threads, which needs
+   * them to be enabled in the config and supported by the JVM.
+   *
+   * @return <code>true</code> if requests run on virtual threads
+   */
+  private boolean useVirtualThreads() {
+    if (!config.virtualThreadsEnabled()) {
+      return false;
+    }
+
+    if (!VirtualThreads.areSupported()) {
+      log.warn("Virtual threads are not supported by this JVM, handling requests on platform threads");
+      return false;
+    }
+
+    log.info("Handling requests on virtual threads");
+    return true;
+  }
+
+  /**
+   * Creates the thread pool for Jetty, sized from the config. With virtual
+   * threads, each request is handled on a virtual thread of its own and the
+   * pool only runs Jetty's internal work.
+   *
+   * @return The thread pool
+   */
+  private QueuedThreadPool newThreadPool() {
+    QueuedThreadPool threadPool = new QueuedThreadPool();
+    threadPool.setName("fortune-api");
+
+    if (config.maxThreads() > 0) {
+      threadPool.setMaxThreads(config.maxThreads());
+    }
+
+    if (config.minThreads() > 0) {
+      threadPool.setMinThreads(Math.min(config.minThreads(), threadPool.getMaxThreads()));
+    }
+
+    threadPool.setUseVirtualThreads(virtualThreads);
+
+    return threadPool;
+  }
+
   /**
    * Determines the local URLs that the FortuneApi is listening on.
    *
@@ -173,6 +365,11 @@ public class FortuneApi implements AutoCloseable {
     if (app != null) {
       app.stop();
     }
+
+    // Once the server has stopped, nothing new can be queued, so let the writer finish up
+    if (writeQueue != null) {
+      writeQueue.close();
+    }
   }
 
   /**
@@ -109,4 +109,399 @@ public interface FortuneApiConfig extends Config {
    */
   @Key("FORTUNE_PUBLIC_HOST")
   String publicHost();
-}
\ No newline at end of file
+
+  /**
+   * Determines if fortunes should be served from an in-memory snapshot instead
+   * of querying the database on every request.
+   *
+   * @return <code>true</code> if snapshot mode is enabled
+   */
+  @Key("FORTUNE_SNAPSHOT_ENABLED")
+  @DefaultValue("true")
+  @Value.Default
+  default boolean snapshotEnabled() {
+    return true;
+  }
+
+  /**
+   * Determines if large responses, such as the list of all fortunes, should be
+   * written straight to the response stream instead of being built in memory.
+   *
+   * @return <code>true</code> if streaming is enabled
+   */
+  @Key("FORTUNE_STREAMING_ENABLED")
+  @DefaultValue("true")
+  @Value.Default
+  default boolean streamingEnabled() {
+    return true;
+  }
+
+  /**
+   * Determines if compressed copies of the list of all fortunes should be
+   * kept in memory and served to clients that accept them. Each copy is only
+   * built once per change to the fortunes.
+   *
+   * @return <code>true</code> if precompression is enabled
+   */
+  @Key("FORTUNE_PRECOMPRESSION_ENABLED")
+  @DefaultValue("true")
+  @Value.Default
+  default boolean precompressionEnabled() {
+    return true;
+  }
+
+  /**
+   * Determines if single fortune adds should go through a queue and be
+   * committed in groups by one writer thread instead of each request inserting
+   * on its own.
+   *
+   * @return <code>true</code> if the write queue is enabled
+   */
+  @Key("FORTUNE_WRITE_QUEUE_ENABLED")
+  @DefaultValue("false")
+  @Value.Default
+  default boolean writeQueueEnabled() {
+    return false;
+  }
+
+  /**
+   * The most fortunes that can be waiting in the write queue. Adds that find
+   * the queue full are turned away.
+   *
+   * @return The capacity of the write queue
+   */
+  @Key("FORTUNE_WRITE_QUEUE_CAPACITY")
+  @DefaultValue("10000")
+  @Value.Default
+  default int writeQueueCapacity() {
+    return 10000;
+  }
+
+  /**
+   * The most fortunes the write queue commits in one transaction.
+   *
+   * @return The group size
+   */
+  @Key("FORTUNE_WRITE_BATCH_SIZE")
+  @DefaultValue("500")
+  @Value.Default
+  default int writeBatchSize() {
+    return 500;
+  }
+
+  /**
+   * How long the write queue waits for a group to fill up before committing
+   * it anyway, in milliseconds.
+   *
+   * @return The delay
+   */
+  @Key("FORTUNE_WRITE_BATCH_DELAY_MILLIS")
+  @DefaultValue("5")
+  @Value.Default
+  default long writeBatchDelayMillis() {
+    return 5;
+  }
+
+  /**
+   * The SQLite journal mode. With <code>WAL</code>, readers do not block the
+   * writer or each other, so reads get a pool of their own. Any other mode
+   * shares a single pool. This is ignored for in-memory databases.
+   *
+   * @return The journal mode, such as <code>WAL</code> or <code>DELETE</code>
+   */
+  @Key("FORTUNE_SQLITE_JOURNAL_MODE")
+  @DefaultValue("WAL")
+  @Value.Default
+  default String sqliteJournalMode() {
+    return "WAL";
+  }
+
+  /**
+   * The SQLite synchronous level. <code>NORMAL</code> is safe in WAL mode and
+   * saves an fsync per commit.
+   *
+   * @return The synchronous level, such as <code>NORMAL</code> or <code>FULL</code>
+   */
+  @Key("FORTUNE_SQLITE_SYNCHRONOUS")
+  @DefaultValue("NORMAL")
+  @Value.Default
+  default String sqliteSynchronous() {
+    return "NORMAL";
+  }
+
+  /**
+   * The most bytes of the database file SQLite may memory map. Zero leaves
+   * memory mapping off.
+   *
+   * @return The memory map size in bytes
+   */
+  @Key("FORTUNE_SQLITE_MMAP_SIZE")
+  @DefaultValue("0")
+  @Value.Default
+  default long sqliteMmapSize() {
+    return 0;
+  }
+
+  /**
+   * The SQLite page cache size of each connection. A negative number is in
+   * KiB and a positive one in pages. Zero leaves the SQLite default.
+   *
+   * @return The cache size
+   */
+  @Key("FORTUNE_SQLITE_CACHE_SIZE")
+  @DefaultValue("0")
+  @Value.Default
+  default int sqliteCacheSize() {
+    return 0;
+  }
+
+  /**
+   * How long a connection waits on a locked database before giving up, in
+   * milliseconds. Zero leaves the driver default.
+   *
+   * @return The busy timeout
+   */
+  @Key("FORTUNE_SQLITE_BUSY_TIMEOUT_MILLIS")
+  @DefaultValue("5000")
+  @Value.Default
+  default int sqliteBusyTimeoutMillis() {
+    return 5000;
+  }
+
+  /**
+   * The number of read-only connections when the journal mode is
+   * <code>WAL</code>. Writes always use a single connection of their own.
+   *
+   * @return The read pool size
+   */
+  @Key("FORTUNE_SQLITE_READ_POOL_SIZE")
+  @DefaultValue("4")
+  @Value.Default
+  default int sqliteReadPoolSize() {
+    return 4;
+  }
+
+  /**
+   * Determines if the hashes of every fortune should be kept in memory so
+   * that duplicates can be turned away without going to the database.
+   *
+   * @return <code>true</code> if the duplicate check is enabled
+   */
+  @Key("FORTUNE_DUPLICATE_CHECK_ENABLED")
+  @DefaultValue("true")
+  @Value.Default
+  default boolean duplicateCheckEnabled() {
+    return true;
+  }
+
+  /**
+   * Determines if requests should be handled on virtual threads. Database
+   * connections are then handed out through a semaphore the size of each
+   * pool. Platform threads are used if the JVM has no virtual threads.
+   *
+   * @return <code>true</code> if virtual threads are enabled
+   */
+  @Key("FORTUNE_VIRTUAL_THREADS_ENABLED")
+  @DefaultValue("false")
+  @Value.Default
+  default boolean virtualThreadsEnabled() {
+    return false;
+  }
+
+  /**
+   * Determines if HTTP/2 should be offered on the HTTPS port. Clients that do
+   * not ask for it through ALPN still get HTTP/1.1.
+   *
+   * @return <code>true</code> if HTTP/2 is enabled
+   */
+  @Key("FORTUNE_HTTP2_ENABLED")
+  @DefaultValue("true")
+  @Value.Default
+  default boolean http2Enabled() {
+    return true;
+  }
+
+  /**
+   * Determines if HTTP/2 without TLS (h2c) should be accepted on the HTTP
+   * port, either as an upgrade or with prior knowledge.
+   *
+   * @return <code>true</code> if h2c is enabled
+   */
+  @Key("FORTUNE_H2C_ENABLED")
+  @DefaultValue("false")
+  @Value.Default
+  default boolean h2cEnabled() {
+    return false;
+  }
+
+  /**
+   * Determines if the HTTP port should stay open when an SSL certificate is
+   * configured, so that the server listens on both ports.
+   *
+   * @return <code>true</code> if HTTP is served next to HTTPS
+   */
+  @Key("FORTUNE_HTTP_WITH_HTTPS_ENABLED")
+  @DefaultValue("false")
+  @Value.Default
+  default boolean httpWithHttpsEnabled() {
+    return false;
+  }
+
+  /**
+   * The number of threads on each connector that accept new connections. Zero
+   * lets Jetty decide based on the number of cores.
+   *
+   * @return The number of acceptor threads
+   */
+  @Key("FORTUNE_ACCEPTORS")
+  @DefaultValue("0")
+  @Value.Default
+  default int acceptors() {
+    return 0;
+  }
+
+  /**
+   * The number of selectors on each connector that watch connections for
+   * I/O. Zero lets Jetty decide based on the number of cores.
+   *
+   * @return The number of selectors
+   */
+  @Key("FORTUNE_SELECTORS")
+  @DefaultValue("0")
+  @Value.Default
+  default int selectors() {
+    return 0;
+  }
+
+  /**
+   * The number of connections the operating system queues up before they are
+   * accepted. Zero leaves the operating system default.
+   *
+   * @return The accept queue size
+   */
+  @Key("FORTUNE_ACCEPT_QUEUE_SIZE")
+  @DefaultValue("0")
+  @Value.Default
+  default int acceptQueueSize() {
+    return 0;
+  }
+
+  /**
+   * The number of milliseconds a connection can sit idle before it is closed.
+   * Zero leaves the Jetty default.
+   *
+   * @return The idle timeout in ms
+   */
+  @Key("FORTUNE_IDLE_TIMEOUT_MILLIS")
+  @DefaultValue("30000")
+  @Value.Default
+  default int idleTimeoutMillis() {
+    return 30_000;
+  }
+
+  /**
+   * The size in bytes of the buffer a response is written to before it is
+   * sent. Zero leaves the Jetty default.
+   *
+   * @return The output buffer size
+   */
+  @Key("FORTUNE_OUTPUT_BUFFER_SIZE")
+  @DefaultValue("32768")
+  @Value.Default
+  default int outputBufferSize() {
+    return 32_768;
+  }
+
+  /**
+   * The fewest threads kept in the request thread pool. Zero leaves the Jetty
+   * default.
+   *
+   * @return The minimum number of threads
+   */
+  @Key("FORTUNE_MIN_THREADS")
+  @DefaultValue("8")
+  @Value.Default
+  default int minThreads() {
+    return 8;
+  }
+
+  /**
+   * The most threads in the request thread pool. Zero leaves the Jetty
+   * default.
+   *
+   * @return The maximum number of threads
+   */
+  @Key("FORTUNE_MAX_THREADS")
+  @DefaultValue("200")
+  @Value.Default
+  default int maxThreads() {
+    return 200;
+  }
+
+  /**
+   * The most heap memory in bytes kept in the pool of I/O buffers shared by
+   * the connectors. Zero lets Jetty size it from the maximum heap size.
+   *
+   * @return The maximum pooled heap memory
+   */
+  @Key("FORTUNE_BUFFER_POOL_MAX_HEAP_MEMORY")
+  @DefaultValue("0")
+  @Value.Default
+  default long bufferPoolMaxHeapMemory() {
+    return 0;
+  }
+
+  /**
+   * The most direct memory in bytes kept in the pool of I/O buffers shared by
+   * the connectors. Zero lets Jetty size it from the maximum heap size.
+   *
+   * @return The maximum pooled direct memory
+   */
+  @Key("FORTUNE_BUFFER_POOL_MAX_DIRECT_MEMORY")
+  @DefaultValue("0")
+  @Value.Default
+  default long bufferPoolMaxDirectMemory() {
+    return 0;
+  }
+
+  /**
+   * Determines if request latencies, connection pool usage and JVM stats
+   * should be recorded and served at <code>/metrics</code> in the Prometheus
+   * text format.
+   *
+   * @return <code>true</code> if metrics are enabled
+   */
+  @Key("FORTUNE_METRICS_ENABLED")
+  @DefaultValue("true")
+  @Value.Default
+  default boolean metricsEnabled() {
+    return true;
+  }
+
+  /**
+   * Determines if the time spent on authorization, the database and
+   * serialization should be sent back with each response in a
+   * <code>Server-Timing</code> header.
+   *
+   * @return <code>true</code> if server timing is enabled
+   */
+  @Key("FORTUNE_SERVER_TIMING_ENABLED")
+  @DefaultValue("false")
+  @Value.Default
+  default boolean serverTimingEnabled() {
+    return false;
+  }
+
+  /**
+   * When server timing is enabled, logs the timings of one request in this
+   * many. Zero never logs them.
+   *
+   * @return The log sampling interval
+   */
+  @Key("FORTUNE_SERVER_TIMING_LOG_EVERY")
+  @DefaultValue("0")
+  @Value.Default
+  default int serverTimingLogEvery() {
+    return 0;
+  }
+}
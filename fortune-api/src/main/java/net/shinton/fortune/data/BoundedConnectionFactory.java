@@ -0,0 +1,122 @@
+package net.shinton.fortune.data;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.jdbi.v3.core.ConnectionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ *   Hands out connections from a pool, but only to so many callers at once.
+ *   Everyone else waits their turn on a fair semaphore.
+ * </p>
+ * <p>
+ *   This matters when requests run on virtual threads. There is no longer a
+ *   thread pool to cap how many requests reach the database, and the SQLite
+ *   driver pins a virtual thread to its carrier for as long as it is inside
+ *   native code. Sizing the semaphore to the connection pool keeps the number
+ *   of pinned carriers, and the pressure on the database, where it was with
+ *   platform threads. Waiting on the semaphore is cheap for a virtual thread.
+ * </p>
+ * <p>
+ *   A caller waits no longer for its turn than it would have waited for the
+ *   pool, so a few slow requests holding every connection make the rest fail
+ *   the way they would without the semaphore, rather than hang.
+ * </p>
+ */
+public class BoundedConnectionFactory implements ConnectionFactory {
+  private static final Logger log = LoggerFactory.getLogger(BoundedConnectionFactory.class);
+
+  private final DataSource dataSource;
+  private final int maxConnections;
+  private final long timeoutMillis;
+  private final Semaphore permits;
+
+  /**
+   * Creates a new connection factory.
+   *
+   * @param dataSource The pool to get connections from
+   * @param maxConnections The most connections handed out at once
+   * @param timeoutMillis The longest a caller waits for its turn in
+   *        milliseconds, normally the connection timeout of the pool
+   */
+  public BoundedConnectionFactory(DataSource dataSource, int maxConnections, long timeoutMillis) {
+    this.dataSource = dataSource;
+    this.maxConnections = maxConnections;
+    this.timeoutMillis = timeoutMillis;
+    this.permits = new Semaphore(maxConnections, true);
+  }
+
+  /**
+   * Waits for a turn and then gets a connection from the pool.
+   *
+   * @return The connection
+   * @throws SQLException The pool could not supply a connection, or the wait
+   *         was interrupted or timed out
+   */
+  @Override
+  public Connection openConnection() throws SQLException {
+    if (!permits.tryAcquire()) {
+      if (log.isDebugEnabled()) {
+        log.debug("Waiting for a database connection ({} in flight, {} waiting)", getInFlight(), getWaiting());
+      }
+
+      try {
+        if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+          throw new SQLTransientConnectionException(String.format(Locale.ROOT,
+              "Timed out after %d ms waiting for a database connection (%d in flight, %d waiting)",
+              timeoutMillis, getInFlight(), getWaiting()));
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SQLException("Interrupted while waiting for a database connection", e);
+      }
+    }
+
+    try {
+      return dataSource.getConnection();
+    } catch (SQLException | RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the connection to the pool and lets the next caller in.
+   *
+   * @param conn The connection
+   * @throws SQLException The connection could not be closed
+   */
+  @Override
+  public void closeConnection(Connection conn) throws SQLException {
+    try {
+      conn.close();
+    } finally {
+      permits.release();
+    }
+  }
+
+  /**
+   * Gets the number of connections that are handed out right now.
+   *
+   * @return The number of connections in use
+   */
+  public int getInFlight() {
+    return maxConnections - permits.availablePermits();
+  }
+
+  /**
+   * Gets an estimate of the number of callers waiting for a connection.
+   *
+   * @return The number of callers waiting
+   */
+  public int getWaiting() {
+    return permits.getQueueLength();
+  }
+}
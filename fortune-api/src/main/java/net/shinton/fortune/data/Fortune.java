@@ -0,0 +1,50 @@
+package net.shinton.fortune.data;
+
+/**
+ * A single row of the <code>fortune</code> table: the quote and how likely it
+ * is to be picked relative to the other fortunes.
+ */
+public final class Fortune {
+  /**
+   * The weight given to a fortune when one is not supplied.
+   */
+  public static final double DEFAULT_WEIGHT = 1.0;
+
+  private final String quote;
+  private final double weight;
+
+  /**
+   * Creates a new fortune.
+   *
+   * @param quote The text of the fortune
+   * @param weight The relative weight of the fortune
+   */
+  public Fortune(String quote, double weight) {
+    this.quote = quote;
+    this.weight = weight;
+  }
+
+  /**
+   * The text of the fortune.
+   *
+   * @return The quote
+   */
+  public String getQuote() {
+    return quote;
+  }
+
+  /**
+   * The relative weight of the fortune. A fortune with a weight of 2 is picked
+   * twice as often as a fortune with a weight of 1.
+   *
+   * @return The weight
+   */
+  public double getWeight() {
+    return weight;
+  }
+
+  @Override
+  public String toString() {
+    return quote + " (" + weight + ")";
+  }
+}
@@ -0,0 +1,18 @@
+package net.shinton.fortune.data;
+
+import java.io.IOException;
+
+/**
+ * Receives fortunes one at a time as they are read, so that they can be
+ * written somewhere without first collecting them all in memory.
+ */
+@FunctionalInterface
+public interface FortuneConsumer {
+  /**
+   * Called once for each fortune.
+   *
+   * @param fortune The fortune
+   * @throws IOException There was a problem writing the fortune
+   */
+  void accept(String fortune) throws IOException;
+}
@@ -0,0 +1,113 @@
+package net.shinton.fortune.data;
+
+import com.zaxxer.hikari.HikariDataSource;
+import java.util.List;
+import org.jdbi.v3.core.Jdbi;
+
+/**
+ * The connections to the fortune database. Reads and writes may go to
+ * different connection pools, so that many readers can run alongside the one
+ * writer SQLite allows. When they do not, both are the same.
+ */
+public class FortuneDatabase {
+  private final Jdbi reader;
+  private final Jdbi writer;
+  private final List<HikariDataSource> pools;
+  private final List<BoundedConnectionFactory> limits;
+
+  /**
+   * Creates a database that uses the same connections for reads and writes.
+   *
+   * @param jdbi The database connection
+   */
+  public FortuneDatabase(Jdbi jdbi) {
+    this(jdbi, jdbi);
+  }
+
+  /**
+   * Creates a database with separate connections for reads and writes.
+   *
+   * @param reader The connections to read with
+   * @param writer The connections to write with
+   */
+  public FortuneDatabase(Jdbi reader, Jdbi writer) {
+    this(reader, writer, List.of(), List.of());
+  }
+
+  /**
+   * Creates a database that keeps hold of the connection pools behind it so
+   * that they can be reported on. If the connections are handed out through
+   * bounded connection factories, the number of connections in flight is
+   * reported as well.
+   *
+   * @param reader The connections to read with
+   * @param writer The connections to write with
+   * @param pools The connection pools behind the reader and writer
+   * @param limits The bounded connection factories, which may be empty
+   */
+  public FortuneDatabase(Jdbi reader, Jdbi writer, List<HikariDataSource> pools,
+                         List<BoundedConnectionFactory> limits) {
+    this.reader = reader;
+    this.writer = writer;
+    this.pools = pools;
+    this.limits = limits;
+  }
+
+  /**
+   * Gets the connections to read with. These may be read-only.
+   *
+   * @return The reader
+   */
+  public Jdbi getReader() {
+    return reader;
+  }
+
+  /**
+   * Gets the connections to write with. Anything written here can be read
+   * back from the reader once it has been committed.
+   *
+   * @return The writer
+   */
+  public Jdbi getWriter() {
+    return writer;
+  }
+
+  /**
+   * Gets the connection pools behind the reader and writer.
+   *
+   * @return The connection pools, which is empty if they are not known
+   */
+  public List<HikariDataSource> getPools() {
+    return pools;
+  }
+
+  /**
+   * Determines if connections are handed out through bounded connection
+   * factories, in which case the connections in flight are tracked.
+   *
+   * @return <code>true</code> if the connections are bounded
+   */
+  public boolean isBounded() {
+    return !limits.isEmpty();
+  }
+
+  /**
+   * Gets the number of connections that are in use right now. This is only
+   * tracked when the connections are bounded.
+   *
+   * @return The number of connections in use
+   */
+  public int getConnectionsInFlight() {
+    return limits.stream().mapToInt(BoundedConnectionFactory::getInFlight).sum();
+  }
+
+  /**
+   * Gets an estimate of the number of callers waiting for a connection. This
+   * is only tracked when the connections are bounded.
+   *
+   * @return The number of callers waiting
+   */
+  public int getConnectionsWaiting() {
+    return limits.stream().mapToInt(BoundedConnectionFactory::getWaiting).sum();
+  }
+}
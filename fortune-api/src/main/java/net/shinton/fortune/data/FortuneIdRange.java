@@ -0,0 +1,83 @@
+package net.shinton.fortune.data;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The smallest and largest <code>id</code> in the <code>fortune</code> table.
+ * Since <code>id</code> is the SQLite rowid, a random id inside this range can
+ * be looked up with a single B-tree probe instead of sorting the whole table.
+ * The largest weight is carried along so that weighted picks can be made by
+ * rejection sampling.
+ */
+public final class FortuneIdRange {
+  private final long minId;
+  private final long maxId;
+  private final double maxWeight;
+
+  /**
+   * Creates a new range where every fortune has the same weight. Both ends
+   * are inclusive.
+   *
+   * @param minId The smallest id
+   * @param maxId The largest id
+   */
+  public FortuneIdRange(long minId, long maxId) {
+    this(minId, maxId, Fortune.DEFAULT_WEIGHT);
+  }
+
+  /**
+   * Creates a new range. Both ends are inclusive.
+   *
+   * @param minId The smallest id
+   * @param maxId The largest id
+   * @param maxWeight The largest weight of any fortune
+   */
+  public FortuneIdRange(long minId, long maxId, double maxWeight) {
+    this.minId = minId;
+    this.maxId = maxId;
+    this.maxWeight = maxWeight;
+  }
+
+  /**
+   * The smallest id in the table.
+   *
+   * @return The id
+   */
+  public long getMinId() {
+    return minId;
+  }
+
+  /**
+   * The largest id in the table.
+   *
+   * @return The id
+   */
+  public long getMaxId() {
+    return maxId;
+  }
+
+  /**
+   * The largest weight of any fortune in the table.
+   *
+   * @return The weight
+   */
+  public double getMaxWeight() {
+    return maxWeight;
+  }
+
+  /**
+   * Picks a random id inside the range using the calling thread's random
+   * number generator. The id is not guaranteed to exist if rows have been
+   * deleted.
+   *
+   * @return A random id
+   */
+  public long randomId() {
+    return ThreadLocalRandom.current().nextLong(minId, maxId + 1);
+  }
+
+  @Override
+  public String toString() {
+    return "[" + minId + ", " + maxId + "] max weight " + maxWeight;
+  }
+}
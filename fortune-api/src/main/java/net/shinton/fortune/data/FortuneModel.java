@@ -1,24 +1,119 @@
 package net.shinton.fortune.data;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.UnaryOperator;
 import net.shinton.exception.DuplicateEntryException;
 import net.shinton.fortune.data.accessor.FortuneAccessor;
 import org.jdbi.v3.core.Jdbi;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * This class provides an easy-to-use interface for accessing the data in
- * <code>fortune</code> table in the database.
+ * <p>
+ *   This class provides an easy-to-use interface for accessing the data in
+ *   <code>fortune</code> table in the database.
+ * </p>
+ * <p>
+ *   The model can optionally run in snapshot mode. In this mode, all the
+ *   fortunes are loaded into memory once and reads are served from a
+ *   {@link FortuneSnapshot} without touching the database. Writes still go to
+ *   the database first and the snapshot is swapped out once they succeed. A
+ *   model in snapshot mode is meant to be shared by all the handlers.
+ * </p>
+ * <p>
+ *   The model can also keep a set of hashes of every quote in the table so
+ *   that adding a fortune that is already there is turned away without any
+ *   database work. Rows written by another process are not in the set, but
+ *   the unique index still catches those.
+ * </p>
  */
 public class FortuneModel {
-  private final Jdbi jdbi;
+  private static final Logger log = LoggerFactory.getLogger(FortuneModel.class);
 
   /**
-   * Construct a new model using the supplied database connection.
+   * How long a cached id range is trusted before it is reloaded. This lets us
+   * pick up rows written by other processes or other models.
+   */
+  private static final long ID_RANGE_TTL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final Jdbi reader;
+  private final Jdbi writer;
+  private final AtomicReference<FortuneSnapshot> snapshot;
+  private final FortuneQuoteSet knownQuotes;
+  private final List<FortuneSnapshotListener> listeners = new CopyOnWriteArrayList<>();
+  private final Object snapshotLock = new Object();
+  private final AtomicReference<FortuneIdRange> idRange = new AtomicReference<>();
+  private volatile long idRangeExpiresAt;
+
+  /*
+   * The version starts over every time the model is created, so the time it
+   * was created is part of the version tag. Otherwise a client could hold on
+   * to a tag from before a restart that happens to match a new one.
+   */
+  private final String epoch = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+  private final AtomicLong version = new AtomicLong();
+
+  /**
+   * Construct a new model using the supplied database connection. Every call
+   * will be sent to the database.
    *
    * @param jdbi The database connection
    */
   public FortuneModel(Jdbi jdbi) {
-    this.jdbi = jdbi;
+    this(jdbi, false);
+  }
+
+  /**
+   * Construct a new model using the supplied database connection.
+   *
+   * @param jdbi The database connection
+   * @param snapshotEnabled <code>true</code> if reads should be served from
+   *        an in-memory snapshot of the fortunes
+   */
+  public FortuneModel(Jdbi jdbi, boolean snapshotEnabled) {
+    this(new FortuneDatabase(jdbi), snapshotEnabled);
+  }
+
+  /**
+   * Construct a new model that sends reads and writes to the matching
+   * connections of the database.
+   *
+   * @param database The database connections
+   * @param snapshotEnabled <code>true</code> if reads should be served from
+   *        an in-memory snapshot of the fortunes
+   */
+  public FortuneModel(FortuneDatabase database, boolean snapshotEnabled) {
+    this(database, snapshotEnabled, false);
+  }
+
+  /**
+   * Construct a new model that sends reads and writes to the matching
+   * connections of the database.
+   *
+   * @param database The database connections
+   * @param snapshotEnabled <code>true</code> if reads should be served from
+   *        an in-memory snapshot of the fortunes
+   * @param duplicateCheckEnabled <code>true</code> if known duplicates should
+   *        be turned away before they reach the database
+   */
+  public FortuneModel(FortuneDatabase database, boolean snapshotEnabled, boolean duplicateCheckEnabled) {
+    this.reader = database.getReader();
+    this.writer = database.getWriter();
+    this.snapshot = snapshotEnabled ?
+        new AtomicReference<>(FortuneSnapshot.of(loadAllFortunes())) :
+        null;
+
+    // The snapshot already has every quote in memory, so there is no need to read them again
+    this.knownQuotes = !duplicateCheckEnabled ? null :
+        new FortuneQuoteSet(snapshotEnabled ? snapshot.get().asList() : loadAllQuotes());
   }
 
   /**
@@ -27,26 +122,336 @@ public class FortuneModel {
    * @return A list of all fortunes
    */
   public List<String> getAllFortunes() {
-    return jdbi.withHandle(handle -> new FortuneAccessor(handle).getAllFortunes());
+    if (snapshot != null) {
+      return snapshot.get().asList();
+    }
+
+    return reader.withHandle(handle -> new FortuneAccessor(handle).getAllFortunes());
+  }
+
+  /**
+   * Gets a page of fortunes in the order they were added. Pages always come
+   * from the database, even in snapshot mode, since the snapshot does not know
+   * the ids. Each page is a single index seek, so this is cheap regardless.
+   *
+   * @param lastId The id of the last fortune on the previous page or
+   *        {@link Long#MIN_VALUE} to get the first page
+   * @param limit The most fortunes to put on the page
+   * @return The page
+   */
+  public FortunePage getFortunePage(long lastId, int limit) {
+    return reader.withHandle(handle -> new FortuneAccessor(handle).getFortunePage(lastId, limit));
+  }
+
+  /**
+   * Searches the fortunes for the supplied words, best matches first. Search
+   * always goes to the full-text index in the database, even in snapshot mode.
+   *
+   * @param text The text to search for
+   * @param limit The most fortunes to return
+   * @return The matching fortunes
+   */
+  public List<String> searchFortunes(String text, int limit) {
+    return reader.withHandle(handle -> new FortuneAccessor(handle).searchFortunes(text, limit));
   }
 
   /**
-   * Get a single random fortune from the database
+   * Hands every fortune to the consumer one at a time without building a list
+   * of them first. In database mode a connection is held until the consumer
+   * has seen every fortune.
    *
-   * @return A fortune
+   * @param consumer The consumer of the fortunes
+   * @throws IOException The consumer could not write a fortune
+   */
+  public void forEachFortune(FortuneConsumer consumer) throws IOException {
+    if (snapshot != null) {
+      FortuneSnapshot current = snapshot.get();
+      for (int i = 0; i < current.size(); i++) {
+        consumer.accept(current.get(i));
+      }
+
+      return;
+    }
+
+    reader.useHandle(handle -> new FortuneAccessor(handle).forEachFortune(consumer));
+  }
+
+  /**
+   * Get a single random fortune from the database. Fortunes with a larger
+   * weight are picked more often.
+   *
+   * @return A fortune or <code>null</code> if there are no fortunes
    */
   public String getRandomFortune() {
-    return jdbi.withHandle(handle -> new FortuneAccessor(handle).getRandomFortune());
+    if (snapshot != null) {
+      return snapshot.get().getRandomFortune();
+    }
+
+    return queryIdRange(FortuneAccessor::getRandomFortune, null);
   }
 
   /**
-   * Adds a fortune to the database
+   * Get distinct random fortunes from the database. Fortunes with a larger
+   * weight are picked more often.
+   *
+   * @param count The number of fortunes to get
+   * @return The fortunes, which may be fewer than requested
+   */
+  public List<String> getRandomFortunes(int count) {
+    if (snapshot != null) {
+      return snapshot.get().getRandomFortunes(count);
+    }
+
+    return queryIdRange((accessor, range) -> accessor.getRandomFortunes(range, count), List.of());
+  }
+
+  /**
+   * Adds a fortune to the database with the default weight
    *
    * @param fortune The fortune to add
    * @return <code>true</code> if added
    * @throws DuplicateEntryException when the fortune already exists in the database
    */
   public boolean addFortune(String fortune) throws DuplicateEntryException {
-    return jdbi.withHandle(handle -> new FortuneAccessor(handle).addFortune(fortune));
+    return addFortune(fortune, Fortune.DEFAULT_WEIGHT);
+  }
+
+  /**
+   * Adds a fortune to the database
+   *
+   * @param fortune The fortune to add
+   * @param weight The relative weight of the fortune, which must be positive
+   * @return <code>true</code> if added
+   * @throws DuplicateEntryException when the fortune already exists in the database
+   */
+  public boolean addFortune(String fortune, double weight) throws DuplicateEntryException {
+    if (isKnownFortune(fortune)) {
+      throw new DuplicateEntryException();
+    }
+
+    boolean added;
+    try {
+      added = writer.withHandle(handle -> new FortuneAccessor(handle).addFortune(fortune, weight));
+    } catch (DuplicateEntryException e) {
+      // Someone else added it, so remember it for next time
+      if (knownQuotes != null) {
+        knownQuotes.add(fortune);
+      }
+
+      throw e;
+    }
+
+    if (added) {
+      if (knownQuotes != null) {
+        knownQuotes.add(fortune);
+      }
+
+      // The new id and weight may be outside the cached range, so force it to be reloaded
+      idRange.set(null);
+
+      // Only publish the fortune to readers once the insert has been committed
+      if (snapshot != null) {
+        publish(current -> current.append(fortune, weight));
+      }
+
+      // Bump the version last so that it never runs ahead of what readers can see
+      version.incrementAndGet();
+    }
+
+    return added;
+  }
+
+  /**
+   * Adds many fortunes to the database in a single transaction. Fortunes that
+   * already exist are skipped rather than failing the others. Fortunes that
+   * are known to exist never reach the database. The snapshot, if there is
+   * one, is only swapped out once for the whole batch.
+   *
+   * @param fortunes The fortunes to add, whose weights must be positive
+   * @return Whether each fortune was added, in the same order as supplied
+   */
+  public boolean[] addFortunes(List<Fortune> fortunes) {
+    // Only send the fortunes that might be new, and remember where each one came from
+    List<Fortune> candidates = new ArrayList<>(fortunes.size());
+    List<Integer> positions = new ArrayList<>(fortunes.size());
+    for (int i = 0; i < fortunes.size(); i++) {
+      if (!isKnownFortune(fortunes.get(i).getQuote())) {
+        candidates.add(fortunes.get(i));
+        positions.add(i);
+      }
+    }
+
+    boolean[] added = new boolean[fortunes.size()];
+    if (candidates.isEmpty()) {
+      return added;
+    }
+
+    boolean[] candidateAdded = writer.inTransaction(handle -> new FortuneAccessor(handle).addFortunes(candidates));
+
+    List<Fortune> addedFortunes = new ArrayList<>();
+    for (int i = 0; i < candidateAdded.length; i++) {
+      added[positions.get(i)] = candidateAdded[i];
+      if (candidateAdded[i]) {
+        addedFortunes.add(candidates.get(i));
+      }
+
+      // Whether it was added or already there, it is in the table now
+      if (knownQuotes != null) {
+        knownQuotes.add(candidates.get(i).getQuote());
+      }
+    }
+
+    if (!addedFortunes.isEmpty()) {
+      idRange.set(null);
+
+      if (snapshot != null) {
+        publish(current -> current.appendAll(addedFortunes));
+      }
+
+      version.incrementAndGet();
+    }
+
+    return added;
+  }
+
+  /**
+   * Determines if a fortune is known to be in the database already, without
+   * going to the database. This is always <code>false</code> when the
+   * duplicate check is not enabled.
+   *
+   * @param fortune The fortune
+   * @return <code>true</code> if the fortune is a known duplicate
+   */
+  public boolean isKnownFortune(String fortune) {
+    return knownQuotes != null && knownQuotes.contains(fortune);
+  }
+
+  /**
+   * <p>
+   *   Gets a tag that changes every time a fortune is added through this model.
+   *   It can be compared for equality but is otherwise opaque.
+   * </p>
+   * <p>
+   *   The version is bumped after new fortunes become visible, so the tag must
+   *   be read <em>before</em> the fortunes it describes. That way a tag can be
+   *   older than the data it is sent with, which only costs a client an extra
+   *   download later, but never newer.
+   * </p>
+   * <p>
+   *   Only writes made through this model are counted. Fortunes written to the
+   *   database by another process are not noticed, just as they are not
+   *   noticed by the snapshot.
+   * </p>
+   *
+   * @return The version tag
+   */
+  public String getVersionTag() {
+    return epoch + "-" + version.get();
+  }
+
+  /**
+   * Gets the current snapshot of the fortunes.
+   *
+   * @return The snapshot or <code>null</code> if not in snapshot mode
+   */
+  public FortuneSnapshot getSnapshot() {
+    return (snapshot == null) ? null : snapshot.get();
+  }
+
+  /**
+   * Registers a listener that is called every time a new snapshot is
+   * published. The listener is called right away with the current snapshot so
+   * it can initialize itself.
+   *
+   * @param listener The listener
+   * @throws IllegalStateException when the model is not in snapshot mode
+   */
+  public void addSnapshotListener(FortuneSnapshotListener listener) {
+    if (snapshot == null) {
+      throw new IllegalStateException("Snapshot mode is not enabled");
+    }
+
+    synchronized (snapshotLock) {
+      listeners.add(listener);
+      listener.snapshotChanged(snapshot.get());
+    }
+  }
+
+  /**
+   * Determines if the model is serving reads from an in-memory snapshot.
+   *
+   * @return <code>true</code> if in snapshot mode
+   */
+  public boolean isSnapshotEnabled() {
+    return snapshot != null;
+  }
+
+  /**
+   * Publishes a new snapshot to readers and listeners. The swap and the
+   * notifications happen under a lock so that listeners see snapshots in the
+   * same order readers do.
+   *
+   * @param next A function that builds the new snapshot from the current one
+   */
+  private void publish(UnaryOperator<FortuneSnapshot> next) {
+    synchronized (snapshotLock) {
+      FortuneSnapshot published = next.apply(snapshot.get());
+      snapshot.set(published);
+
+      for (FortuneSnapshotListener listener : listeners) {
+        try {
+          listener.snapshotChanged(published);
+        } catch (Exception e) {
+          log.error("Snapshot listener failed", e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Utility method to run a query that needs the id range of the table. The
+   * cached range is used if it is fresh. If it is missing, stale or the query
+   * comes back empty, the range is reloaded and the query is tried again.
+   *
+   * @param query The query to run
+   * @param empty What the query returns when it does not find anything
+   * @param <T> The type returned by the query
+   * @return The result of the query
+   */
+  private <T> T queryIdRange(BiFunction<FortuneAccessor, FortuneIdRange, T> query, T empty) {
+    return reader.withHandle(handle -> {
+      FortuneAccessor accessor = new FortuneAccessor(handle);
+
+      FortuneIdRange range = (System.nanoTime() - idRangeExpiresAt < 0) ? idRange.get() : null;
+      T result = (range == null) ? empty : query.apply(accessor, range);
+
+      if (Objects.equals(result, empty)) {
+        // The cached id range is missing or stale, so reload it and try again
+        range = accessor.getIdRange();
+        idRange.set(range);
+        idRangeExpiresAt = System.nanoTime() + ID_RANGE_TTL_NANOS;
+        result = (range == null) ? empty : query.apply(accessor, range);
+      }
+
+      return result;
+    });
+  }
+
+  /**
+   * Utility method to read every fortune and its weight from the database.
+   *
+   * @return A list of all fortunes
+   */
+  private List<Fortune> loadAllFortunes() {
+    return reader.withHandle(handle -> new FortuneAccessor(handle).getAllWeightedFortunes());
+  }
+
+  /**
+   * Utility method to read every quote from the database.
+   *
+   * @return A list of all quotes
+   */
+  private List<String> loadAllQuotes() {
+    return reader.withHandle(handle -> new FortuneAccessor(handle).getAllFortunes());
   }
 }
@@ -0,0 +1,43 @@
+package net.shinton.fortune.data;
+
+import java.util.List;
+
+/**
+ * A page of fortunes in <code>id</code> order along with where the next page
+ * starts.
+ */
+public final class FortunePage {
+  private final List<String> fortunes;
+  private final Long lastId;
+
+  /**
+   * Creates a new page.
+   *
+   * @param fortunes The fortunes on the page
+   * @param lastId The id of the last fortune on the page or <code>null</code>
+   *        if this is the last page
+   */
+  public FortunePage(List<String> fortunes, Long lastId) {
+    this.fortunes = fortunes;
+    this.lastId = lastId;
+  }
+
+  /**
+   * The fortunes on the page.
+   *
+   * @return The fortunes
+   */
+  public List<String> getFortunes() {
+    return fortunes;
+  }
+
+  /**
+   * The id of the last fortune on the page. The next page holds the fortunes
+   * with an id greater than this.
+   *
+   * @return The id or <code>null</code> if there are no more pages
+   */
+  public Long getLastId() {
+    return lastId;
+  }
+}
@@ -0,0 +1,61 @@
+package net.shinton.fortune.data;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ *   The set of fortunes known to be in the database. The model uses it to turn
+ *   away duplicates without going to the database.
+ * </p>
+ * <p>
+ *   The quotes themselves are kept rather than hashes of them. With only a
+ *   hash, two different quotes that share one would make the second look like
+ *   a duplicate, and since hashes that fast can be made to collide on purpose,
+ *   a quote could be refused for good without ever being in the table. In
+ *   snapshot mode the strings are the same instances the snapshot holds, so
+ *   the set only costs its own table.
+ * </p>
+ */
+final class FortuneQuoteSet {
+  private final Set<String> quotes = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Creates a new set holding the supplied quotes.
+   *
+   * @param quotes The quotes that are already in the database
+   */
+  FortuneQuoteSet(Iterable<String> quotes) {
+    for (String quote : quotes) {
+      this.quotes.add(quote);
+    }
+  }
+
+  /**
+   * Determines if a quote is already in the database.
+   *
+   * @param quote The quote
+   * @return <code>true</code> if the quote is known
+   */
+  boolean contains(String quote) {
+    return quotes.contains(quote);
+  }
+
+  /**
+   * Records that a quote is in the database.
+   *
+   * @param quote The quote
+   */
+  void add(String quote) {
+    quotes.add(quote);
+  }
+
+  /**
+   * Gets the number of quotes in the set.
+   *
+   * @return The number of quotes
+   */
+  int size() {
+    return quotes.size();
+  }
+}
@@ -0,0 +1,325 @@
+package net.shinton.fortune.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import net.shinton.util.AliasTable;
+import net.shinton.util.FloydSampler;
+
+/**
+ * <p>
+ *   An immutable, in-memory copy of every fortune in the database. Readers
+ *   never lock; they simply grab the current snapshot and pick from its array.
+ * </p>
+ * <p>
+ *   When a fortune is added, a new snapshot is created by copying the array
+ *   and appending the new entry (copy-on-write). Writes are rare compared to
+ *   reads, so paying an <code>O(n)</code> copy per insert in exchange for
+ *   lock-free <code>O(1)</code> reads is a good trade.
+ * </p>
+ * <p>
+ *   Fortunes are picked according to their weight. When the weights differ,
+ *   the snapshot carries an {@link AliasTable} that is built along with it, so
+ *   the cost of handling the weights is paid once by the writer and every
+ *   read is still <code>O(1)</code>. When every weight is the same, the alias
+ *   table is skipped and fortunes are picked uniformly.
+ * </p>
+ */
+public final class FortuneSnapshot {
+  /**
+   * The number of weighted draws we are willing to make per distinct fortune
+   * before giving up on the weights. See {@link #randomIndexes(int)}.
+   */
+  private static final int MAX_DRAWS_PER_PICK = 16;
+
+  private static final FortuneSnapshot EMPTY = new FortuneSnapshot(new String[0], new double[0]);
+
+  private final String[] fortunes;
+  private final double[] weights;
+  private final AliasTable sampler;
+
+  /**
+   * Creates a new snapshot. The arrays are owned by the snapshot from this
+   * point forward and must not be modified by the caller.
+   *
+   * @param fortunes The fortunes
+   * @param weights The weight of each fortune
+   */
+  private FortuneSnapshot(String[] fortunes, double[] weights) {
+    this.fortunes = fortunes;
+    this.weights = weights;
+    this.sampler = isUniform(weights) ? null : new AliasTable(weights);
+  }
+
+  /**
+   * Creates a new snapshot containing a copy of the supplied fortunes.
+   *
+   * @param fortunes The fortunes
+   * @return The snapshot
+   */
+  public static FortuneSnapshot of(List<Fortune> fortunes) {
+    if (fortunes == null || fortunes.isEmpty()) {
+      return EMPTY;
+    }
+
+    String[] quotes = new String[fortunes.size()];
+    double[] weights = new double[fortunes.size()];
+
+    for (int i = 0; i < quotes.length; i++) {
+      quotes[i] = fortunes.get(i).getQuote();
+      weights[i] = fortunes.get(i).getWeight();
+    }
+
+    return new FortuneSnapshot(quotes, weights);
+  }
+
+  /**
+   * Creates a new snapshot with the supplied fortune appended to the end using
+   * the default weight. This snapshot is left unchanged.
+   *
+   * @param fortune The fortune to append
+   * @return The new snapshot
+   */
+  public FortuneSnapshot append(String fortune) {
+    return append(fortune, Fortune.DEFAULT_WEIGHT);
+  }
+
+  /**
+   * Creates a new snapshot with the supplied fortune appended to the end. This
+   * snapshot is left unchanged.
+   *
+   * @param fortune The fortune to append
+   * @param weight The relative weight of the fortune
+   * @return The new snapshot
+   */
+  public FortuneSnapshot append(String fortune, double weight) {
+    String[] copy = Arrays.copyOf(fortunes, fortunes.length + 1);
+    copy[fortunes.length] = fortune;
+
+    double[] weightsCopy = Arrays.copyOf(weights, weights.length + 1);
+    weightsCopy[weights.length] = weight;
+
+    return new FortuneSnapshot(copy, weightsCopy);
+  }
+
+  /**
+   * Creates a new snapshot with the supplied fortunes appended to the end.
+   * This snapshot is left unchanged. Appending many fortunes at once only
+   * pays for a single copy.
+   *
+   * @param added The fortunes to append
+   * @return The new snapshot
+   */
+  public FortuneSnapshot appendAll(List<Fortune> added) {
+    if (added.isEmpty()) {
+      return this;
+    }
+
+    String[] copy = Arrays.copyOf(fortunes, fortunes.length + added.size());
+    double[] weightsCopy = Arrays.copyOf(weights, weights.length + added.size());
+
+    for (int i = 0; i < added.size(); i++) {
+      copy[fortunes.length + i] = added.get(i).getQuote();
+      weightsCopy[weights.length + i] = added.get(i).getWeight();
+    }
+
+    return new FortuneSnapshot(copy, weightsCopy);
+  }
+
+  /**
+   * The number of fortunes in the snapshot.
+   *
+   * @return The size
+   */
+  public int size() {
+    return fortunes.length;
+  }
+
+  /**
+   * Gets the fortune at the supplied position.
+   *
+   * @param index The position
+   * @return The fortune
+   */
+  public String get(int index) {
+    return fortunes[index];
+  }
+
+  /**
+   * Gets the weight of the fortune at the supplied position.
+   *
+   * @param index The position
+   * @return The weight
+   */
+  public double getWeight(int index) {
+    return weights[index];
+  }
+
+  /**
+   * Picks a random fortune from the snapshot using the calling thread's random
+   * number generator so that concurrent readers never contend with each other.
+   *
+   * @return A fortune or <code>null</code> if the snapshot is empty
+   */
+  public String getRandomFortune() {
+    int index = randomIndex();
+    return (index < 0) ? null : fortunes[index];
+  }
+
+  /**
+   * Picks the position of a random fortune in the snapshot, honoring the
+   * weights, using the calling thread's random number generator.
+   *
+   * @return The position or <code>-1</code> if the snapshot is empty
+   */
+  public int randomIndex() {
+    if (fortunes.length == 0) {
+      return -1;
+    }
+
+    return (sampler == null) ?
+        ThreadLocalRandom.current().nextInt(fortunes.length) :
+        sampler.sample(ThreadLocalRandom.current());
+  }
+
+  /**
+   * Picks distinct random fortunes from the snapshot, honoring the weights.
+   *
+   * @param count The number of fortunes to pick
+   * @return The fortunes, which will be fewer than requested if the snapshot
+   *         does not have that many
+   */
+  public List<String> getRandomFortunes(int count) {
+    int[] indexes = randomIndexes(count);
+    List<String> picked = new ArrayList<>(indexes.length);
+
+    for (int index : indexes) {
+      picked.add(fortunes[index]);
+    }
+
+    return picked;
+  }
+
+  /**
+   * <p>
+   *   Picks the positions of distinct random fortunes in the snapshot. When
+   *   every fortune has the same weight, Floyd's algorithm is used, so the
+   *   cost depends on the number of fortunes picked rather than the size of
+   *   the snapshot.
+   * </p>
+   * <p>
+   *   Otherwise the alias table is drawn from and duplicates are thrown away.
+   *   If a few fortunes carry so much weight that we keep drawing them, we
+   *   stop after {@value #MAX_DRAWS_PER_PICK} draws per fortune and fill the
+   *   rest uniformly. That bounds the cost of a call at the expense of the
+   *   odds of the remaining picks.
+   * </p>
+   *
+   * @param count The number of positions to pick
+   * @return The positions in random order, which will be fewer than requested
+   *         if the snapshot does not have that many fortunes
+   */
+  public int[] randomIndexes(int count) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int size = Math.max(0, Math.min(count, fortunes.length));
+    int[] picked = new int[size];
+
+    if (sampler == null || size == fortunes.length) {
+      long[] uniform = FloydSampler.sample(fortunes.length, size, random);
+      for (int i = 0; i < size; i++) {
+        picked[i] = (int) uniform[i];
+      }
+
+      return picked;
+    }
+
+    int found = 0;
+    for (int draw = 0; found < size && draw < size * MAX_DRAWS_PER_PICK; draw++) {
+      int index = sampler.sample(random);
+      if (!contains(picked, found, index)) {
+        picked[found++] = index;
+      }
+    }
+
+    // Fill whatever is left by walking the snapshot from a random spot
+    int start = random.nextInt(fortunes.length);
+    for (int i = 0; found < size; i++) {
+      int index = (start + i) % fortunes.length;
+      if (!contains(picked, found, index)) {
+        picked[found++] = index;
+      }
+    }
+
+    return picked;
+  }
+
+  /**
+   * Determines if this snapshot was built by appending fortunes to the
+   * supplied snapshot. When it was, anything derived from the first
+   * <code>other.size()</code> entries of the other snapshot is still valid for
+   * this one.
+   *
+   * @param other The older snapshot
+   * @return <code>true</code> if this snapshot starts with the other snapshot
+   */
+  public boolean startsWith(FortuneSnapshot other) {
+    if (other == null || other.fortunes.length > fortunes.length) {
+      return false;
+    }
+
+    // Appending copies references, so identity is enough to tell them apart
+    for (int i = 0; i < other.fortunes.length; i++) {
+      if (other.fortunes[i] != fortunes[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Gets a read-only view of the fortunes. No copy is made.
+   *
+   * @return The fortunes
+   */
+  public List<String> asList() {
+    return Collections.unmodifiableList(Arrays.asList(fortunes));
+  }
+
+  /**
+   * Utility method to determine if every weight is the same, in which case
+   * there is no need for an alias table.
+   *
+   * @param weights The weights
+   * @return <code>true</code> if all the weights are equal
+   */
+  private static boolean isUniform(double[] weights) {
+    for (int i = 1; i < weights.length; i++) {
+      if (weights[i] != weights[0]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Utility method to check the start of an array for a value.
+   *
+   * @param values The array to check
+   * @param length The number of values at the start of the array to check
+   * @param value The value to look for
+   * @return <code>true</code> if found
+   */
+  private static boolean contains(int[] values, int length, int value) {
+    for (int i = 0; i < length; i++) {
+      if (values[i] == value) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+}
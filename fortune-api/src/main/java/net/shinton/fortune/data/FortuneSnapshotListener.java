@@ -0,0 +1,17 @@
+package net.shinton.fortune.data;
+
+/**
+ * Callback used by the {@link FortuneModel} to tell interested parties that a
+ * new {@link FortuneSnapshot} has been published. This allows things like
+ * response caches to be kept in step with the snapshot without polling.
+ */
+@FunctionalInterface
+public interface FortuneSnapshotListener {
+  /**
+   * Called when a new snapshot has been published. Calls are made one at a
+   * time in the order the snapshots were published.
+   *
+   * @param snapshot The new snapshot
+   */
+  void snapshotChanged(FortuneSnapshot snapshot);
+}
@@ -0,0 +1,416 @@
+package net.shinton.fortune.data;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ *   An in-memory index for suggesting fortunes while a new one is being
+ *   typed. Every word of every fortune is normalized (lower case, accents
+ *   removed) and kept in a sorted array alongside the position of its fortune
+ *   in the snapshot. The fortunes that have a word starting with a prefix sit
+ *   next to each other in the array, so finding them takes a binary search
+ *   and a short scan rather than a look at every fortune. The entries for a
+ *   whole word sit next to each other too, in order of position, so the
+ *   fortunes with every one of several words are found by intersecting
+ *   those runs without looking at the text of any fortune.
+ * </p>
+ * <p>
+ *   Snapshots only ever grow by appending, so only the new fortunes are
+ *   indexed when one is published. They go into a small sorted array of
+ *   recent words, which is merged into the main array once it gets big
+ *   enough. That keeps the cost of a single insert small without the main
+ *   array having to be copied every time.
+ * </p>
+ * <p>
+ *   Lookups never take a lock. They read the current arrays once and the
+ *   arrays are never changed after they are published.
+ * </p>
+ */
+public class FortuneSuggestIndex implements FortuneSnapshotListener {
+  private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{N}]+");
+  private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+  /**
+   * The most words kept in the recent array before it is merged into the
+   * main array.
+   */
+  private static final int MAX_RECENT_WORDS = 16_384;
+
+  /**
+   * The most words looked at for a single lookup. Looking at a word costs
+   * no more than a binary search, so this is only a safety limit for a
+   * prefix of a letter or two on a very large index.
+   */
+  private static final int MAX_SCANNED_WORDS = 1_000_000;
+
+  private volatile State state;
+
+  /**
+   * Creates a new index and registers it with the model so that it is built
+   * right away and kept up to date.
+   *
+   * @param model The fortune model, which must be in snapshot mode
+   */
+  public FortuneSuggestIndex(FortuneModel model) {
+    model.addSnapshotListener(this);
+  }
+
+  /**
+   * <p>
+   *   Suggests fortunes for what has been typed so far. The last word is
+   *   treated as a prefix that is still being typed. Every other word has to
+   *   appear in a suggested fortune as a whole word.
+   * </p>
+   * <p>
+   *   Fortunes with a word that exactly matches the prefix come first,
+   *   followed by the ones with longer words, in the order of those words.
+   * </p>
+   *
+   * @param text The text typed so far
+   * @param limit The most fortunes to suggest
+   * @return The suggested fortunes, which is empty if the text has no words
+   */
+  public List<String> suggest(String text, int limit) {
+    List<String> words = normalizedWords(text);
+    if (words.isEmpty()) {
+      return List.of();
+    }
+
+    State current = state;
+    String prefix = words.get(words.size() - 1);
+    Set<String> required = new HashSet<>(words.subList(0, words.size() - 1));
+
+    // The fortunes that have every other word, or null if any fortune will do
+    int[] candidates = required.isEmpty() ? null : current.positionsWithAll(required);
+    if (candidates != null && candidates.length == 0) {
+      return List.of();
+    }
+
+    int wanted = (candidates == null) ? limit : Math.min(limit, candidates.length);
+
+    // Walk the matches in both arrays together so they come out in word order
+    int mainIndex = current.main.lowerBound(prefix);
+    int recentIndex = current.recent.lowerBound(prefix);
+    Set<Integer> seen = new HashSet<>();
+    List<String> fortunes = new ArrayList<>(limit);
+
+    for (int scanned = 0; scanned < MAX_SCANNED_WORDS && fortunes.size() < wanted; scanned++) {
+      boolean mainMatches = current.main.matches(mainIndex, prefix);
+      boolean recentMatches = current.recent.matches(recentIndex, prefix);
+
+      int position;
+      if (mainMatches && (!recentMatches || current.main.words[mainIndex].compareTo(current.recent.words[recentIndex]) <= 0)) {
+        position = current.main.positions[mainIndex++];
+      } else if (recentMatches) {
+        position = current.recent.positions[recentIndex++];
+      } else {
+        break;
+      }
+
+      if ((candidates == null || Arrays.binarySearch(candidates, position) >= 0) && seen.add(position)) {
+        fortunes.add(current.snapshot.get(position));
+      }
+    }
+
+    return fortunes;
+  }
+
+  /**
+   * Indexes the fortunes that are new in the snapshot. If the snapshot does
+   * not build on the previous one, the whole index is rebuilt.
+   *
+   * @param snapshot The new snapshot
+   */
+  @Override
+  public void snapshotChanged(FortuneSnapshot snapshot) {
+    State previous = state;
+
+    if (previous == null || !snapshot.startsWith(previous.snapshot)) {
+      state = new State(snapshot, Words.of(snapshot, 0), Words.EMPTY);
+      return;
+    }
+
+    Words main = previous.main;
+    Words recent = previous.recent.merge(Words.of(snapshot, previous.snapshot.size()));
+
+    if (recent.size() > MAX_RECENT_WORDS) {
+      main = main.merge(recent);
+      recent = Words.EMPTY;
+    }
+
+    state = new State(snapshot, main, recent);
+  }
+
+  /**
+   * Utility method to split text into normalized words.
+   *
+   * @param text The text
+   * @return The words in lower case with any accents removed
+   */
+  static List<String> normalizedWords(String text) {
+    String normalized = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("")
+        .toLowerCase(Locale.ROOT);
+
+    List<String> words = new ArrayList<>();
+    Matcher matcher = WORD.matcher(normalized);
+    while (matcher.find()) {
+      words.add(matcher.group());
+    }
+
+    return words;
+  }
+
+  /**
+   * The snapshot being indexed along with its words.
+   */
+  private static class State {
+    private final FortuneSnapshot snapshot;
+    private final Words main;
+    private final Words recent;
+
+    /**
+     * Creates a new state.
+     *
+     * @param snapshot The snapshot the words came from
+     * @param main The main array of words
+     * @param recent The words that have not been merged into the main array
+     */
+    State(FortuneSnapshot snapshot, Words main, Words recent) {
+      this.snapshot = snapshot;
+      this.main = main;
+      this.recent = recent;
+    }
+
+    /**
+     * Finds the fortunes that have all of the words, starting from the word
+     * with the fewest fortunes and keeping the ones the other words have too.
+     *
+     * @param words The whole words
+     * @return The positions of the fortunes, in ascending order
+     */
+    int[] positionsWithAll(Set<String> words) {
+      List<int[]> lists = new ArrayList<>(words.size());
+      for (String word : words) {
+        lists.add(positionsOf(word));
+      }
+
+      lists.sort(Comparator.comparingInt(list -> list.length));
+
+      int[] result = lists.get(0);
+      for (int i = 1; i < lists.size() && result.length > 0; i++) {
+        int[] other = lists.get(i);
+        int kept = 0;
+        int[] next = new int[result.length];
+        for (int position : result) {
+          if (Arrays.binarySearch(other, position) >= 0) {
+            next[kept++] = position;
+          }
+        }
+
+        result = Arrays.copyOf(next, kept);
+      }
+
+      return result;
+    }
+
+    /**
+     * Finds the fortunes that have a whole word. Recent words only ever come
+     * from fortunes after the ones in the main array, so putting the two runs
+     * end to end keeps the positions in order.
+     *
+     * @param word The whole word
+     * @return The positions of the fortunes, in ascending order
+     */
+    private int[] positionsOf(String word) {
+      int mainFrom = main.lowerBound(word);
+      int mainTo = main.upperBound(word);
+      int recentFrom = recent.lowerBound(word);
+      int recentTo = recent.upperBound(word);
+
+      int[] positions = new int[(mainTo - mainFrom) + (recentTo - recentFrom)];
+      System.arraycopy(main.positions, mainFrom, positions, 0, mainTo - mainFrom);
+      System.arraycopy(recent.positions, recentFrom, positions, mainTo - mainFrom, recentTo - recentFrom);
+      return positions;
+    }
+  }
+
+  /**
+   * A sorted array of words, each with the position of the fortune it came
+   * from. Entries are ordered by word and then by position.
+   */
+  private static final class Words {
+    private static final Words EMPTY = new Words(new String[0], new int[0]);
+
+    private final String[] words;
+    private final int[] positions;
+
+    /**
+     * Creates a new array of words.
+     *
+     * @param words The sorted words
+     * @param positions The position of the fortune of each word
+     */
+    Words(String[] words, int[] positions) {
+      this.words = words;
+      this.positions = positions;
+    }
+
+    /**
+     * Indexes the fortunes in a snapshot from a position onwards. A word that
+     * appears more than once in a fortune is only indexed once.
+     *
+     * @param snapshot The snapshot
+     * @param from The position of the first fortune to index
+     * @return The words, sorted
+     */
+    static Words of(FortuneSnapshot snapshot, int from) {
+      // Fortunes share a lot of words, so share the strings as well
+      Map<String, String> shared = new HashMap<>();
+      List<String> words = new ArrayList<>();
+      List<Integer> positions = new ArrayList<>();
+
+      for (int position = from; position < snapshot.size(); position++) {
+        for (String word : new HashSet<>(normalizedWords(snapshot.get(position)))) {
+          words.add(shared.computeIfAbsent(word, key -> key));
+          positions.add(position);
+        }
+      }
+
+      Integer[] order = new Integer[words.size()];
+      for (int i = 0; i < order.length; i++) {
+        order[i] = i;
+      }
+
+      Arrays.sort(order, Comparator.<Integer, String>comparing(words::get).thenComparing(positions::get));
+
+      String[] sortedWords = new String[order.length];
+      int[] sortedPositions = new int[order.length];
+      for (int i = 0; i < order.length; i++) {
+        sortedWords[i] = words.get(order[i]);
+        sortedPositions[i] = positions.get(order[i]);
+      }
+
+      return new Words(sortedWords, sortedPositions);
+    }
+
+    /**
+     * Merges two arrays of words into a new one.
+     *
+     * @param other The other array
+     * @return The merged array
+     */
+    Words merge(Words other) {
+      if (other.size() == 0) {
+        return this;
+      }
+
+      String[] mergedWords = new String[size() + other.size()];
+      int[] mergedPositions = new int[mergedWords.length];
+      int left = 0;
+      int right = 0;
+
+      for (int i = 0; i < mergedWords.length; i++) {
+        boolean takeLeft = right == other.size() ||
+            (left < size() && compare(left, other, right) <= 0);
+
+        if (takeLeft) {
+          mergedWords[i] = words[left];
+          mergedPositions[i] = positions[left++];
+        } else {
+          mergedWords[i] = other.words[right];
+          mergedPositions[i] = other.positions[right++];
+        }
+      }
+
+      return new Words(mergedWords, mergedPositions);
+    }
+
+    /**
+     * Finds the first entry whose word is not less than the prefix.
+     *
+     * @param prefix The prefix
+     * @return The index of the entry, or the size if there is none
+     */
+    int lowerBound(String prefix) {
+      int low = 0;
+      int high = words.length;
+
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (words[middle].compareTo(prefix) < 0) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+
+      return low;
+    }
+
+    /**
+     * Finds the first entry whose word is greater than the word.
+     *
+     * @param word The word
+     * @return The index of the entry, or the size if there is none
+     */
+    int upperBound(String word) {
+      int low = 0;
+      int high = words.length;
+
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (words[middle].compareTo(word) <= 0) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+
+      return low;
+    }
+
+    /**
+     * Determines if an entry exists and its word starts with the prefix.
+     *
+     * @param index The index of the entry
+     * @param prefix The prefix
+     * @return <code>true</code> if the entry matches
+     */
+    boolean matches(int index, String prefix) {
+      return index < words.length && words[index].startsWith(prefix);
+    }
+
+    /**
+     * Gets the number of entries.
+     *
+     * @return The number of entries
+     */
+    int size() {
+      return words.length;
+    }
+
+    /**
+     * Compares an entry with an entry of another array.
+     *
+     * @param index The index of the entry in this array
+     * @param other The other array
+     * @param otherIndex The index of the entry in the other array
+     * @return The order of the two entries
+     */
+    private int compare(int index, Words other, int otherIndex) {
+      int order = words[index].compareTo(other.words[otherIndex]);
+      return (order != 0) ? order : Integer.compare(positions[index], other.positions[otherIndex]);
+    }
+  }
+}
@@ -0,0 +1,284 @@
+package net.shinton.fortune.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import net.shinton.fortune.model.InsertStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ *   Funnels single fortune inserts through one writer thread so that they can
+ *   be committed in groups. Request threads submit a fortune and get a future
+ *   back. The writer takes whatever is waiting in the queue, waits a little
+ *   longer for more if the group is not full, and adds the whole group with
+ *   {@link FortuneModel#addFortunes(List)} in a single transaction.
+ * </p>
+ * <p>
+ *   SQLite only allows one writer at a time, so a burst of requests that each
+ *   insert on their own mostly wait on the database lock and pay for a commit
+ *   each. With one writer there is no lock contention, and the cost of a
+ *   commit is shared by the whole group.
+ * </p>
+ * <p>
+ *   The queue is bounded. When it is full, {@link #submit(String, double)}
+ *   returns <code>null</code> straight away so the caller can push back on the
+ *   client instead of piling up work. A caller that gives up waiting can
+ *   {@link #withdraw} its fortune, which then is never added, unless the
+ *   writer has already taken it into a group.
+ * </p>
+ */
+public class FortuneWriteQueue implements AutoCloseable {
+  private static final Logger log = LoggerFactory.getLogger(FortuneWriteQueue.class);
+
+  /**
+   * How long the writer waits for the first fortune of a group before it
+   * checks whether it has been closed.
+   */
+  private static final long IDLE_POLL_MILLIS = 100;
+
+  private final FortuneModel model;
+  private final BlockingQueue<PendingWrite> queue;
+  private final int maxBatchSize;
+  private final long maxDelayNanos;
+  private final Thread writer;
+  private volatile boolean closed;
+
+  /**
+   * Creates a new write queue and starts its writer thread.
+   *
+   * @param model The model to add the fortunes to
+   * @param capacity The most fortunes that can be waiting at once
+   * @param maxBatchSize The most fortunes committed together
+   * @param maxDelayMillis How long to wait for a group to fill up once its
+   *        first fortune has arrived
+   */
+  public FortuneWriteQueue(FortuneModel model, int capacity, int maxBatchSize, long maxDelayMillis) {
+    this.model = model;
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.maxBatchSize = maxBatchSize;
+    this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+
+    this.writer = new Thread(this::run, "fortune-writer");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  /**
+   * Queues a fortune to be added.
+   *
+   * @param fortune The fortune to add
+   * @param weight The relative weight of the fortune, which must be positive
+   * @return A future that completes with {@link InsertStatus#created} or
+   *         {@link InsertStatus#duplicate} once the group it is in has been
+   *         committed, or <code>null</code> if the queue is full
+   * @throws IllegalStateException The queue has been closed
+   */
+  public CompletableFuture<InsertStatus> submit(String fortune, double weight) {
+    if (closed) {
+      throw new IllegalStateException("The write queue is closed");
+    }
+
+    PendingWrite write = new PendingWrite(new Fortune(fortune, weight));
+    if (!queue.offer(write)) {
+      return null;
+    }
+
+    // If the queue was closed in the meantime, the writer may already be gone
+    if (closed && queue.remove(write)) {
+      throw new IllegalStateException("The write queue is closed");
+    }
+
+    return write;
+  }
+
+  /**
+   * Takes back a fortune that has not been added yet. Once withdrawn, the
+   * fortune is never added and its future is cancelled.
+   *
+   * @param result The future returned by {@link #submit(String, double)}
+   * @return <code>true</code> if withdrawn, or <code>false</code> if the
+   *         writer has already taken the fortune, in which case its future
+   *         completes as usual
+   */
+  public boolean withdraw(CompletableFuture<InsertStatus> result) {
+    if (!(result instanceof PendingWrite)) {
+      return false;
+    }
+
+    PendingWrite write = (PendingWrite) result;
+    if (!write.take()) {
+      return false;
+    }
+
+    queue.remove(write);
+    write.cancel(false);
+    return true;
+  }
+
+  /**
+   * Stops taking new fortunes, waits for the ones already queued to be
+   * committed and stops the writer thread. If the wait is interrupted, the
+   * writer is left to finish on its own.
+   */
+  @Override
+  public void close() {
+    closed = true;
+
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      log.warn("Interrupted while waiting for {} queued fortunes to be written", queue.size());
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * The writer loop. It keeps going until the queue is closed and empty. If
+   * it is interrupted, every fortune it did not get to fails.
+   */
+  private void run() {
+    List<PendingWrite> batch = new ArrayList<>(maxBatchSize);
+
+    try {
+      while (!closed || !queue.isEmpty()) {
+        PendingWrite first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null || !first.take()) {
+          continue;
+        }
+
+        batch.add(first);
+        fill(batch);
+        write(batch);
+        batch.clear();
+      }
+
+    } catch (InterruptedException e) {
+      log.warn("Fortune writer interrupted with {} fortunes queued", queue.size());
+      Thread.currentThread().interrupt();
+
+    } finally {
+      // Nothing will write these now, so do not leave anyone waiting on them
+      takeWaiting(batch, Integer.MAX_VALUE);
+      IllegalStateException stopped = new IllegalStateException("The write queue stopped before the fortune was added");
+      for (PendingWrite write : batch) {
+        write.completeExceptionally(stopped);
+      }
+    }
+  }
+
+  /**
+   * Adds fortunes to the group until it is full or the delay has passed.
+   *
+   * @param batch The group, which already holds its first fortune
+   * @throws InterruptedException The wait was interrupted
+   */
+  private void fill(List<PendingWrite> batch) throws InterruptedException {
+    long deadline = System.nanoTime() + maxDelayNanos;
+
+    while (batch.size() < maxBatchSize) {
+      // Take everything that is already waiting before sleeping on the queue
+      if (takeWaiting(batch, maxBatchSize - batch.size()) > 0) {
+        continue;
+      }
+
+      long remaining = deadline - System.nanoTime();
+      PendingWrite next = (remaining > 0) ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+      if (next == null) {
+        return;
+      }
+
+      if (next.take()) {
+        batch.add(next);
+      }
+    }
+  }
+
+  /**
+   * Moves fortunes that are already waiting into the group, skipping any that
+   * were withdrawn.
+   *
+   * @param batch The group
+   * @param max The most fortunes to move
+   * @return The number of fortunes taken off the queue, withdrawn or not
+   */
+  private int takeWaiting(List<PendingWrite> batch, int max) {
+    List<PendingWrite> waiting = new ArrayList<>();
+    int drained = queue.drainTo(waiting, max);
+    for (PendingWrite write : waiting) {
+      if (write.take()) {
+        batch.add(write);
+      }
+    }
+
+    return drained;
+  }
+
+  /**
+   * Gets the writer thread.
+   *
+   * @return The writer thread
+   */
+  Thread getWriter() {
+    return writer;
+  }
+
+  /**
+   * Commits a group and completes the future of every fortune in it. If the
+   * commit fails, every future in the group fails with the same error.
+   *
+   * @param batch The group
+   */
+  private void write(List<PendingWrite> batch) {
+    List<Fortune> fortunes = new ArrayList<>(batch.size());
+    for (PendingWrite write : batch) {
+      fortunes.add(write.fortune);
+    }
+
+    try {
+      boolean[] added = model.addFortunes(fortunes);
+      for (int i = 0; i < added.length; i++) {
+        batch.get(i).complete(added[i] ? InsertStatus.created : InsertStatus.duplicate);
+      }
+
+    } catch (RuntimeException e) {
+      log.error("Could not commit {} fortunes", batch.size(), e);
+      for (PendingWrite write : batch) {
+        write.completeExceptionally(e);
+      }
+    }
+  }
+
+  /**
+   * A fortune waiting in the queue, which is also the future its caller
+   * waits on. It is taken exactly once, either by the writer to add it or by
+   * its caller to withdraw it.
+   */
+  private static final class PendingWrite extends CompletableFuture<InsertStatus> {
+    private final Fortune fortune;
+    private final AtomicBoolean taken = new AtomicBoolean();
+
+    /**
+     * Creates a new pending write.
+     *
+     * @param fortune The fortune to add
+     */
+    PendingWrite(Fortune fortune) {
+      this.fortune = fortune;
+    }
+
+    /**
+     * Claims the write.
+     *
+     * @return <code>true</code> if it had not been taken before
+     */
+    boolean take() {
+      return taken.compareAndSet(false, true);
+    }
+  }
+}
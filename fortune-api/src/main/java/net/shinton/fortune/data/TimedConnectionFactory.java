@@ -0,0 +1,65 @@
+package net.shinton.fortune.data;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import net.shinton.fortune.metrics.ServerTiming;
+import org.jdbi.v3.core.ConnectionFactory;
+
+/**
+ * Hands out connections from another connection factory and adds the time
+ * from asking for a connection to giving it back to the database phase of
+ * the request being timed, if there is one. That covers waiting for the pool
+ * as well as every query run on the connection.
+ */
+public class TimedConnectionFactory implements ConnectionFactory {
+  private final ConnectionFactory connectionFactory;
+
+  /**
+   * Creates a new connection factory.
+   *
+   * @param connectionFactory The connection factory to get connections from
+   */
+  public TimedConnectionFactory(ConnectionFactory connectionFactory) {
+    this.connectionFactory = connectionFactory;
+  }
+
+  /**
+   * Gets a connection, starting the clock on the database phase.
+   *
+   * @return The connection
+   * @throws SQLException The connection could not be opened
+   */
+  @Override
+  public Connection openConnection() throws SQLException {
+    ServerTiming timing = ServerTiming.current();
+    if (timing == null) {
+      return connectionFactory.openConnection();
+    }
+
+    timing.enter(ServerTiming.Phase.DB);
+    try {
+      return connectionFactory.openConnection();
+    } catch (SQLException | RuntimeException e) {
+      timing.exit(ServerTiming.Phase.DB);
+      throw e;
+    }
+  }
+
+  /**
+   * Gives the connection back, stopping the clock on the database phase.
+   *
+   * @param conn The connection
+   * @throws SQLException The connection could not be closed
+   */
+  @Override
+  public void closeConnection(Connection conn) throws SQLException {
+    try {
+      connectionFactory.closeConnection(conn);
+    } finally {
+      ServerTiming timing = ServerTiming.current();
+      if (timing != null) {
+        timing.exit(ServerTiming.Phase.DB);
+      }
+    }
+  }
+}
@@ -1,8 +1,25 @@
 package net.shinton.fortune.data.accessor;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import net.shinton.exception.DuplicateEntryException;
+import net.shinton.fortune.data.Fortune;
+import net.shinton.fortune.data.FortuneConsumer;
+import net.shinton.fortune.data.FortuneIdRange;
+import net.shinton.fortune.data.FortunePage;
+import net.shinton.util.FloydSampler;
 import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.result.ResultIterator;
+import org.jdbi.v3.core.statement.PreparedBatch;
 import org.jdbi.v3.core.statement.UnableToExecuteStatementException;
 
 /**
@@ -12,17 +29,88 @@ import org.jdbi.v3.core.statement.UnableToExecuteStatementException;
 public class FortuneAccessor {
   private final Handle handle;
 
+  /*
+   * Both lists are ordered by id so they match each other and the order in
+   * which fortunes are appended to a snapshot.
+   */
   private static final String GET_ALL =
-      "SELECT quote FROM fortune";
+      "SELECT quote FROM fortune ORDER BY id";
 
-  private static final String GET_RANDOM_FORTUNE =
-      "SELECT quote" +
+  private static final String GET_ALL_WEIGHTED =
+      "SELECT quote, weight FROM fortune ORDER BY id";
+
+  /*
+   * Seeking past the last id of the previous page costs the same no matter how
+   * deep into the table we are, unlike OFFSET which has to walk every row it
+   * skips.
+   */
+  private static final String GET_PAGE =
+      "SELECT id, quote" +
       "  FROM fortune " +
-      " ORDER BY RANDOM() " +
+      " WHERE id > :lastId " +
+      " ORDER BY id " +
+      " LIMIT :limit";
+
+  /*
+   * SQLite only answers MIN() and MAX() from an index when they are the only
+   * thing in the query, so each one gets its own sub-select.
+   */
+  private static final String GET_ID_RANGE =
+      "SELECT (SELECT MIN(id) FROM fortune) AS min_id," +
+      "       (SELECT MAX(id) FROM fortune) AS max_id," +
+      "       (SELECT MAX(weight) FROM fortune) AS max_weight";
+
+  private static final String GET_FORTUNE_BY_ID =
+      "SELECT quote, weight FROM fortune WHERE id = :id";
+
+  private static final String GET_FORTUNES_BY_IDS =
+      "SELECT quote, weight FROM fortune WHERE id IN (<ids>)";
+
+  private static final String GET_FORTUNE_AT_OR_AFTER_ID =
+      "SELECT quote, weight" +
+      "  FROM fortune " +
+      " WHERE id >= :id " +
+      " ORDER BY id " +
       " LIMIT 1";
 
+  /*
+   * The full-text index reads the quotes from the fortune table, so there is
+   * no need to join against it. The rank is the bm25 score of each match.
+   */
+  private static final String SEARCH =
+      "SELECT quote" +
+      "  FROM fortune_search " +
+      " WHERE fortune_search MATCH :query " +
+      " ORDER BY rank " +
+      " LIMIT :limit";
+
+  /**
+   * The runs of letters and digits in a search that become its terms. This
+   * matches what the <code>unicode61</code> tokenizer treats as a token.
+   */
+  private static final Pattern SEARCH_TERM = Pattern.compile("[\\p{L}\\p{N}]+");
+
+  /**
+   * The number of times we try to land directly on an existing id before
+   * falling back to seeking the next id. See {@link #getRandomFortune(FortuneIdRange)}.
+   */
+  private static final int MAX_RANDOM_PROBES = 8;
+
+  /**
+   * The number of candidates we are willing to reject when picking a weighted
+   * fortune. See {@link #getRandomFortune(FortuneIdRange)}.
+   */
+  private static final int MAX_WEIGHTED_ATTEMPTS = 64;
+
   private static final String INSERT_FORTUNE =
-      "INSERT INTO fortune ('quote') VALUES (:fortune)";
+      "INSERT INTO fortune ('quote', 'weight') VALUES (:fortune, :weight)";
+
+  /*
+   * OR IGNORE skips a row that breaks any constraint, not just the unique
+   * index, so the weights have to be checked before they get here.
+   */
+  private static final String INSERT_FORTUNE_IF_ABSENT =
+      "INSERT OR IGNORE INTO fortune ('quote', 'weight') VALUES (:fortune, :weight)";
 
   /**
    * Create a new accessor
@@ -44,28 +132,284 @@ public class FortuneAccessor {
         .list();
   }
 
+  /**
+   * Reads every fortune from the database and hands them to the consumer one
+   * at a time. Rows are stepped through as they are consumed rather than
+   * collected into a list, so memory use does not grow with the table.
+   *
+   * @param consumer The consumer of the fortunes
+   * @throws IOException The consumer could not write a fortune
+   */
+  public void forEachFortune(FortuneConsumer consumer) throws IOException {
+    try (ResultIterator<String> fortunes = handle.createQuery(GET_ALL).mapTo(String.class).iterator()) {
+      while (fortunes.hasNext()) {
+        consumer.accept(fortunes.next());
+      }
+    }
+  }
+
+  /**
+   * Gets a page of fortunes in id order.
+   *
+   * @param lastId The id of the last fortune on the previous page or
+   *        {@link Long#MIN_VALUE} to get the first page
+   * @param limit The most fortunes to put on the page
+   * @return The page
+   */
+  public FortunePage getFortunePage(long lastId, int limit) {
+    // Ask for one more row than we need to find out if there is another page
+    List<Map.Entry<Long, String>> rows = handle.createQuery(GET_PAGE)
+        .bind("lastId", lastId)
+        .bind("limit", limit + 1)
+        .map((rs, ctx) -> Map.entry(rs.getLong("id"), rs.getString("quote")))
+        .list();
+
+    boolean more = rows.size() > limit;
+    if (more) {
+      rows = rows.subList(0, limit);
+    }
+
+    List<String> fortunes = new ArrayList<>(rows.size());
+    for (Map.Entry<Long, String> row : rows) {
+      fortunes.add(row.getValue());
+    }
+
+    return new FortunePage(fortunes, more ? rows.get(rows.size() - 1).getKey() : null);
+  }
+
+  /**
+   * Get all the fortunes from the database along with their weights
+   *
+   * @return A list of all fortunes
+   */
+  public List<Fortune> getAllWeightedFortunes() {
+    return handle.createQuery(GET_ALL_WEIGHTED)
+        .map((rs, ctx) -> new Fortune(rs.getString("quote"), rs.getDouble("weight")))
+        .list();
+  }
+
   /**
    * Gets a random fortune from the database
    *
-   * @return The random fortune
+   * @return The random fortune or <code>null</code> if there are no fortunes
    */
   public String getRandomFortune() {
-    return handle.createQuery(GET_RANDOM_FORTUNE)
+    FortuneIdRange range = getIdRange();
+    return (range == null) ? null : getRandomFortune(range);
+  }
+
+  /**
+   * <p>
+   *   Gets a random fortune from the database using a previously fetched id
+   *   range, honoring the weight of each fortune.
+   * </p>
+   * <p>
+   *   A candidate is picked uniformly (see {@link #getUniformFortune(FortuneIdRange)})
+   *   and kept with a probability of its weight divided by the largest weight
+   *   in the table. Otherwise it is thrown away and another candidate is
+   *   picked. When every fortune has the same weight, the first candidate is
+   *   always kept, so unweighted tables pay nothing extra.
+   * </p>
+   * <p>
+   *   The expected number of candidates is the largest weight divided by the
+   *   average weight. To bound the cost of a call on a badly skewed table, we
+   *   settle for the last candidate after {@value #MAX_WEIGHTED_ATTEMPTS}
+   *   attempts. The in-memory snapshot should be preferred for such tables
+   *   since it picks in constant time regardless of the weights.
+   * </p>
+   *
+   * @param range The id range of the table
+   * @return The random fortune or <code>null</code> if there are no fortunes
+   *         inside the range
+   */
+  public String getRandomFortune(FortuneIdRange range) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    Fortune candidate = null;
+
+    for (int attempt = 0; attempt < MAX_WEIGHTED_ATTEMPTS; attempt++) {
+      candidate = getUniformFortune(range);
+
+      if (candidate == null || accept(candidate, range, random)) {
+        break;
+      }
+    }
+
+    return (candidate == null) ? null : candidate.getQuote();
+  }
+
+  /**
+   * <p>
+   *   Gets distinct random fortunes from the database using a previously
+   *   fetched id range, honoring the weight of each fortune.
+   * </p>
+   * <p>
+   *   Each round picks as many distinct ids as we still need with Floyd's
+   *   algorithm and fetches them all with a single <code>IN</code> query.
+   *   Gaps, rejected weights and fortunes we already have leave us short, so
+   *   this is repeated for up to {@value #MAX_RANDOM_PROBES} rounds. On a
+   *   sparse or badly skewed table, fewer fortunes than requested may be
+   *   returned.
+   * </p>
+   *
+   * @param range The id range of the table
+   * @param count The number of fortunes to get
+   * @return The fortunes in random order
+   */
+  public List<String> getRandomFortunes(FortuneIdRange range, int count) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    long span = range.getMaxId() - range.getMinId() + 1;
+    int wanted = (int) Math.min(count, span);
+    Set<String> picked = new LinkedHashSet<>();
+
+    for (int round = 0; round < MAX_RANDOM_PROBES && picked.size() < wanted; round++) {
+      List<Long> ids = new ArrayList<>();
+      for (long offset : FloydSampler.sample(span, wanted - picked.size(), random)) {
+        ids.add(range.getMinId() + offset);
+      }
+
+      List<Fortune> found = handle.createQuery(GET_FORTUNES_BY_IDS)
+          .bindList("ids", ids)
+          .map((rs, ctx) -> new Fortune(rs.getString("quote"), rs.getDouble("weight")))
+          .list();
+
+      for (Fortune fortune : found) {
+        if (picked.size() < wanted && accept(fortune, range, random)) {
+          picked.add(fortune.getQuote());
+        }
+      }
+    }
+
+    // The rows come back in id order, so put them back in a random order
+    List<String> fortunes = new ArrayList<>(picked);
+    Collections.shuffle(fortunes, random);
+    return fortunes;
+  }
+
+  /**
+   * <p>
+   *   Gets a random fortune from the database, ignoring weights. Rather than
+   *   asking SQLite to sort the whole table with <code>ORDER BY RANDOM()</code>,
+   *   a random id is picked from the range and looked up directly using the
+   *   rowid B-tree.
+   * </p>
+   * <p>
+   *   Deletes can leave gaps in the ids. Landing on a gap is treated as a miss
+   *   and another id is tried, which keeps every row equally likely. If the
+   *   table is so sparse that we keep missing, we settle for the first row
+   *   after the last random id. That slightly favors rows that follow large
+   *   gaps, but it bounds the cost of a call.
+   * </p>
+   *
+   * @param range The id range of the table
+   * @return The random fortune or <code>null</code> if there are no fortunes
+   *         inside the range
+   */
+  private Fortune getUniformFortune(FortuneIdRange range) {
+    long id = range.randomId();
+
+    for (int probe = 0; probe < MAX_RANDOM_PROBES; probe++) {
+      Fortune fortune = findFortune(GET_FORTUNE_BY_ID, id);
+      if (fortune != null) {
+        return fortune;
+      }
+
+      id = range.randomId();
+    }
+
+    return findFortune(GET_FORTUNE_AT_OR_AFTER_ID, id);
+  }
+
+  /**
+   * Gets the smallest and largest id in the table along with the largest
+   * weight. All three are answered from the ends of a B-tree, so this does not
+   * scan the table.
+   *
+   * @return The id range or <code>null</code> if the table is empty
+   */
+  public FortuneIdRange getIdRange() {
+    return handle.createQuery(GET_ID_RANGE)
+        .map((rs, ctx) -> {
+          long minId = rs.getLong("min_id");
+          return rs.wasNull() ?
+              null :
+              new FortuneIdRange(minId, rs.getLong("max_id"), rs.getDouble("max_weight"));
+        })
+        .one();
+  }
+
+  /**
+   * <p>
+   *   Searches the fortunes using the full-text index. Every word in the text
+   *   has to appear in a fortune for it to match, though words are stemmed so
+   *   that "friend" also matches "friends". The best matches come first.
+   * </p>
+   * <p>
+   *   The text is split into words and each one is quoted, so whatever the
+   *   caller sends is never parsed as FTS5 query syntax.
+   * </p>
+   *
+   * @param text The text to search for
+   * @param limit The most fortunes to return
+   * @return The matching fortunes, which is empty if the text has no words
+   */
+  public List<String> searchFortunes(String text, int limit) {
+    StringBuilder query = new StringBuilder();
+    Matcher matcher = SEARCH_TERM.matcher(text);
+
+    while (matcher.find()) {
+      if (query.length() > 0) {
+        query.append(' ');
+      }
+
+      query.append('"').append(matcher.group()).append('"');
+    }
+
+    if (query.length() == 0) {
+      return List.of();
+    }
+
+    return handle.createQuery(SEARCH)
+        .bind("query", query.toString())
+        .bind("limit", limit)
         .mapTo(String.class)
-        .first();
+        .list();
   }
 
   /**
-   * Adds a fortune to the database
+   * Gets the fortune with the supplied id.
+   *
+   * @param id The id of the fortune
+   * @return The fortune or <code>null</code> if it does not exist
+   */
+  public String getFortuneById(long id) {
+    Fortune fortune = findFortune(GET_FORTUNE_BY_ID, id);
+    return (fortune == null) ? null : fortune.getQuote();
+  }
+
+  /**
+   * Adds a fortune to the database with the default weight
    *
    * @param fortune The fortune to add
    * @return <code>true</code> if successful
    * @throws DuplicateEntryException The fortune already exists in the database
    */
   public boolean addFortune(String fortune) throws DuplicateEntryException {
+    return addFortune(fortune, Fortune.DEFAULT_WEIGHT);
+  }
+
+  /**
+   * Adds a fortune to the database
+   *
+   * @param fortune The fortune to add
+   * @param weight The relative weight of the fortune, which must be positive
+   * @return <code>true</code> if successful
+   * @throws DuplicateEntryException The fortune already exists in the database
+   */
+  public boolean addFortune(String fortune, double weight) throws DuplicateEntryException {
     try {
       int updated = handle.createUpdate(INSERT_FORTUNE)
           .bind("fortune", fortune)
+          .bind("weight", weight)
           .execute();
 
       return (updated == 1);
@@ -79,4 +423,64 @@ public class FortuneAccessor {
       throw e;
     }
   }
+
+  /**
+   * Adds many fortunes to the database with a single prepared batch. A
+   * fortune that already exists, or that appears earlier in the same batch,
+   * is skipped instead of failing the whole batch. Run this inside a
+   * transaction so that the batch is committed once rather than once per row.
+   *
+   * @param fortunes The fortunes to add, whose weights must be positive
+   * @return Whether each fortune was added, in the same order as supplied
+   */
+  public boolean[] addFortunes(List<Fortune> fortunes) {
+    if (fortunes.isEmpty()) {
+      return new boolean[0];
+    }
+
+    PreparedBatch batch = handle.prepareBatch(INSERT_FORTUNE_IF_ABSENT);
+    for (Fortune fortune : fortunes) {
+      batch.bind("fortune", fortune.getQuote())
+          .bind("weight", fortune.getWeight())
+          .add();
+    }
+
+    int[] updated = batch.execute();
+
+    boolean[] added = new boolean[updated.length];
+    for (int i = 0; i < updated.length; i++) {
+      added[i] = (updated[i] == 1);
+    }
+
+    return added;
+  }
+
+  /**
+   * Utility method to decide whether to keep a uniformly picked fortune so
+   * that, on average, fortunes are kept in proportion to their weight.
+   *
+   * @param fortune The fortune that was picked
+   * @param range The id range of the table, which holds the largest weight
+   * @param random The random number generator to use
+   * @return <code>true</code> if the fortune should be kept
+   */
+  private static boolean accept(Fortune fortune, FortuneIdRange range, Random random) {
+    return fortune.getWeight() >= range.getMaxWeight() ||
+        random.nextDouble() * range.getMaxWeight() < fortune.getWeight();
+  }
+
+  /**
+   * Utility method to run a query that looks up a single fortune by id.
+   *
+   * @param sql The query
+   * @param id The id to bind
+   * @return The fortune or <code>null</code> if nothing was found
+   */
+  private Fortune findFortune(String sql, long id) {
+    return handle.createQuery(sql)
+        .bind("id", id)
+        .map((rs, ctx) -> new Fortune(rs.getString("quote"), rs.getDouble("weight")))
+        .findFirst()
+        .orElse(null);
+  }
 }
@@ -3,9 +3,18 @@ package net.shinton.fortune.factory;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import javax.sql.DataSource;
+import net.shinton.fortune.FortuneApiConfig;
+import net.shinton.fortune.data.BoundedConnectionFactory;
+import net.shinton.fortune.data.FortuneDatabase;
+import net.shinton.fortune.data.TimedConnectionFactory;
 import org.flywaydb.core.Flyway;
+import org.jdbi.v3.core.ConnectionFactory;
 import org.jdbi.v3.core.Jdbi;
+import org.sqlite.SQLiteConfig;
 
 /**
  * Factory class to create a new connection to the database. If the database does
@@ -21,21 +30,192 @@ public class FortuneDatabaseFactory {
    * @return The database connection
    */
   public Jdbi newDatabase(String jdbcUrl) {
-    // Create database pool
+    // An in-memory database only lives as long as its connection, so there can only be one
+    DataSource dataSource = newDataSource(jdbcUrl, new SQLiteConfig(), false, isInMemory(jdbcUrl) ? 1 : 0, "fortune");
+
+    migrate(dataSource);
+
+    // Return the database object
+    return Jdbi.create(dataSource);
+  }
+
+  /**
+   * <p>
+   *   Create new connections to the database using the SQLite settings from the
+   *   config.
+   * </p>
+   * <p>
+   *   In <code>WAL</code> mode, readers and the writer do not block each other,
+   *   so reads get a pool of read-only connections and writes get a single
+   *   connection of their own. SQLite only allows one writer at a time anyway,
+   *   and queueing for the one connection is cheaper than fighting over the
+   *   database lock. In any other mode, reads and writes share a pool.
+   * </p>
+   * <p>
+   *   Each pool may be wrapped in further connection factories, as described
+   *   in {@link #newConnectionFactory}. The pools are not bounded, since that
+   *   is only needed when requests run on virtual threads.
+   * </p>
+   *
+   * @param config The API config
+   * @return The database connections
+   */
+  public FortuneDatabase newDatabase(FortuneApiConfig config) {
+    return newDatabase(config, false);
+  }
+
+  /**
+   * Create new connections to the database as {@link #newDatabase(FortuneApiConfig)}
+   * does, putting each pool behind a {@link BoundedConnectionFactory} if asked.
+   *
+   * @param config The API config
+   * @param bounded <code>true</code> if requests run on virtual threads, so
+   *        nothing else caps how many reach the database at once
+   * @return The database connections
+   */
+  public FortuneDatabase newDatabase(FortuneApiConfig config, boolean bounded) {
+    String jdbcUrl = config.jdbcUrl();
+    boolean inMemory = isInMemory(jdbcUrl);
+    boolean wal = !inMemory && "WAL".equalsIgnoreCase(config.sqliteJournalMode());
+
+    HikariDataSource writer = newDataSource(jdbcUrl,
+        newSqliteConfig(config, false, inMemory),
+        false,
+        (wal || inMemory) ? 1 : 0,
+        wal ? "fortune-writer" : "fortune");
+
+    // The schema has to exist before a read-only connection can be opened
+    migrate(writer);
+
+    HikariDataSource reader = !wal ? writer : newDataSource(jdbcUrl,
+        newSqliteConfig(config, true, false),
+        true,
+        config.sqliteReadPoolSize(),
+        "fortune-reader");
+
+    List<HikariDataSource> pools = wal ? List.of(writer, reader) : List.of(writer);
+    List<BoundedConnectionFactory> limits = new ArrayList<>();
+
+    Jdbi writerJdbi = Jdbi.create(newConnectionFactory(config, bounded, writer, limits));
+    Jdbi readerJdbi = wal ? Jdbi.create(newConnectionFactory(config, bounded, reader, limits)) : writerJdbi;
+    return new FortuneDatabase(readerJdbi, writerJdbi, pools, limits);
+  }
+
+  /**
+   * Utility method to wrap a pool in the connection factories the config asks
+   * for. When bounded, the pool is put behind a {@link BoundedConnectionFactory}
+   * of the same size with the same connection timeout. When requests are
+   * timed, the time spent holding a connection is added to the request.
+   *
+   * @param config The API config
+   * @param bounded <code>true</code> to bound the pool
+   * @param pool The connection pool
+   * @param limits The list to add a bounded connection factory to
+   * @return The connection factory
+   */
+  private ConnectionFactory newConnectionFactory(FortuneApiConfig config, boolean bounded, HikariDataSource pool,
+                                                 List<BoundedConnectionFactory> limits) {
+    ConnectionFactory connectionFactory = pool::getConnection;
+
+    if (bounded) {
+      BoundedConnectionFactory limit = new BoundedConnectionFactory(pool, pool.getMaximumPoolSize(),
+          pool.getConnectionTimeout());
+      limits.add(limit);
+      connectionFactory = limit;
+    }
+
+    if (config.serverTimingEnabled()) {
+      connectionFactory = new TimedConnectionFactory(connectionFactory);
+    }
+
+    return connectionFactory;
+  }
+
+  /**
+   * Utility method to turn the SQLite settings from the config into driver
+   * settings. The journal mode is stored in the database file, so only the
+   * writer sets it.
+   *
+   * @param config The API config
+   * @param readOnly <code>true</code> for read-only connections
+   * @param inMemory <code>true</code> if the database is in memory
+   * @return The driver settings
+   */
+  private SQLiteConfig newSqliteConfig(FortuneApiConfig config, boolean readOnly, boolean inMemory) {
+    SQLiteConfig sqliteConfig = new SQLiteConfig();
+    sqliteConfig.setReadOnly(readOnly);
+
+    if (!readOnly && !inMemory && config.sqliteJournalMode() != null) {
+      sqliteConfig.setJournalMode(SQLiteConfig.JournalMode.valueOf(config.sqliteJournalMode().toUpperCase(Locale.ROOT)));
+    }
+
+    if (config.sqliteSynchronous() != null) {
+      sqliteConfig.setSynchronous(SQLiteConfig.SynchronousMode.valueOf(config.sqliteSynchronous().toUpperCase(Locale.ROOT)));
+    }
+
+    if (config.sqliteMmapSize() > 0) {
+      sqliteConfig.setPragma(SQLiteConfig.Pragma.MMAP_SIZE, Long.toString(config.sqliteMmapSize()));
+    }
+
+    if (config.sqliteCacheSize() != 0) {
+      sqliteConfig.setCacheSize(config.sqliteCacheSize());
+    }
+
+    if (config.sqliteBusyTimeoutMillis() > 0) {
+      sqliteConfig.setBusyTimeout(config.sqliteBusyTimeoutMillis());
+    }
+
+    return sqliteConfig;
+  }
+
+  /**
+   * Utility method to create a connection pool.
+   *
+   * @param jdbcUrl The url to the database
+   * @param sqliteConfig The driver settings for each connection
+   * @param readOnly <code>true</code> if the driver settings are read-only
+   * @param poolSize The most connections in the pool or 0 for the default
+   * @param poolName The name of the pool, which shows up in the logs
+   * @return The connection pool
+   */
+  private HikariDataSource newDataSource(String jdbcUrl, SQLiteConfig sqliteConfig, boolean readOnly,
+                                         int poolSize, String poolName) {
     HikariConfig cfg = new HikariConfig();
     cfg.setJdbcUrl(jdbcUrl);
+    cfg.setPoolName(poolName);
+    cfg.setDataSourceProperties(sqliteConfig.toProperties());
+
+    // The pool has to agree with the driver, which refuses to change it on an open connection
+    cfg.setReadOnly(readOnly);
 
-    DataSource dataSource = new HikariDataSource(cfg);
+    if (poolSize > 0) {
+      cfg.setMaximumPoolSize(poolSize);
+    }
+
+    return new HikariDataSource(cfg);
+  }
 
-    // Make sure the database is up-to-date
+  /**
+   * Utility method to make sure the database is up-to-date.
+   *
+   * @param dataSource The database to migrate
+   */
+  private void migrate(DataSource dataSource) {
     Flyway flyway = Flyway.configure()
         .dataSource(dataSource)
         .locations(Paths.get("classpath:db/migration").toString())
         .load();
 
     flyway.migrate();
+  }
 
-    // Return the database object
-    return Jdbi.create(dataSource);
+  /**
+   * Utility method to determine if a JDBC url points to an in-memory database.
+   *
+   * @param jdbcUrl The url to the database
+   * @return <code>true</code> if the database is in memory
+   */
+  private static boolean isInMemory(String jdbcUrl) {
+    return jdbcUrl.contains(":memory:") || jdbcUrl.contains("mode=memory");
   }
 }
@@ -1,19 +1,28 @@
 package net.shinton.fortune.handler;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.javalin.http.ContentType;
 import io.javalin.http.Context;
 import io.javalin.http.Handler;
+import io.javalin.http.Header;
 import io.javalin.http.HttpStatus;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneOffset;
+import java.util.concurrent.ThreadLocalRandom;
 import net.shinton.fortune.FortuneApiConfig;
 import net.shinton.fortune.factory.ObjectMapperFactory;
+import net.shinton.fortune.metrics.ServerTiming;
 import net.shinton.fortune.model.RestResponseStatus;
 import net.shinton.fortune.model.immutable.ImmutableRestResponse;
 import net.shinton.util.BearerTokenTool;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,6 +36,9 @@ public abstract class BaseHandler implements Handler {
   private static final ObjectMapper mapper = new ObjectMapperFactory().newMapper();
 
   private final FortuneApiConfig config;
+  private final BearerTokenTool bearerTokenTool;
+  private final boolean serverTimingEnabled;
+  private final int serverTimingLogEvery;
 
   /**
    * Initialized the base handler.
@@ -35,6 +47,12 @@ public abstract class BaseHandler implements Handler {
    */
   protected BaseHandler(FortuneApiConfig config) {
     this.config = config;
+
+    // Build the token tool once so that every request shares its parser and cache
+    this.bearerTokenTool = new BearerTokenTool(config.jwtSigningKey(), config.publicHost());
+
+    this.serverTimingEnabled = config.serverTimingEnabled();
+    this.serverTimingLogEvery = config.serverTimingLogEvery();
   }
 
   /**
@@ -56,6 +74,19 @@ public abstract class BaseHandler implements Handler {
     response(ctx, HttpStatus.OK, RestResponseStatus.success, data, null);
   }
 
+  /**
+   * Sets the response to an HTTP OK (200) response with one page of a paged
+   * data payload.
+   *
+   * @param ctx The Javalin context
+   * @param data The object to return
+   * @param cursor The cursor for the next page or <code>null</code> if this is
+   *        the last page
+   */
+  protected <T> void ok(Context ctx, T data, String cursor) {
+    response(ctx, HttpStatus.OK, RestResponseStatus.success, data, null, cursor);
+  }
+
   /**
    * Sets the response to an HTTP CREATED (201) response with the default message.
    *
@@ -74,6 +105,17 @@ public abstract class BaseHandler implements Handler {
     response(ctx, HttpStatus.NO_CONTENT);
   }
 
+  /**
+   * Sets the response to an HTTP NOT_MODIFIED (304) response. Unlike the other
+   * responses, a 304 must not have a body, so no <code>RestResponse</code> is
+   * sent.
+   *
+   * @param ctx The Javalin context
+   */
+  protected void notModified(Context ctx) {
+    ctx.status(HttpStatus.NOT_MODIFIED);
+  }
+
   /**
    * Sets the response to an HTTP NOT_FOUND (404) response with the default message.
    *
@@ -130,6 +172,16 @@ public abstract class BaseHandler implements Handler {
     response(ctx, HttpStatus.INTERNAL_SERVER_ERROR, RestResponseStatus.error, null, message);
   }
 
+  /**
+   * Sets the response to an HTTP SERVICE_UNAVAILABLE (503) response with a custom message.
+   *
+   * @param ctx The Javalin context
+   * @param message The message
+   */
+  protected void serviceUnavailable(Context ctx, String message) {
+    response(ctx, HttpStatus.SERVICE_UNAVAILABLE, RestResponseStatus.error, null, message);
+  }
+
   /**
    * Sends a response back to the client with the specified HTTP status code.
    *
@@ -155,14 +207,31 @@ public abstract class BaseHandler implements Handler {
    * @param message The message
    */
   protected <T> void response(Context ctx, HttpStatus statusCode, RestResponseStatus status, T data, String message) {
+    response(ctx, statusCode, status, data, message, null);
+  }
+
+  /**
+   * Sends a response back to the client that may be one page of a larger
+   * response.
+   *
+   * @param ctx The Javalin context
+   * @param statusCode The HTTP status code
+   * @param status The overall status of the call (i.e. success or failure)
+   * @param data The data payload
+   * @param message The message
+   * @param cursor The cursor for the next page
+   */
+  protected <T> void response(Context ctx, HttpStatus statusCode, RestResponseStatus status, T data, String message,
+                              String cursor) {
     try {
       // Add a RestResponse to the context result
       ctx.status(statusCode)
-          .result(mapper.writeValueAsString(ImmutableRestResponse.<T>builder()
+          .result(toJson(ImmutableRestResponse.<T>builder()
               .status(status)
               .code(statusCode.getCode())
               .data(data)
               .message(message)
+              .cursor(cursor)
               .build()))
           .contentType(ContentType.APPLICATION_JSON);
 
@@ -178,6 +247,113 @@ public abstract class BaseHandler implements Handler {
     }
   }
 
+  /**
+   * Sends a response that has already been serialized back to the client. The
+   * payload must be a UTF-8 encoded <code>RestResponse</code>.
+   *
+   * @param ctx The Javalin context
+   * @param statusCode The HTTP status code
+   * @param json The serialized response
+   */
+  protected void response(Context ctx, HttpStatus statusCode, byte[] json) {
+    ctx.status(statusCode)
+        .result(json)
+        .contentType(ContentType.APPLICATION_JSON);
+  }
+
+  /**
+   * Utility method to serialize a response, adding the time it takes to the
+   * request timings.
+   *
+   * @param value The response
+   * @return The JSON
+   * @throws JsonProcessingException The response could not be serialized
+   */
+  private String toJson(Object value) throws JsonProcessingException {
+    ServerTiming timing = serverTimingEnabled ? ServerTiming.current() : null;
+    if (timing == null) {
+      return mapper.writeValueAsString(value);
+    }
+
+    timing.enter(ServerTiming.Phase.SERIALIZATION);
+    try {
+      return mapper.writeValueAsString(value);
+    } finally {
+      timing.exit(ServerTiming.Phase.SERIALIZATION);
+    }
+  }
+
+  /**
+   * <p>
+   *   Sends an HTTP OK (200) response whose data is a JSON array written
+   *   straight to the response stream. The envelope is the same as
+   *   {@link #ok(Context, Object)}, but nothing is built up in memory, so the
+   *   size of the array does not matter.
+   * </p>
+   * <p>
+   *   Once the first bytes are sent, the status can no longer be changed. If
+   *   the writer fails part way through, the client gets a truncated body.
+   * </p>
+   *
+   * @param ctx The Javalin context
+   * @param writer Writes the elements of the array
+   * @throws IOException There was a problem writing the response
+   */
+  protected void okStream(Context ctx, ArrayWriter writer) throws IOException {
+    ctx.status(HttpStatus.OK)
+        .contentType(ContentType.APPLICATION_JSON);
+
+    /*
+     * Javalin closes the stream once the handler returns. It also decides
+     * whether to compress based on the size of the first write it sees, so the
+     * generator must not be flushed before its buffer fills up.
+     */
+    writeArray(ctx.outputStream(), writer);
+  }
+
+  /**
+   * Sends an HTTP OK (200) response with a JSON body that has already been
+   * compressed. The bytes are written straight to the servlet response so
+   * that Javalin does not try to compress them a second time.
+   *
+   * @param ctx The Javalin context
+   * @param encoding The encoding the body was compressed with
+   * @param body The compressed body
+   * @throws IOException There was a problem writing the response
+   */
+  protected void okEncoded(Context ctx, ContentEncoding encoding, byte[] body) throws IOException {
+    HttpServletResponse res = ctx.res();
+    res.setStatus(HttpStatus.OK.getCode());
+    res.setContentType(ContentType.APPLICATION_JSON.getMimeType());
+    res.setHeader(Header.CONTENT_ENCODING, encoding.name());
+    res.setContentLength(body.length);
+    res.getOutputStream().write(body);
+  }
+
+  /**
+   * Writes the same envelope as {@link #ok(Context, Object)} with a JSON array
+   * as the data. Nothing goes through the object mapper, which flushes after
+   * every value, so the stream sees a few large writes instead of many small
+   * ones. The stream is not closed.
+   *
+   * @param out The stream to write to
+   * @param writer Writes the elements of the array
+   * @throws IOException There was a problem writing to the stream
+   */
+  protected void writeArray(OutputStream out, ArrayWriter writer) throws IOException {
+    try (JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+      generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+      generator.writeStartObject();
+      generator.writeStringField("status", RestResponseStatus.success.name());
+      generator.writeNumberField("code", HttpStatus.OK.getCode());
+      generator.writeArrayFieldStart("data");
+      writer.write(generator);
+      generator.writeEndArray();
+      generator.writeEndObject();
+    }
+  }
+
   /**
    * Utility method to safely convert a <code>String</code> into a <code>Long</code>.
    *
@@ -214,6 +390,42 @@ public abstract class BaseHandler implements Handler {
     return null;
   }
 
+  /**
+   * Utility method to safely convert a <code>String</code> into a <code>Double</code>.
+   *
+   * @param value The string to convert
+   * @return The converted value or <code>null</code> if it cannot be converted
+   */
+  protected Double getDouble(String value) {
+    if (NumberUtils.isCreatable(value)) {
+      try {
+        double converted = Double.parseDouble(value);
+        return Double.isNaN(converted) ? null : converted;
+      } catch (Exception e) {
+        log.warn("Invalid format for double (%s)", value);
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Utility method to safely convert a JSON weight into a <code>Double</code>.
+   * Only numbers and strings holding a number are weights, anything else such
+   * as an object, an array or a boolean is not.
+   *
+   * @param value The JSON value to convert
+   * @return The converted value or <code>null</code> if it cannot be converted
+   */
+  protected Double getWeight(Object value) {
+    if (value instanceof Number) {
+      double converted = ((Number) value).doubleValue();
+      return Double.isNaN(converted) ? null : converted;
+    }
+
+    return (value instanceof String) ? getDouble((String) value) : null;
+  }
+
   /**
    * Utility method to safely convert a <code>String</code> into a <code>Instant</code>.
    *
@@ -250,6 +462,31 @@ public abstract class BaseHandler implements Handler {
     return null;
   }
 
+  /**
+   * Checks the <code>If-None-Match</code> request header against the current
+   * entity tag of the resource.
+   *
+   * @param ctx The Javalin context
+   * @param etag The current entity tag, including the quotes
+   * @return <code>true</code> if the client already has the current version
+   */
+  protected boolean isNotModified(Context ctx, String etag) {
+    String ifNoneMatch = ctx.header(Header.IF_NONE_MATCH);
+    if (StringUtils.isBlank(ifNoneMatch)) {
+      return false;
+    }
+
+    // If-None-Match uses the weak comparison, so the W/ prefix is ignored
+    for (String candidate : ifNoneMatch.split(",")) {
+      String tag = StringUtils.removeStart(candidate.trim(), "W/");
+      if ("*".equals(tag) || etag.equals(tag)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
   /**
    * Checks to see if the user passed the proper bearer token for the API call.
    *
@@ -258,8 +495,17 @@ public abstract class BaseHandler implements Handler {
    * @return <code>true</code> if authorized
    */
   protected boolean isAuthorized(Context ctx, String apiPath) {
-    BearerTokenTool tool = new BearerTokenTool(config.jwtSigningKey(), config.publicHost());
-    return tool.validate(ctx.header("Authorization"), apiPath);
+    ServerTiming timing = serverTimingEnabled ? ServerTiming.current() : null;
+    if (timing == null) {
+      return bearerTokenTool.validate(ctx.header("Authorization"), apiPath);
+    }
+
+    timing.enter(ServerTiming.Phase.AUTH);
+    try {
+      return bearerTokenTool.validate(ctx.header("Authorization"), apiPath);
+    } finally {
+      timing.exit(ServerTiming.Phase.AUTH);
+    }
   }
 
   /**
@@ -279,6 +525,9 @@ public abstract class BaseHandler implements Handler {
    * @throws Exception When there is an unexpected error
    */
   public void handle(@NotNull Context ctx) throws Exception {
+    // Timing is off unless asked for, and then costs one object per request
+    ServerTiming timing = serverTimingEnabled ? ServerTiming.begin() : null;
+
     try {
       /*
        * The reason for the abstraction is to build in exception handling.
@@ -287,7 +536,39 @@ public abstract class BaseHandler implements Handler {
 
     } catch (Exception e) {
       log.error("Internal error while handling request", e);
-      internalServerError(ctx, e.getMessage());
+
+      // If part of a streamed response already went out, it is too late to send an error
+      HttpServletResponse res = ctx.res();
+      if (res == null || !res.isCommitted()) {
+        internalServerError(ctx, e.getMessage());
+      }
+
+    } finally {
+      if (timing != null) {
+        sendTiming(ctx, timing);
+      }
+    }
+  }
+
+  /**
+   * Stops timing the request and adds the timings to the response. They are
+   * also logged for a sample of requests.
+   *
+   * @param ctx The Javalin context
+   * @param timing The timer of the request
+   */
+  private void sendTiming(Context ctx, ServerTiming timing) {
+    timing.end();
+    String header = timing.toHeader();
+
+    // A streamed response has already sent its headers
+    HttpServletResponse res = ctx.res();
+    if (res == null || !res.isCommitted()) {
+      ctx.header(ServerTiming.HEADER, header);
+    }
+
+    if (serverTimingLogEvery > 0 && ThreadLocalRandom.current().nextInt(serverTimingLogEvery) == 0) {
+      log.info("Server timing for {} {}: {}", ctx.method(), ctx.path(), header);
     }
   }
 
@@ -315,4 +596,19 @@ public abstract class BaseHandler implements Handler {
 
     return address;
   }
+
+  /**
+   * Writes the elements of a JSON array for {@link #okStream(Context, ArrayWriter)}.
+   */
+  @FunctionalInterface
+  protected interface ArrayWriter {
+    /**
+     * Writes the elements of the array. The start and end of the array are
+     * written by the caller.
+     *
+     * @param generator The generator to write to
+     * @throws IOException There was a problem writing an element
+     */
+    void write(JsonGenerator generator) throws IOException;
+  }
 }
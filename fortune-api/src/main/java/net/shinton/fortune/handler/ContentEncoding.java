@@ -0,0 +1,102 @@
+package net.shinton.fortune.handler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+/**
+ * The content encodings that responses can be compressed with ahead of time.
+ * The names of the constants are the tokens used in the
+ * <code>Accept-Encoding</code> and <code>Content-Encoding</code> headers.
+ */
+public enum ContentEncoding {
+  gzip {
+    @Override
+    public OutputStream newStream(OutputStream out) throws IOException {
+      return new GZIPOutputStream(out);
+    }
+  },
+
+  deflate {
+    @Override
+    public OutputStream newStream(OutputStream out) throws IOException {
+      return new DeflaterOutputStream(out);
+    }
+  };
+
+  /**
+   * Wraps a stream so that everything written to it is compressed. The
+   * compressed data is not complete until the returned stream is closed.
+   *
+   * @param out The stream to write the compressed data to
+   * @return The stream to write the uncompressed data to
+   * @throws IOException There was a problem writing the header
+   */
+  public abstract OutputStream newStream(OutputStream out) throws IOException;
+
+  /**
+   * Picks the encoding to use based on the <code>Accept-Encoding</code>
+   * request header. The encoding with the highest quality wins, and on a tie
+   * the one declared first in this enum does.
+   *
+   * @param acceptEncoding The value of the header, which may be <code>null</code>
+   * @return The encoding or <code>null</code> if the client does not accept any
+   */
+  public static ContentEncoding negotiate(String acceptEncoding) {
+    if (StringUtils.isBlank(acceptEncoding)) {
+      return null;
+    }
+
+    ContentEncoding best = null;
+    double bestQuality = 0;
+
+    for (ContentEncoding encoding : values()) {
+      double quality = getQuality(acceptEncoding, encoding);
+      if (quality > bestQuality) {
+        best = encoding;
+        bestQuality = quality;
+      }
+    }
+
+    return best;
+  }
+
+  /**
+   * Utility method to find the quality the client gave an encoding. An exact
+   * match takes precedence over <code>*</code>.
+   *
+   * @param acceptEncoding The value of the <code>Accept-Encoding</code> header
+   * @param encoding The encoding to look for
+   * @return The quality between 0 and 1, where 0 means not acceptable
+   */
+  private static double getQuality(String acceptEncoding, ContentEncoding encoding) {
+    double wildcard = 0;
+
+    for (String entry : acceptEncoding.split(",")) {
+      String[] parts = entry.split(";");
+      String token = parts[0].trim().toLowerCase(Locale.ROOT);
+      double quality = 1;
+
+      for (int i = 1; i < parts.length; i++) {
+        String param = parts[i].trim();
+        if (param.startsWith("q=")) {
+          quality = NumberUtils.toDouble(param.substring(2), 0);
+        }
+      }
+
+      if (token.equals(encoding.name())) {
+        return quality;
+      }
+
+      if ("*".equals(token)) {
+        wildcard = quality;
+      }
+    }
+
+    return wildcard;
+  }
+}
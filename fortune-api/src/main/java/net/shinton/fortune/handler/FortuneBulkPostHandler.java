@@ -0,0 +1,161 @@
+package net.shinton.fortune.handler;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.javalin.http.Context;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import net.shinton.fortune.FortuneApiConfig;
+import net.shinton.fortune.data.Fortune;
+import net.shinton.fortune.data.FortuneModel;
+import net.shinton.fortune.factory.ObjectMapperFactory;
+import net.shinton.fortune.model.InsertStatus;
+import org.apache.commons.lang3.StringUtils;
+import org.jdbi.v3.core.Jdbi;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ *   Javalin handler for requests to add many fortunes at once. The body is a
+ *   JSON array where each element is either a fortune on its own or an object
+ *   with the same "fortune" and "weight" keys as a single add.
+ * </p>
+ * <p>
+ *   The valid fortunes are inserted in one transaction. Duplicates and
+ *   invalid elements do not fail the request. Instead the data holds the
+ *   outcome of each element, in the same order as the body.
+ * </p>
+ */
+public class FortuneBulkPostHandler extends BaseHandler {
+  private static final Logger log = LoggerFactory.getLogger(FortuneBulkPostHandler.class);
+  private static final ObjectMapper mapper = new ObjectMapperFactory().newMapper();
+
+  /**
+   * The most fortunes that can be added in one request. This keeps the body
+   * well under the request size Javalin allows.
+   */
+  public static final int MAX_BULK_SIZE = 1000;
+
+  private final FortuneModel model;
+
+  /**
+   * Creates a new bulk post handler.
+   *
+   * @param config The API config
+   * @param jdbi The database to query
+   */
+  public FortuneBulkPostHandler(FortuneApiConfig config, Jdbi jdbi) {
+    this(config, new FortuneModel(jdbi));
+  }
+
+  /**
+   * Creates a new bulk post handler that shares the supplied model.
+   *
+   * @param config The API config
+   * @param model The fortune model
+   */
+  public FortuneBulkPostHandler(FortuneApiConfig config, FortuneModel model) {
+    super(config);
+    this.model = model;
+  }
+
+  /**
+   * Handles the request.
+   *
+   * @param ctx The Javalin context
+   * @throws Exception When there is an unexpected error
+   */
+  @Override
+  protected void handleRequest(@NotNull Context ctx) throws Exception {
+    String callerAddress = getCallerAddress(ctx);
+
+    if (log.isTraceEnabled()) {
+      log.trace("FortuneBulkPostHandler ({})", callerAddress);
+    }
+
+    if (!isAuthorized(ctx, "/api/v1/fortune")) {
+      log.warn("User not authorized to POST new fortunes ({})", callerAddress);
+      unauthorized(ctx);
+      return;
+    }
+
+    List<Object> json;
+    try {
+      json = mapper.readValue(ctx.body(), new TypeReference<>() {});
+    } catch (JsonProcessingException e) {
+      json = null;
+    }
+
+    if (json == null) {
+      badRequest(ctx, "Body must be an array of fortunes");
+      return;
+    }
+
+    if (json.size() > MAX_BULK_SIZE) {
+      badRequest(ctx, "No more than " + MAX_BULK_SIZE + " fortunes can be added at once");
+      return;
+    }
+
+    // Only the valid fortunes go to the database, so remember where each one came from
+    InsertStatus[] statuses = new InsertStatus[json.size()];
+    List<Fortune> fortunes = new ArrayList<>(json.size());
+    List<Integer> positions = new ArrayList<>(json.size());
+
+    for (int i = 0; i < statuses.length; i++) {
+      Fortune fortune = toFortune(json.get(i));
+
+      if (fortune == null) {
+        statuses[i] = InsertStatus.invalid;
+      } else {
+        fortunes.add(fortune);
+        positions.add(i);
+      }
+    }
+
+    boolean[] added = model.addFortunes(fortunes);
+    for (int i = 0; i < added.length; i++) {
+      statuses[positions.get(i)] = added[i] ? InsertStatus.created : InsertStatus.duplicate;
+    }
+
+    log.info("Bulk add of {} fortunes ({})", statuses.length, callerAddress);
+    ok(ctx, Arrays.asList(statuses));
+  }
+
+  /**
+   * Utility method to turn an element of the body into a fortune, applying
+   * the same rules as a single add.
+   *
+   * @param value The element
+   * @return The fortune or <code>null</code> if the element is not valid
+   */
+  private Fortune toFortune(Object value) {
+    if (value instanceof String) {
+      return StringUtils.isBlank((String) value) ? null : new Fortune((String) value, Fortune.DEFAULT_WEIGHT);
+    }
+
+    if (!(value instanceof Map)) {
+      return null;
+    }
+
+    Map<?, ?> map = (Map<?, ?>) value;
+    Object quote = map.get("fortune");
+    if (!(quote instanceof String) || StringUtils.isBlank((String) quote)) {
+      return null;
+    }
+
+    Double weight = map.containsKey("weight") ?
+        getWeight(map.get("weight")) :
+        Double.valueOf(Fortune.DEFAULT_WEIGHT);
+
+    if (weight == null || weight <= 0 || weight.isInfinite()) {
+      return null;
+    }
+
+    return new Fortune((String) quote, weight);
+  }
+}
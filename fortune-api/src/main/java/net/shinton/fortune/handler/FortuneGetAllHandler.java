@@ -1,21 +1,68 @@
 package net.shinton.fortune.handler;
 
 import io.javalin.http.Context;
+import io.javalin.http.Header;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Base64;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 import net.shinton.fortune.FortuneApiConfig;
 import net.shinton.fortune.data.FortuneModel;
+import net.shinton.fortune.data.FortunePage;
 import org.jdbi.v3.core.Jdbi;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Javalin handler for requests to get all fortunes.
+ * <p>
+ *   Javalin handler for requests to get all fortunes. When streaming is
+ *   enabled, the fortunes are written to the response as they are read so that
+ *   memory use stays flat no matter how many fortunes there are.
+ * </p>
+ * <p>
+ *   If the <code>limit</code> or <code>cursor</code> query parameters are
+ *   supplied, a single page of fortunes is returned instead, along with a
+ *   cursor for the next page.
+ * </p>
+ * <p>
+ *   Every response carries the model's version as a strong
+ *   <code>ETag</code>. A client that sends it back in
+ *   <code>If-None-Match</code> gets a <code>304 Not Modified</code> without the
+ *   fortunes being read at all.
+ * </p>
+ * <p>
+ *   When precompression is enabled, the list of all fortunes is compressed
+ *   once per version for each encoding that is asked for and served from
+ *   memory until a fortune is added. Each encoding gets its own tag, since the
+ *   bytes are not the same. Requests that arrive while a copy is being
+ *   compressed wait for that copy instead of compressing it again, and no
+ *   lock is shared between versions or encodings, so a request for an old
+ *   version never holds up one for the latest.
+ * </p>
  */
 public class FortuneGetAllHandler extends BaseHandler {
   private static final Logger log = LoggerFactory.getLogger(FortuneGetAllHandler.class);
 
-  private Jdbi jdbi;
+  /**
+   * The page size used when only a cursor is supplied.
+   */
+  public static final int DEFAULT_PAGE_SIZE = 100;
+
+  /**
+   * The largest page that can be asked for.
+   */
+  public static final int MAX_PAGE_SIZE = 1000;
+
+  private final FortuneModel model;
+  private final AtomicReference<CompressedFortunes> compressedFortunes = new AtomicReference<>();
 
   /**
    * Creates a new get all handler.
@@ -24,8 +71,18 @@ public class FortuneGetAllHandler extends BaseHandler {
    * @param jdbi The database to query
    */
   public FortuneGetAllHandler(FortuneApiConfig config, Jdbi jdbi) {
+    this(config, new FortuneModel(jdbi));
+  }
+
+  /**
+   * Creates a new get all handler that shares the supplied model.
+   *
+   * @param config The API config
+   * @param model The fortune model
+   */
+  public FortuneGetAllHandler(FortuneApiConfig config, FortuneModel model) {
     super(config);
-    this.jdbi = jdbi;
+    this.model = model;
   }
 
   /**
@@ -48,7 +105,206 @@ public class FortuneGetAllHandler extends BaseHandler {
       return;
     }
 
-    List<String> fortunes = new FortuneModel(jdbi).getAllFortunes();
+    // The tag has to be read before the fortunes. See FortuneModel.getVersionTag().
+    String versionTag = model.getVersionTag();
+
+    String limit = ctx.queryParam("limit");
+    String cursor = ctx.queryParam("cursor");
+    boolean paged = (limit != null || cursor != null);
+
+    ContentEncoding encoding = null;
+    if (!paged && getConfig().precompressionEnabled()) {
+      ctx.header(Header.VARY, Header.ACCEPT_ENCODING);
+      encoding = ContentEncoding.negotiate(ctx.header(Header.ACCEPT_ENCODING));
+    }
+
+    String etag = "\"" + versionTag + ((encoding == null) ? "" : "-" + encoding.name()) + "\"";
+    ctx.header(Header.ETAG, etag);
+
+    if (isNotModified(ctx, etag)) {
+      notModified(ctx);
+      return;
+    }
+
+    if (paged) {
+      handlePage(ctx, limit, cursor);
+      return;
+    }
+
+    if (encoding != null) {
+      okEncoded(ctx, encoding, getCompressedFortunes(versionTag, encoding));
+      return;
+    }
+
+    if (getConfig().streamingEnabled()) {
+      okStream(ctx, generator -> model.forEachFortune(generator::writeString));
+      return;
+    }
+
+    List<String> fortunes = model.getAllFortunes();
     ok(ctx, fortunes);
   }
+
+  /**
+   * Gets the list of all fortunes compressed with an encoding, compressing it
+   * only if this version has not been compressed with that encoding before.
+   * Only the latest version is kept. A request that read its tag just before
+   * an add compresses for itself and does not replace the newer copies.
+   *
+   * @param versionTag The version of the fortunes, read before the fortunes
+   * @param encoding The encoding
+   * @return The compressed response body
+   * @throws IOException There was a problem compressing the fortunes
+   * @throws InterruptedException The wait for another request to compress
+   *         the fortunes was interrupted
+   */
+  private byte[] getCompressedFortunes(String versionTag, ContentEncoding encoding)
+      throws IOException, InterruptedException {
+    CompressedFortunes current = compressedFortunes.get();
+    if (current == null || !current.versionTag.equals(versionTag)) {
+      if (!versionTag.equals(model.getVersionTag())) {
+        return compress(encoding);
+      }
+
+      CompressedFortunes latest = new CompressedFortunes(versionTag);
+      current = compressedFortunes.compareAndSet(current, latest) ? latest : compressedFortunes.get();
+      if (!current.versionTag.equals(versionTag)) {
+        return compress(encoding);
+      }
+    }
+
+    // The first request for an encoding compresses it, and the rest wait for that
+    CompletableFuture<byte[]> created = new CompletableFuture<>();
+    CompletableFuture<byte[]> existing = current.bodies.putIfAbsent(encoding, created);
+    if (existing != null) {
+      return await(existing);
+    }
+
+    try {
+      byte[] body = compress(encoding);
+      created.complete(body);
+      return body;
+
+    } catch (IOException | RuntimeException e) {
+      // Let the next request try again
+      current.bodies.remove(encoding, created);
+      created.completeExceptionally(e);
+      throw e;
+    }
+  }
+
+  /**
+   * Utility method to compress the list of all fortunes.
+   *
+   * @param encoding The encoding
+   * @return The compressed response body
+   * @throws IOException There was a problem compressing the fortunes
+   */
+  private byte[] compress(ContentEncoding encoding) throws IOException {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    try (OutputStream out = encoding.newStream(buffer)) {
+      writeArray(out, generator -> model.forEachFortune(generator::writeString));
+    }
+
+    return buffer.toByteArray();
+  }
+
+  /**
+   * Utility method to wait for another request to compress the fortunes,
+   * failing the same way it did.
+   *
+   * @param body The compressed response body, once it is ready
+   * @return The compressed response body
+   * @throws IOException There was a problem compressing the fortunes
+   * @throws InterruptedException The wait was interrupted
+   */
+  private static byte[] await(CompletableFuture<byte[]> body) throws IOException, InterruptedException {
+    try {
+      return body.get();
+
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+
+      throw new IOException("Could not compress the fortunes", e.getCause());
+    }
+  }
+
+  /**
+   * Handles a request for a single page of fortunes.
+   *
+   * @param ctx The Javalin context
+   * @param limitParam The value of the <code>limit</code> query parameter
+   * @param cursorParam The value of the <code>cursor</code> query parameter
+   */
+  private void handlePage(Context ctx, String limitParam, String cursorParam) {
+    Integer limit = (limitParam == null) ? Integer.valueOf(DEFAULT_PAGE_SIZE) : getInteger(limitParam);
+    if (limit == null || limit < 1 || limit > MAX_PAGE_SIZE) {
+      badRequest(ctx, "Parameter 'limit' must be between 1 and " + MAX_PAGE_SIZE);
+      return;
+    }
+
+    Long lastId = (cursorParam == null) ? Long.valueOf(Long.MIN_VALUE) : decodeCursor(cursorParam);
+    if (lastId == null) {
+      badRequest(ctx, "Parameter 'cursor' is invalid");
+      return;
+    }
+
+    FortunePage page = model.getFortunePage(lastId, limit);
+    ok(ctx, page.getFortunes(), (page.getLastId() == null) ? null : encodeCursor(page.getLastId()));
+  }
+
+  /**
+   * Utility method to turn the id of the last fortune on a page into a cursor.
+   * The cursor is deliberately opaque so that clients do not start building
+   * their own and we are free to change what it holds.
+   *
+   * @param lastId The id of the last fortune on the page
+   * @return The cursor
+   */
+  private static String encodeCursor(long lastId) {
+    return Base64.getUrlEncoder().withoutPadding()
+        .encodeToString(ByteBuffer.allocate(Long.BYTES).putLong(lastId).array());
+  }
+
+  /**
+   * Utility method to turn a cursor back into the id of the last fortune on
+   * the previous page.
+   *
+   * @param cursor The cursor
+   * @return The id or <code>null</code> if the cursor is not valid
+   */
+  private static Long decodeCursor(String cursor) {
+    try {
+      byte[] bytes = Base64.getUrlDecoder().decode(cursor);
+      return (bytes.length == Long.BYTES) ? Long.valueOf(ByteBuffer.wrap(bytes).getLong()) : null;
+
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * The compressed copies of one version of the list of all fortunes, each
+   * of which may still be in the works. The version never changes, the whole
+   * set is replaced when a fortune is added.
+   */
+  private static class CompressedFortunes {
+    private final String versionTag;
+    private final Map<ContentEncoding, CompletableFuture<byte[]>> bodies = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new, empty set of compressed copies.
+     *
+     * @param versionTag The version of the fortunes
+     */
+    CompressedFortunes(String versionTag) {
+      this.versionTag = versionTag;
+    }
+  }
 }
@@ -1,7 +1,10 @@
 package net.shinton.fortune.handler;
 
 import io.javalin.http.Context;
+import io.javalin.http.HttpStatus;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 import net.shinton.fortune.FortuneApiConfig;
 import net.shinton.fortune.data.FortuneModel;
 import org.jdbi.v3.core.Jdbi;
@@ -10,12 +13,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Javalin handler for requests to get a random fortune.
+ * Javalin handler for requests to get a random fortune. If the
+ * <code>count</code> query parameter is supplied, a list of distinct random
+ * fortunes is returned instead.
  */
 public class FortuneGetHandler extends BaseHandler {
   private static final Logger log = LoggerFactory.getLogger(FortuneGetHandler.class);
 
-  private Jdbi jdbi;
+  /**
+   * The most fortunes that can be asked for in a single call.
+   */
+  public static final int MAX_COUNT = 100;
+
+  private final FortuneModel model;
+  private final FortuneResponseCache responseCache;
 
   /**
    * Creates a new get handler.
@@ -24,8 +35,19 @@ public class FortuneGetHandler extends BaseHandler {
    * @param jdbi The database to query
    */
   public FortuneGetHandler(FortuneApiConfig config, Jdbi jdbi) {
+    this(config, new FortuneModel(jdbi));
+  }
+
+  /**
+   * Creates a new get handler that shares the supplied model.
+   *
+   * @param config The API config
+   * @param model The fortune model
+   */
+  public FortuneGetHandler(FortuneApiConfig config, FortuneModel model) {
     super(config);
-    this.jdbi = jdbi;
+    this.model = model;
+    this.responseCache = model.isSnapshotEnabled() ? new FortuneResponseCache(model) : null;
   }
 
   /**
@@ -42,7 +64,54 @@ public class FortuneGetHandler extends BaseHandler {
       log.trace("FortuneGetHandler ({})", callerAddress);
     }
 
-    String fortune = new FortuneModel(jdbi).getRandomFortune();
+    String count = ctx.queryParam("count");
+    if (count != null) {
+      handleCount(ctx, count);
+      return;
+    }
+
+    // In snapshot mode the responses have already been serialized
+    if (responseCache != null) {
+      byte[] payload = responseCache.getRandomPayload();
+      if (payload == null) {
+        notFound(ctx);
+        return;
+      }
+
+      response(ctx, HttpStatus.OK, payload);
+      return;
+    }
+
+    String fortune = model.getRandomFortune();
+    if (fortune == null) {
+      notFound(ctx);
+      return;
+    }
+
     ok(ctx, Map.of("fortune", fortune));
   }
+
+  /**
+   * Handles a request for more than one fortune.
+   *
+   * @param ctx The Javalin context
+   * @param countParam The value of the <code>count</code> query parameter
+   */
+  private void handleCount(Context ctx, String countParam) {
+    Integer count = getInteger(countParam);
+    if (count == null || count < 1 || count > MAX_COUNT) {
+      badRequest(ctx, "Parameter 'count' must be between 1 and " + MAX_COUNT);
+      return;
+    }
+
+    List<String> fortunes = model.getRandomFortunes(count);
+    if (fortunes.isEmpty()) {
+      notFound(ctx);
+      return;
+    }
+
+    ok(ctx, fortunes.stream()
+        .map(fortune -> Map.of("fortune", fortune))
+        .collect(Collectors.toList()));
+  }
 }
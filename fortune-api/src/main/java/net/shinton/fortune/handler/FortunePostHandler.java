@@ -4,10 +4,16 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.javalin.http.Context;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import net.shinton.exception.DuplicateEntryException;
 import net.shinton.fortune.FortuneApiConfig;
+import net.shinton.fortune.data.Fortune;
 import net.shinton.fortune.data.FortuneModel;
+import net.shinton.fortune.data.FortuneWriteQueue;
 import net.shinton.fortune.factory.ObjectMapperFactory;
+import net.shinton.fortune.model.InsertStatus;
 import org.apache.commons.lang3.StringUtils;
 import org.jdbi.v3.core.Jdbi;
 import org.jetbrains.annotations.NotNull;
@@ -15,13 +21,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Javalin handler for requests to add a fortune.
+ * Javalin handler for requests to add a fortune. If a write queue is supplied,
+ * the fortune is handed to it and the request waits for the group it lands in
+ * to be committed. Otherwise the fortune is inserted on the request thread.
  */
 public class FortunePostHandler extends BaseHandler {
   private static final Logger log = LoggerFactory.getLogger(FortunePostHandler.class);
   private static final ObjectMapper mapper = new ObjectMapperFactory().newMapper();
 
-  private Jdbi jdbi;
+  /**
+   * The time allowed for each commit on top of waiting for its group to fill.
+   */
+  private static final long COMMIT_MARGIN_MILLIS = 1000;
+
+  private final FortuneModel model;
+  private final FortuneWriteQueue writeQueue;
+  private final long queueTimeoutMillis;
 
   /**
    * Creates a new post handler.
@@ -30,8 +45,37 @@ public class FortunePostHandler extends BaseHandler {
    * @param jdbi The database to query
    */
   public FortunePostHandler(FortuneApiConfig config, Jdbi jdbi) {
+    this(config, new FortuneModel(jdbi));
+  }
+
+  /**
+   * Creates a new post handler that shares the supplied model.
+   *
+   * @param config The API config
+   * @param model The fortune model
+   */
+  public FortunePostHandler(FortuneApiConfig config, FortuneModel model) {
+    this(config, model, null);
+  }
+
+  /**
+   * Creates a new post handler that shares the supplied model and sends
+   * fortunes through a write queue.
+   *
+   * @param config The API config
+   * @param model The fortune model
+   * @param writeQueue The write queue or <code>null</code> to insert directly
+   */
+  public FortunePostHandler(FortuneApiConfig config, FortuneModel model, FortuneWriteQueue writeQueue) {
     super(config);
-    this.jdbi = jdbi;
+    this.model = model;
+    this.writeQueue = writeQueue;
+
+    // A fortune may have a full queue of groups ahead of it, each of which fills and commits
+    long groups = 1 + ((config.writeBatchSize() > 0) ?
+        (config.writeQueueCapacity() + config.writeBatchSize() - 1) / config.writeBatchSize() : 0);
+    this.queueTimeoutMillis = Math.max(config.sqliteBusyTimeoutMillis(), 0) +
+        groups * (Math.max(config.writeBatchDelayMillis(), 0) + COMMIT_MARGIN_MILLIS);
   }
 
   /**
@@ -55,15 +99,41 @@ public class FortunePostHandler extends BaseHandler {
     }
 
     // Get the fortune to add from the body of the request
-    Map<String, String> json = mapper.readValue(ctx.body(), new TypeReference<>() {});
+    Map<String, Object> json = mapper.readValue(ctx.body(), new TypeReference<>() {});
+
+    // Only a string is a fortune, objects and arrays would be stored as their toString()
+    Object quote = json.get("fortune");
+    if (!(quote instanceof String) || StringUtils.isBlank((String) quote)) {
+      badRequest(ctx, "Parameter 'fortune' is required and must be a string");
+      return;
+    }
+
+    String fortune = (String) quote;
+
+    // The weight is optional, but if it is there it has to make sense
+    Double weight = json.containsKey("weight") ?
+        getWeight(json.get("weight")) :
+        Double.valueOf(Fortune.DEFAULT_WEIGHT);
 
-    String fortune = json.get("fortune");
-    if (StringUtils.isBlank(fortune)) {
-      badRequest(ctx, "Parameter 'fortune' is required");
+    if (weight == null || weight <= 0 || weight.isInfinite()) {
+      badRequest(ctx, "Parameter 'weight' must be a positive number");
+      return;
+    }
+
+    // Known duplicates are cheap to spot, so do not bother the database or the queue with them
+    if (model.isKnownFortune(fortune)) {
+      log.info("Add failed due to duplicate fortune: {}", fortune);
+      conflict(ctx);
+      return;
+    }
+
+    if (writeQueue != null) {
+      addQueued(ctx, fortune, weight);
+      return;
     }
 
     try {
-      new FortuneModel(jdbi).addFortune(fortune);
+      model.addFortune(fortune, weight);
       created(ctx);
 
     } catch (DuplicateEntryException e) {
@@ -71,4 +141,46 @@ public class FortunePostHandler extends BaseHandler {
       conflict(ctx);
     }
   }
+
+  /**
+   * Adds a fortune through the write queue, answering the same way as a
+   * direct insert. If the fortune is not committed in time and can still be
+   * withdrawn, it is never added and the client is told to try again later,
+   * as when the queue is full.
+   *
+   * @param ctx The Javalin context
+   * @param fortune The fortune to add
+   * @param weight The relative weight of the fortune
+   * @throws Exception When the group the fortune was in could not be committed
+   */
+  private void addQueued(Context ctx, String fortune, double weight) throws Exception {
+    CompletableFuture<InsertStatus> result = writeQueue.submit(fortune, weight);
+    if (result == null) {
+      log.warn("Write queue is full, turning away fortune: {}", fortune);
+      serviceUnavailable(ctx, "Too many fortunes are waiting to be added, try again later");
+      return;
+    }
+
+    // Do not hold the request thread forever if the group is never committed
+    InsertStatus status;
+    try {
+      status = result.get(queueTimeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      if (writeQueue.withdraw(result)) {
+        log.warn("Timed out after {} ms waiting for fortune to be added: {}", queueTimeoutMillis, fortune);
+        serviceUnavailable(ctx, "The fortune could not be added in time, try again later");
+        return;
+      }
+
+      // Too late to take it back, the writer is committing it now
+      status = result.get();
+    }
+
+    if (status == InsertStatus.created) {
+      created(ctx);
+    } else {
+      log.info("Add failed due to duplicate fortune: {}", fortune);
+      conflict(ctx);
+    }
+  }
 }
@@ -0,0 +1,115 @@
+package net.shinton.fortune.handler;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.javalin.http.HttpStatus;
+import java.util.Arrays;
+import java.util.Map;
+import net.shinton.fortune.data.FortuneModel;
+import net.shinton.fortune.data.FortuneSnapshot;
+import net.shinton.fortune.data.FortuneSnapshotListener;
+import net.shinton.fortune.factory.ObjectMapperFactory;
+import net.shinton.fortune.model.RestResponseStatus;
+import net.shinton.fortune.model.immutable.ImmutableRestResponse;
+
+/**
+ * <p>
+ *   Keeps a fully serialized <code>RestResponse</code> for every fortune in
+ *   the model's snapshot. There are only as many distinct responses for a
+ *   random fortune as there are fortunes, so there is no reason to run them
+ *   through Jackson over and over again.
+ * </p>
+ * <p>
+ *   The payloads are rebuilt whenever the model publishes a new snapshot.
+ *   Since snapshots only ever grow by appending, only the new fortunes need to
+ *   be serialized.
+ * </p>
+ */
+public class FortuneResponseCache implements FortuneSnapshotListener {
+  private static final ObjectMapper mapper = new ObjectMapperFactory().newMapper();
+
+  private volatile Payloads payloads;
+
+  /**
+   * Creates a new cache and registers it with the model so that it is built
+   * right away and kept up to date.
+   *
+   * @param model The fortune model, which must be in snapshot mode
+   */
+  public FortuneResponseCache(FortuneModel model) {
+    model.addSnapshotListener(this);
+  }
+
+  /**
+   * Gets the serialized response for a random fortune.
+   *
+   * @return The UTF-8 encoded JSON response or <code>null</code> if there are
+   *         no fortunes
+   */
+  public byte[] getRandomPayload() {
+    Payloads current = payloads;
+    int index = current.snapshot.randomIndex();
+    return (index < 0) ? null : current.bytes[index];
+  }
+
+  /**
+   * Rebuilds the payloads for the new snapshot, reusing the ones that were
+   * already serialized for the previous snapshot.
+   *
+   * @param snapshot The new snapshot
+   */
+  @Override
+  public void snapshotChanged(FortuneSnapshot snapshot) {
+    Payloads previous = payloads;
+    int reused = 0;
+    byte[][] bytes;
+
+    if (previous != null && snapshot.startsWith(previous.snapshot)) {
+      bytes = Arrays.copyOf(previous.bytes, snapshot.size());
+      reused = previous.bytes.length;
+    } else {
+      bytes = new byte[snapshot.size()][];
+    }
+
+    for (int i = reused; i < bytes.length; i++) {
+      bytes[i] = serialize(snapshot.get(i));
+    }
+
+    payloads = new Payloads(snapshot, bytes);
+  }
+
+  /**
+   * Serializes the response for a single fortune exactly the way the
+   * {@link BaseHandler} would.
+   *
+   * @param fortune The fortune
+   * @return The UTF-8 encoded JSON response
+   */
+  private byte[] serialize(String fortune) {
+    try {
+      return mapper.writeValueAsBytes(ImmutableRestResponse.<Map<String, String>>builder()
+          .status(RestResponseStatus.success)
+          .code(HttpStatus.OK.getCode())
+          .data(Map.of("fortune", fortune))
+          .build());
+
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Could not serialize fortune: " + fortune, e);
+    }
+  }
+
+  /**
+   * A snapshot paired with the payloads built from it. They are kept together
+   * so a reader never picks an index from one snapshot and a payload from
+   * another.
+   */
+  private static final class Payloads {
+    private final FortuneSnapshot snapshot;
+    private final byte[][] bytes;
+
+    private Payloads(FortuneSnapshot snapshot, byte[][] bytes) {
+      this.snapshot = snapshot;
+      this.bytes = bytes;
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package net.shinton.fortune.handler;
+
+import io.javalin.http.Context;
+import java.util.Map;
+import java.util.stream.Collectors;
+import net.shinton.fortune.FortuneApiConfig;
+import net.shinton.fortune.data.FortuneModel;
+import org.apache.commons.lang3.StringUtils;
+import org.jdbi.v3.core.Jdbi;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Javalin handler for requests to search the fortunes. The words in the
+ * <code>q</code> query parameter are looked up in the full-text index and the
+ * best matches are returned first. The optional <code>limit</code> query
+ * parameter caps the number of matches.
+ */
+public class FortuneSearchHandler extends BaseHandler {
+  private static final Logger log = LoggerFactory.getLogger(FortuneSearchHandler.class);
+
+  /**
+   * The number of matches returned when no limit is supplied.
+   */
+  public static final int DEFAULT_LIMIT = 10;
+
+  /**
+   * The most matches that can be asked for in a single call.
+   */
+  public static final int MAX_LIMIT = 100;
+
+  private final FortuneModel model;
+
+  /**
+   * Creates a new search handler.
+   *
+   * @param config The API config
+   * @param jdbi The database to query
+   */
+  public FortuneSearchHandler(FortuneApiConfig config, Jdbi jdbi) {
+    this(config, new FortuneModel(jdbi));
+  }
+
+  /**
+   * Creates a new search handler that shares the supplied model.
+   *
+   * @param config The API config
+   * @param model The fortune model
+   */
+  public FortuneSearchHandler(FortuneApiConfig config, FortuneModel model) {
+    super(config);
+    this.model = model;
+  }
+
+  /**
+   * Handles the request.
+   *
+   * @param ctx The Javalin context
+   * @throws Exception When there is an unexpected error
+   */
+  @Override
+  protected void handleRequest(@NotNull Context ctx) throws Exception {
+    String callerAddress = getCallerAddress(ctx);
+
+    if (log.isTraceEnabled()) {
+      log.trace("FortuneSearchHandler ({})", callerAddress);
+    }
+
+    String text = ctx.queryParam("q");
+    if (StringUtils.isBlank(text)) {
+      badRequest(ctx, "Parameter 'q' is required");
+      return;
+    }
+
+    String limitParam = ctx.queryParam("limit");
+    Integer limit = (limitParam == null) ? Integer.valueOf(DEFAULT_LIMIT) : getInteger(limitParam);
+    if (limit == null || limit < 1 || limit > MAX_LIMIT) {
+      badRequest(ctx, "Parameter 'limit' must be between 1 and " + MAX_LIMIT);
+      return;
+    }
+
+    // No matches is still a successful search, so it is an empty list rather than a 404
+    ok(ctx, model.searchFortunes(text, limit).stream()
+        .map(fortune -> Map.of("fortune", fortune))
+        .collect(Collectors.toList()));
+  }
+}
@@ -0,0 +1,78 @@
+package net.shinton.fortune.handler;
+
+import io.javalin.http.Context;
+import java.util.Map;
+import java.util.stream.Collectors;
+import net.shinton.fortune.FortuneApiConfig;
+import net.shinton.fortune.data.FortuneModel;
+import net.shinton.fortune.data.FortuneSuggestIndex;
+import org.apache.commons.lang3.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Javalin handler for requests to suggest fortunes while a new one is being
+ * typed. The <code>q</code> query parameter holds the text so far, and the
+ * last word in it may be incomplete. Suggestions come from an in-memory
+ * {@link FortuneSuggestIndex}, so this handler needs a model in snapshot mode.
+ */
+public class FortuneSuggestHandler extends BaseHandler {
+  private static final Logger log = LoggerFactory.getLogger(FortuneSuggestHandler.class);
+
+  /**
+   * The number of suggestions returned when no limit is supplied.
+   */
+  public static final int DEFAULT_LIMIT = 10;
+
+  /**
+   * The most suggestions that can be asked for in a single call.
+   */
+  public static final int MAX_LIMIT = 100;
+
+  private final FortuneSuggestIndex index;
+
+  /**
+   * Creates a new suggest handler that shares the supplied model.
+   *
+   * @param config The API config
+   * @param model The fortune model, which must be in snapshot mode
+   */
+  public FortuneSuggestHandler(FortuneApiConfig config, FortuneModel model) {
+    super(config);
+    this.index = new FortuneSuggestIndex(model);
+  }
+
+  /**
+   * Handles the request.
+   *
+   * @param ctx The Javalin context
+   * @throws Exception When there is an unexpected error
+   */
+  @Override
+  protected void handleRequest(@NotNull Context ctx) throws Exception {
+    String callerAddress = getCallerAddress(ctx);
+
+    if (log.isTraceEnabled()) {
+      log.trace("FortuneSuggestHandler ({})", callerAddress);
+    }
+
+    String text = ctx.queryParam("q");
+    if (StringUtils.isBlank(text)) {
+      badRequest(ctx, "Parameter 'q' is required");
+      return;
+    }
+
+    String limitParam = ctx.queryParam("limit");
+    Integer limit = (limitParam == null) ? Integer.valueOf(DEFAULT_LIMIT) : getInteger(limitParam);
+    if (limit == null || limit < 1 || limit > MAX_LIMIT) {
+      badRequest(ctx, "Parameter 'limit' must be between 1 and " + MAX_LIMIT);
+      return;
+    }
+
+    // No suggestions is still a successful call, so it is an empty list rather than a 404
+    ok(ctx, index.suggest(text, limit).stream()
+        .map(fortune -> Map.of("fortune", fortune))
+        .collect(Collectors.toList()));
+  }
+}
@@ -0,0 +1,63 @@
+package net.shinton.fortune.handler;
+
+import io.javalin.http.Context;
+import io.javalin.http.HttpStatus;
+import net.shinton.fortune.FortuneApiConfig;
+import net.shinton.fortune.metrics.FortuneMetrics;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Javalin handler for requests to scrape the metrics of the service. Unlike
+ * the other handlers, the response is in the Prometheus text format rather
+ * than a <code>RestResponse</code>. The metrics reveal the routes, the
+ * connection pools and the JVM, so the scraper needs a bearer token for
+ * <code>/metrics</code>.
+ */
+public class MetricsHandler extends BaseHandler {
+  private static final Logger log = LoggerFactory.getLogger(MetricsHandler.class);
+
+  /**
+   * The content type of the Prometheus text format.
+   */
+  public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private final FortuneMetrics metrics;
+
+  /**
+   * Creates a new metrics handler.
+   *
+   * @param config The API config
+   * @param metrics The metrics to report
+   */
+  public MetricsHandler(FortuneApiConfig config, FortuneMetrics metrics) {
+    super(config);
+    this.metrics = metrics;
+  }
+
+  /**
+   * Handles the request.
+   *
+   * @param ctx The Javalin context
+   * @throws Exception When there is an unexpected error
+   */
+  @Override
+  protected void handleRequest(@NotNull Context ctx) throws Exception {
+    String callerAddress = getCallerAddress(ctx);
+
+    if (log.isTraceEnabled()) {
+      log.trace("MetricsHandler ({})", callerAddress);
+    }
+
+    if (!isAuthorized(ctx, "/metrics")) {
+      log.warn("User not authorized to GET metrics ({})", callerAddress);
+      unauthorized(ctx);
+      return;
+    }
+
+    ctx.status(HttpStatus.OK)
+        .contentType(CONTENT_TYPE)
+        .result(metrics.scrape());
+  }
+}
@@ -0,0 +1,277 @@
+package net.shinton.fortune.metrics;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.javalin.http.Handler;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import net.shinton.fortune.data.FortuneDatabase;
+import net.shinton.util.LatencyHistogram;
+
+/**
+ * <p>
+ *   Collects the metrics of the service and writes them out in the
+ *   Prometheus text format. Request latencies are recorded per route and
+ *   status code by wrapping each handler with {@link #instrument}. The
+ *   connection pools and the JVM are read when the metrics are scraped, so
+ *   they cost nothing in between.
+ * </p>
+ * <p>
+ *   Latencies are exported as a Prometheus histogram with fixed buckets, so
+ *   they can be summed across instances and turned into rates. The
+ *   percentiles since startup are exported as well, read straight from the
+ *   finer buckets the latencies are recorded in.
+ * </p>
+ * <p>
+ *   The bounds of the exported buckets are moved up to the nearest edge of
+ *   the buckets the latencies are recorded in, so 500 microseconds is
+ *   exported as <code>le="0.000512"</code>. That way no recorded bucket
+ *   straddles a bound and every exported count is exact.
+ * </p>
+ */
+public class FortuneMetrics {
+  /**
+   * The upper bounds of the exported latency buckets, in microseconds,
+   * before they are moved to bucket edges.
+   */
+  private static final long[] NOMINAL_BUCKET_MICROS = {
+      500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000, 250_000, 500_000, 1_000_000, 2_500_000, 5_000_000,
+      10_000_000
+  };
+
+  /**
+   * The upper bounds of the exported latency buckets, in microseconds.
+   */
+  private static final long[] BUCKET_MICROS = Arrays.stream(NOMINAL_BUCKET_MICROS)
+      .map(LatencyHistogram::roundUpToBucketEdge)
+      .toArray();
+
+  /**
+   * The percentiles exported for each route and status code.
+   */
+  private static final double[] PERCENTILES = {50.0, 90.0, 99.0, 99.9};
+
+  private static final String REQUEST_DURATION = "fortune_http_request_duration_seconds";
+  private static final String REQUEST_PERCENTILE = "fortune_http_request_duration_percentile_seconds";
+
+  private final FortuneDatabase database;
+  private final List<RouteMetrics> routes = new CopyOnWriteArrayList<>();
+
+  /**
+   * Creates a new set of metrics.
+   *
+   * @param database The database whose connection pools are reported, or
+   *        <code>null</code> to leave them out
+   */
+  public FortuneMetrics(FortuneDatabase database) {
+    this.database = database;
+  }
+
+  /**
+   * Wraps a handler so that the latency and status code of every request it
+   * handles are recorded.
+   *
+   * @param method The HTTP method the handler is registered for
+   * @param route The path the handler is registered with
+   * @param handler The handler
+   * @return The instrumented handler
+   */
+  public Handler instrument(String method, String route, Handler handler) {
+    RouteMetrics metrics = new RouteMetrics(method, route);
+    routes.add(metrics);
+    return new InstrumentedHandler(handler, metrics);
+  }
+
+  /**
+   * Writes out all metrics in the Prometheus text format.
+   *
+   * @return The metrics
+   */
+  public String scrape() {
+    StringBuilder out = new StringBuilder(4096);
+    writeRequests(out);
+    writePools(out);
+    writeJvm(out);
+    return out.toString();
+  }
+
+  /**
+   * Writes out the request latencies.
+   *
+   * @param out The text to append to
+   */
+  private void writeRequests(StringBuilder out) {
+    header(out, REQUEST_DURATION, "histogram", "Time spent handling requests");
+    for (RouteMetrics route : routes) {
+      for (int status = 0; status < route.getStatusSlots(); status++) {
+        LatencyHistogram histogram = route.getHistogram(status);
+        if (histogram == null) {
+          continue;
+        }
+
+        String labels = requestLabels(route, status);
+        for (long bucket : BUCKET_MICROS) {
+          sample(out, REQUEST_DURATION + "_bucket", labels + ",le=\"" + seconds(bucket) + "\"",
+              Long.toString(histogram.getCountAtOrBelow(bucket - 1)));
+        }
+
+        long count = histogram.getCount();
+        sample(out, REQUEST_DURATION + "_bucket", labels + ",le=\"+Inf\"", Long.toString(count));
+        sample(out, REQUEST_DURATION + "_sum", labels, seconds(histogram.getSumMicros()));
+        sample(out, REQUEST_DURATION + "_count", labels, Long.toString(count));
+      }
+    }
+
+    header(out, REQUEST_PERCENTILE, "gauge", "Percentiles of the time spent handling requests since startup");
+    for (RouteMetrics route : routes) {
+      for (int status = 0; status < route.getStatusSlots(); status++) {
+        LatencyHistogram histogram = route.getHistogram(status);
+        if (histogram == null) {
+          continue;
+        }
+
+        String labels = requestLabels(route, status);
+        for (double percentile : PERCENTILES) {
+          sample(out, REQUEST_PERCENTILE, labels + ",percentile=\"" + BigDecimal.valueOf(percentile).stripTrailingZeros()
+              .toPlainString() + "\"", seconds(histogram.getValueAtPercentile(percentile)));
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes out the state of the connection pools.
+   *
+   * @param out The text to append to
+   */
+  private void writePools(StringBuilder out) {
+    if (database == null) {
+      return;
+    }
+
+    header(out, "fortune_db_connections_active", "gauge", "Connections in use");
+    header(out, "fortune_db_connections_idle", "gauge", "Connections waiting in the pool to be used");
+    header(out, "fortune_db_connections_pending", "gauge", "Threads waiting for a connection from the pool");
+    for (HikariDataSource pool : database.getPools()) {
+      HikariPoolMXBean bean = pool.getHikariPoolMXBean();
+      if (bean != null) {
+        String labels = "pool=\"" + escape(pool.getPoolName()) + "\"";
+        sample(out, "fortune_db_connections_active", labels, Integer.toString(bean.getActiveConnections()));
+        sample(out, "fortune_db_connections_idle", labels, Integer.toString(bean.getIdleConnections()));
+        sample(out, "fortune_db_connections_pending", labels, Integer.toString(bean.getThreadsAwaitingConnection()));
+      }
+    }
+
+    if (database.isBounded()) {
+      header(out, "fortune_db_connections_in_flight", "gauge", "Connections handed out by the bounded connection factories");
+      sample(out, "fortune_db_connections_in_flight", null, Integer.toString(database.getConnectionsInFlight()));
+      header(out, "fortune_db_connections_waiting", "gauge", "Callers waiting on the bounded connection factories");
+      sample(out, "fortune_db_connections_waiting", null, Integer.toString(database.getConnectionsWaiting()));
+    }
+  }
+
+  /**
+   * Writes out the memory, garbage collection and thread counts of the JVM.
+   *
+   * @param out The text to append to
+   */
+  private void writeJvm(StringBuilder out) {
+    MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+    MemoryUsage nonHeap = ManagementFactory.getMemoryMXBean().getNonHeapMemoryUsage();
+
+    header(out, "jvm_memory_used_bytes", "gauge", "Memory in use");
+    sample(out, "jvm_memory_used_bytes", "area=\"heap\"", Long.toString(heap.getUsed()));
+    sample(out, "jvm_memory_used_bytes", "area=\"nonheap\"", Long.toString(nonHeap.getUsed()));
+    header(out, "jvm_memory_committed_bytes", "gauge", "Memory reserved by the JVM");
+    sample(out, "jvm_memory_committed_bytes", "area=\"heap\"", Long.toString(heap.getCommitted()));
+    sample(out, "jvm_memory_committed_bytes", "area=\"nonheap\"", Long.toString(nonHeap.getCommitted()));
+    header(out, "jvm_memory_max_bytes", "gauge", "The most memory the JVM can use, or -1 if there is no limit");
+    sample(out, "jvm_memory_max_bytes", "area=\"heap\"", Long.toString(heap.getMax()));
+    sample(out, "jvm_memory_max_bytes", "area=\"nonheap\"", Long.toString(nonHeap.getMax()));
+
+    List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+    header(out, "jvm_gc_collections_total", "counter", "Garbage collections run");
+    for (GarbageCollectorMXBean collector : collectors) {
+      sample(out, "jvm_gc_collections_total", "gc=\"" + escape(collector.getName()) + "\"",
+          Long.toString(Math.max(collector.getCollectionCount(), 0)));
+    }
+
+    header(out, "jvm_gc_collection_seconds_total", "counter", "Time spent on garbage collection");
+    for (GarbageCollectorMXBean collector : collectors) {
+      sample(out, "jvm_gc_collection_seconds_total", "gc=\"" + escape(collector.getName()) + "\"",
+          seconds(Math.max(collector.getCollectionTime(), 0) * 1000));
+    }
+
+    header(out, "jvm_threads_live", "gauge", "Live threads");
+    sample(out, "jvm_threads_live", null, Integer.toString(ManagementFactory.getThreadMXBean().getThreadCount()));
+  }
+
+  /**
+   * Utility method to build the labels of a request metric.
+   *
+   * @param route The route
+   * @param status The status code, or zero for the codes outside the valid range
+   * @return The labels
+   */
+  private static String requestLabels(RouteMetrics route, int status) {
+    return "method=\"" + escape(route.getMethod()) +
+        "\",route=\"" + escape(route.getRoute()) +
+        "\",status=\"" + ((status == 0) ? "unknown" : Integer.toString(status)) + "\"";
+  }
+
+  /**
+   * Utility method to write the help and type lines of a metric.
+   *
+   * @param out The text to append to
+   * @param name The name of the metric
+   * @param type The Prometheus type of the metric
+   * @param help The description of the metric
+   */
+  private static void header(StringBuilder out, String name, String type, String help) {
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  /**
+   * Utility method to write a sample line.
+   *
+   * @param out The text to append to
+   * @param name The name of the sample
+   * @param labels The labels or <code>null</code> if there are none
+   * @param value The value
+   */
+  private static void sample(StringBuilder out, String name, String labels, String value) {
+    out.append(name);
+    if (labels != null) {
+      out.append('{').append(labels).append('}');
+    }
+
+    out.append(' ').append(value).append('\n');
+  }
+
+  /**
+   * Utility method to turn microseconds into a number of seconds without
+   * any rounding or exponent.
+   *
+   * @param micros The microseconds
+   * @return The seconds
+   */
+  private static String seconds(long micros) {
+    return BigDecimal.valueOf(micros, 6).stripTrailingZeros().toPlainString();
+  }
+
+  /**
+   * Utility method to escape a label value.
+   *
+   * @param value The value
+   * @return The escaped value
+   */
+  private static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+}
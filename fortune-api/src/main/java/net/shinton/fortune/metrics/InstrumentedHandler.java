@@ -0,0 +1,42 @@
+package net.shinton.fortune.metrics;
+
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Wraps a handler to record how long it takes and with what status code it
+ * answers. The metrics for the route are looked up once, when the handler is
+ * wrapped, so a request costs two clock reads and a counter increment.
+ */
+class InstrumentedHandler implements Handler {
+  private final Handler handler;
+  private final RouteMetrics metrics;
+
+  /**
+   * Creates a new instrumented handler.
+   *
+   * @param handler The handler to time
+   * @param metrics The metrics of the route the handler serves
+   */
+  InstrumentedHandler(Handler handler, RouteMetrics metrics) {
+    this.handler = handler;
+    this.metrics = metrics;
+  }
+
+  /**
+   * Handles the request and records its latency, even if the handler fails.
+   *
+   * @param ctx The Javalin context
+   * @throws Exception When the handler fails
+   */
+  @Override
+  public void handle(@NotNull Context ctx) throws Exception {
+    long start = System.nanoTime();
+    try {
+      handler.handle(ctx);
+    } finally {
+      metrics.record(ctx.statusCode(), System.nanoTime() - start);
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package net.shinton.fortune.metrics;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import net.shinton.util.LatencyHistogram;
+
+/**
+ * The latencies of one route, kept apart by status code. The histogram for a
+ * status code is created the first time that status is seen. After that,
+ * recording a request only reads an array slot and bumps a counter.
+ */
+class RouteMetrics {
+  /**
+   * Status codes outside the valid range are all counted in this slot.
+   */
+  private static final int UNKNOWN_STATUS = 0;
+  private static final int MAX_STATUS = 599;
+
+  private final String method;
+  private final String route;
+  private final AtomicReferenceArray<LatencyHistogram> histograms = new AtomicReferenceArray<>(MAX_STATUS + 1);
+
+  /**
+   * Creates the metrics for a route.
+   *
+   * @param method The HTTP method
+   * @param route The path the handler was registered with
+   */
+  RouteMetrics(String method, String route) {
+    this.method = method;
+    this.route = route;
+  }
+
+  /**
+   * Records the latency of a request.
+   *
+   * @param status The status code of the response
+   * @param nanos The latency in nanoseconds
+   */
+  void record(int status, long nanos) {
+    int slot = (status >= 100 && status <= MAX_STATUS) ? status : UNKNOWN_STATUS;
+
+    LatencyHistogram histogram = histograms.get(slot);
+    if (histogram == null) {
+      histograms.compareAndSet(slot, null, new LatencyHistogram());
+      histogram = histograms.get(slot);
+    }
+
+    histogram.record(nanos);
+  }
+
+  /**
+   * Gets the HTTP method.
+   *
+   * @return The method
+   */
+  String getMethod() {
+    return method;
+  }
+
+  /**
+   * Gets the path the handler was registered with.
+   *
+   * @return The route
+   */
+  String getRoute() {
+    return route;
+  }
+
+  /**
+   * Gets the histogram for a status code.
+   *
+   * @param status The status code, or zero for the codes outside the valid range
+   * @return The histogram or <code>null</code> if the status has not been seen
+   */
+  LatencyHistogram getHistogram(int status) {
+    return histograms.get(status);
+  }
+
+  /**
+   * Gets the size of the table of status codes.
+   *
+   * @return One more than the largest status code kept apart
+   */
+  int getStatusSlots() {
+    return histograms.length();
+  }
+}
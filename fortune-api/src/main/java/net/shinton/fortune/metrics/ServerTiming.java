@@ -0,0 +1,193 @@
+package net.shinton.fortune.metrics;
+
+import java.math.BigDecimal;
+
+/**
+ * <p>
+ *   Times the phases of a single request so they can be sent back in a
+ *   <code>Server-Timing</code> header. A timer is bound to the thread that
+ *   handles the request, which lets code far from the handler, such as the
+ *   connection factory, add to it without being handed anything.
+ * </p>
+ * <p>
+ *   Phases can be entered more than once and can nest. Only the time spent
+ *   in the outermost entry is counted, so a connection opened while another
+ *   is already open is not counted twice. A timer is only ever used by one
+ *   thread and is not thread-safe.
+ * </p>
+ */
+public final class ServerTiming {
+  /**
+   * The name of the response header.
+   */
+  public static final String HEADER = "Server-Timing";
+
+  private static final ThreadLocal<ServerTiming> CURRENT = new ThreadLocal<>();
+
+  private final long start = System.nanoTime();
+  private final long[] nanos = new long[Phase.values().length];
+  private final long[] entered = new long[nanos.length];
+  private final int[] depth = new int[nanos.length];
+  private long totalNanos = -1;
+
+  /**
+   * Creates a new timer. Use {@link #begin()} to get one.
+   */
+  private ServerTiming() {
+  }
+
+  /**
+   * Starts timing a request on the current thread.
+   *
+   * @return The timer for the request
+   */
+  public static ServerTiming begin() {
+    ServerTiming timing = new ServerTiming();
+    CURRENT.set(timing);
+    return timing;
+  }
+
+  /**
+   * Gets the timer of the request being handled on the current thread.
+   *
+   * @return The timer or <code>null</code> if the request is not being timed
+   */
+  public static ServerTiming current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Stops timing the request and unbinds the timer from the current thread.
+   */
+  public void end() {
+    totalNanos = System.nanoTime() - start;
+    CURRENT.remove();
+  }
+
+  /**
+   * Marks the start of a phase.
+   *
+   * @param phase The phase
+   */
+  public void enter(Phase phase) {
+    int index = phase.ordinal();
+    if (depth[index]++ == 0) {
+      entered[index] = System.nanoTime();
+    }
+  }
+
+  /**
+   * Marks the end of a phase that was entered.
+   *
+   * @param phase The phase
+   */
+  public void exit(Phase phase) {
+    int index = phase.ordinal();
+    if (depth[index] > 0 && --depth[index] == 0) {
+      nanos[index] += System.nanoTime() - entered[index];
+    }
+  }
+
+  /**
+   * Gets the time spent in a phase so far.
+   *
+   * @param phase The phase
+   * @return The time in nanoseconds
+   */
+  public long getNanos(Phase phase) {
+    return nanos[phase.ordinal()];
+  }
+
+  /**
+   * Formats the timings as the value of a <code>Server-Timing</code> header.
+   * Phases that were never entered are left out. The total is included once
+   * the timer has ended.
+   *
+   * @return The header value
+   */
+  public String toHeader() {
+    StringBuilder header = new StringBuilder(128);
+    for (Phase phase : Phase.values()) {
+      if (nanos[phase.ordinal()] > 0) {
+        append(header, phase.getName(), phase.getDescription(), nanos[phase.ordinal()]);
+      }
+    }
+
+    if (totalNanos >= 0) {
+      append(header, "total", "Handler", totalNanos);
+    }
+
+    return header.toString();
+  }
+
+  /**
+   * Utility method to append one metric to the header value.
+   *
+   * @param header The header value so far
+   * @param name The name of the metric
+   * @param description The description of the metric
+   * @param nanos The duration in nanoseconds
+   */
+  private static void append(StringBuilder header, String name, String description, long nanos) {
+    if (header.length() > 0) {
+      header.append(", ");
+    }
+
+    // The header wants milliseconds, and microsecond precision is plenty
+    header.append(name)
+        .append(";desc=\"").append(description)
+        .append("\";dur=").append(BigDecimal.valueOf(nanos / 1000, 3).stripTrailingZeros().toPlainString());
+  }
+
+  /**
+   * The phases of a request that are timed.
+   */
+  public enum Phase {
+    /**
+     * Checking the bearer token.
+     */
+    AUTH("auth", "Authorization"),
+
+    /**
+     * Getting a database connection, querying and giving it back.
+     */
+    DB("db", "Database"),
+
+    /**
+     * Turning the response into JSON.
+     */
+    SERIALIZATION("ser", "Serialization");
+
+    private final String name;
+    private final String description;
+
+    /**
+     * Creates a phase.
+     *
+     * @param name The name used in the header
+     * @param description The description used in the header
+     */
+    Phase(String name, String description) {
+      this.name = name;
+      this.description = description;
+    }
+
+    /**
+     * Gets the name used in the header.
+     *
+     * @return The name
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Gets the description used in the header.
+     *
+     * @return The description
+     */
+    public String getDescription() {
+      return description;
+    }
+  }
+}
@@ -0,0 +1,118 @@
+package net.shinton.util;
+
+import java.util.Random;
+
+/**
+ * <p>
+ *   An implementation of Vose's alias method for sampling from a discrete
+ *   probability distribution. Building the table is <code>O(n)</code>, after
+ *   which every draw is <code>O(1)</code>: pick a column at random, then flip a
+ *   biased coin to decide between the column and its alias.
+ * </p>
+ * <p>
+ *   The table is stored in two primitive arrays and is immutable once built,
+ *   so it can be shared by any number of threads and drawing from it does not
+ *   allocate.
+ * </p>
+ *
+ * @see <a href="https://www.keithschwarz.com/darts-dice-coins/">Darts, Dice, and Coins</a>
+ */
+public final class AliasTable {
+  private final double[] probability;
+  private final int[] alias;
+
+  /**
+   * Builds a new table from the supplied weights. The weights do not need to
+   * add up to one, but they must all be positive.
+   *
+   * @param weights The weight of each outcome
+   * @throws IllegalArgumentException when there are no weights or a weight is
+   *         not positive
+   */
+  public AliasTable(double[] weights) {
+    int count = weights.length;
+    if (count == 0) {
+      throw new IllegalArgumentException("At least one weight is required");
+    }
+
+    double total = 0;
+    for (double weight : weights) {
+      if (!(weight > 0) || Double.isInfinite(weight)) {
+        throw new IllegalArgumentException("Weights must be positive: " + weight);
+      }
+      total += weight;
+    }
+
+    probability = new double[count];
+    alias = new int[count];
+
+    /*
+     * Scale the weights so the average is one, then split the outcomes into
+     * those that under-fill their column and those that over-fill it.
+     */
+    double[] scaled = new double[count];
+    int[] small = new int[count];
+    int[] large = new int[count];
+    int smallCount = 0;
+    int largeCount = 0;
+
+    for (int i = 0; i < count; i++) {
+      scaled[i] = weights[i] * count / total;
+
+      if (scaled[i] < 1.0) {
+        small[smallCount++] = i;
+      } else {
+        large[largeCount++] = i;
+      }
+    }
+
+    /*
+     * Top off each under-filled column with part of an over-filled one. The
+     * donor then goes back into whichever group it now belongs to.
+     */
+    while (smallCount > 0 && largeCount > 0) {
+      int less = small[--smallCount];
+      int more = large[--largeCount];
+
+      probability[less] = scaled[less];
+      alias[less] = more;
+
+      scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+
+      if (scaled[more] < 1.0) {
+        small[smallCount++] = more;
+      } else {
+        large[largeCount++] = more;
+      }
+    }
+
+    // Whatever is left is full, give or take some floating point error
+    while (largeCount > 0) {
+      probability[large[--largeCount]] = 1.0;
+    }
+
+    while (smallCount > 0) {
+      probability[small[--smallCount]] = 1.0;
+    }
+  }
+
+  /**
+   * Draws a random outcome.
+   *
+   * @param random The random number generator to use
+   * @return The position of the outcome in the weights the table was built from
+   */
+  public int sample(Random random) {
+    int column = random.nextInt(probability.length);
+    return (random.nextDouble() < probability[column]) ? column : alias[column];
+  }
+
+  /**
+   * The number of outcomes in the table.
+   *
+   * @return The size
+   */
+  public int size() {
+    return probability.length;
+  }
+}
@@ -0,0 +1,78 @@
+package net.shinton.util;
+
+import java.util.Random;
+
+/**
+ * <p>
+ *   Picks a number of distinct values at random using Robert Floyd's
+ *   sampling algorithm. Unlike shuffling an index array, the cost depends only
+ *   on how many values are picked and not on how many there are to pick from,
+ *   so picking 20 values out of a billion is as cheap as picking 20 out of 50.
+ * </p>
+ * <p>
+ *   The picked values are kept in a plain array and checked for duplicates
+ *   with a linear scan. That is <code>O(count<sup>2</sup>)</code>, which is
+ *   faster than hashing for the small counts this is meant for.
+ * </p>
+ */
+public final class FloydSampler {
+  /**
+   * This is a utility class and should not be instantiated.
+   */
+  private FloydSampler() {
+  }
+
+  /**
+   * Picks distinct values from <code>[0, bound)</code> in random order.
+   *
+   * @param bound The number of values to pick from
+   * @param count The number of values to pick
+   * @param random The random number generator to use
+   * @return The values, of which there are <code>count</code> or
+   *         <code>bound</code>, whichever is smaller
+   */
+  public static long[] sample(long bound, int count, Random random) {
+    int size = (int) Math.max(0, Math.min(bound, count));
+    long[] picked = new long[size];
+
+    /*
+     * For each of the last size values, pick a random value up to and
+     * including it. If that one was already picked, take the upper value
+     * instead, which cannot have been picked yet.
+     */
+    int found = 0;
+    for (long upper = bound - size; upper < bound; upper++) {
+      long candidate = random.nextLong(upper + 1);
+      picked[found] = contains(picked, found, candidate) ? upper : candidate;
+      found++;
+    }
+
+    // Every set is equally likely, but the order is not, so shuffle it
+    for (int i = size - 1; i > 0; i--) {
+      int swap = random.nextInt(i + 1);
+      long value = picked[i];
+      picked[i] = picked[swap];
+      picked[swap] = value;
+    }
+
+    return picked;
+  }
+
+  /**
+   * Utility method to check the start of an array for a value.
+   *
+   * @param values The array to check
+   * @param length The number of values at the start of the array to check
+   * @param value The value to look for
+   * @return <code>true</code> if found
+   */
+  private static boolean contains(long[] values, int length, long value) {
+    for (int i = 0; i < length; i++) {
+      if (values[i] == value) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+}
@@ -0,0 +1,13 @@
+--
+-- Add a weight to each fortune so that some fortunes can be picked more often
+-- than others. Every existing fortune keeps the same odds of being picked.
+--
+
+ALTER TABLE fortune ADD COLUMN weight REAL NOT NULL DEFAULT 1.0 CHECK (weight > 0);
+
+--
+-- The index lets MAX(weight) be answered without scanning the table, which is
+-- needed when picking weighted fortunes straight from the database.
+--
+
+CREATE INDEX fortune_weight_idx ON fortune (weight);
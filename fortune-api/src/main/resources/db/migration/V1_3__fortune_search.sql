@@ -0,0 +1,33 @@
+--
+-- Full-text index over the quotes so they can be searched without scanning
+-- the table. The index is an external content table, so it only stores the
+-- tokens and reads the quotes themselves from the fortune table.
+--
+
+CREATE VIRTUAL TABLE fortune_search USING fts5(
+    quote,
+    content = 'fortune',
+    content_rowid = 'id',
+    tokenize = 'porter unicode61'
+);
+
+INSERT INTO fortune_search (fortune_search) VALUES ('rebuild');
+
+--
+-- Keep the index in step with the table. An external content table cannot
+-- read the old quote once it is gone, so deletes and updates have to hand it
+-- over explicitly.
+--
+
+CREATE TRIGGER fortune_search_insert AFTER INSERT ON fortune BEGIN
+    INSERT INTO fortune_search (rowid, quote) VALUES (new.id, new.quote);
+END;
+
+CREATE TRIGGER fortune_search_delete AFTER DELETE ON fortune BEGIN
+    INSERT INTO fortune_search (fortune_search, rowid, quote) VALUES ('delete', old.id, old.quote);
+END;
+
+CREATE TRIGGER fortune_search_update AFTER UPDATE OF quote ON fortune BEGIN
+    INSERT INTO fortune_search (fortune_search, rowid, quote) VALUES ('delete', old.id, old.quote);
+    INSERT INTO fortune_search (rowid, quote) VALUES (new.id, new.quote);
+END;
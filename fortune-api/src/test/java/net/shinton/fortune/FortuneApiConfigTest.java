@@ -1,8 +1,10 @@
 package net.shinton.fortune;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import net.shinton.fortune.factory.FortuneApiConfigFactory;
 import org.junit.Test;
@@ -29,6 +31,36 @@ public class FortuneApiConfigTest {
     assertNull(config.sslCerts());
     assertNull(config.jwtSigningKey());
     assertNull(config.publicHost());
+    assertTrue(config.snapshotEnabled());
+    assertTrue(config.streamingEnabled());
+    assertTrue(config.precompressionEnabled());
+    assertFalse(config.writeQueueEnabled());
+    assertEquals(10000, config.writeQueueCapacity());
+    assertEquals(500, config.writeBatchSize());
+    assertEquals(5, config.writeBatchDelayMillis());
+    assertEquals("WAL", config.sqliteJournalMode());
+    assertEquals("NORMAL", config.sqliteSynchronous());
+    assertEquals(0, config.sqliteMmapSize());
+    assertEquals(0, config.sqliteCacheSize());
+    assertEquals(5000, config.sqliteBusyTimeoutMillis());
+    assertEquals(4, config.sqliteReadPoolSize());
+    assertTrue(config.duplicateCheckEnabled());
+    assertFalse(config.virtualThreadsEnabled());
+    assertTrue(config.http2Enabled());
+    assertFalse(config.h2cEnabled());
+    assertFalse(config.httpWithHttpsEnabled());
+    assertEquals(0, config.acceptors());
+    assertEquals(0, config.selectors());
+    assertEquals(0, config.acceptQueueSize());
+    assertEquals(30_000, config.idleTimeoutMillis());
+    assertEquals(32_768, config.outputBufferSize());
+    assertEquals(8, config.minThreads());
+    assertEquals(200, config.maxThreads());
+    assertEquals(0, config.bufferPoolMaxHeapMemory());
+    assertEquals(0, config.bufferPoolMaxDirectMemory());
+    assertTrue(config.metricsEnabled());
+    assertFalse(config.serverTimingEnabled());
+    assertEquals(0, config.serverTimingLogEvery());
   }
 
   /**
@@ -47,6 +79,36 @@ public class FortuneApiConfigTest {
         .sslCerts("efg")
         .jwtSigningKey("hij")
         .publicHost("http://localhost")
+        .snapshotEnabled(false)
+        .streamingEnabled(false)
+        .precompressionEnabled(false)
+        .writeQueueEnabled(true)
+        .writeQueueCapacity(10)
+        .writeBatchSize(20)
+        .writeBatchDelayMillis(30)
+        .sqliteJournalMode("DELETE")
+        .sqliteSynchronous("FULL")
+        .sqliteMmapSize(40)
+        .sqliteCacheSize(-50)
+        .sqliteBusyTimeoutMillis(60)
+        .sqliteReadPoolSize(70)
+        .duplicateCheckEnabled(false)
+        .virtualThreadsEnabled(true)
+        .http2Enabled(false)
+        .h2cEnabled(true)
+        .httpWithHttpsEnabled(true)
+        .acceptors(1)
+        .selectors(2)
+        .acceptQueueSize(64)
+        .idleTimeoutMillis(1000)
+        .outputBufferSize(4096)
+        .minThreads(4)
+        .maxThreads(16)
+        .bufferPoolMaxHeapMemory(1024L)
+        .bufferPoolMaxDirectMemory(2048L)
+        .metricsEnabled(false)
+        .serverTimingEnabled(true)
+        .serverTimingLogEvery(100)
         .build();
 
     assertNotNull(config);
@@ -58,6 +120,36 @@ public class FortuneApiConfigTest {
     assertEquals("efg", config.sslCerts());
     assertEquals("hij", config.jwtSigningKey());
     assertEquals("http://localhost", config.publicHost());
+    assertFalse(config.snapshotEnabled());
+    assertFalse(config.streamingEnabled());
+    assertFalse(config.precompressionEnabled());
+    assertTrue(config.writeQueueEnabled());
+    assertEquals(10, config.writeQueueCapacity());
+    assertEquals(20, config.writeBatchSize());
+    assertEquals(30, config.writeBatchDelayMillis());
+    assertEquals("DELETE", config.sqliteJournalMode());
+    assertEquals("FULL", config.sqliteSynchronous());
+    assertEquals(40, config.sqliteMmapSize());
+    assertEquals(-50, config.sqliteCacheSize());
+    assertEquals(60, config.sqliteBusyTimeoutMillis());
+    assertEquals(70, config.sqliteReadPoolSize());
+    assertFalse(config.duplicateCheckEnabled());
+    assertTrue(config.virtualThreadsEnabled());
+    assertFalse(config.http2Enabled());
+    assertTrue(config.h2cEnabled());
+    assertTrue(config.httpWithHttpsEnabled());
+    assertEquals(1, config.acceptors());
+    assertEquals(2, config.selectors());
+    assertEquals(64, config.acceptQueueSize());
+    assertEquals(1000, config.idleTimeoutMillis());
+    assertEquals(4096, config.outputBufferSize());
+    assertEquals(4, config.minThreads());
+    assertEquals(16, config.maxThreads());
+    assertEquals(1024L, config.bufferPoolMaxHeapMemory());
+    assertEquals(2048L, config.bufferPoolMaxDirectMemory());
+    assertFalse(config.metricsEnabled());
+    assertTrue(config.serverTimingEnabled());
+    assertEquals(100, config.serverTimingLogEvery());
 
     config = ImmutableFortuneApiConfig.builder()
         .logLevel("ERROR")
@@ -70,5 +162,35 @@ public class FortuneApiConfigTest {
 
     assertNull(config.sslKey());
     assertNull(config.sslCerts());
+    assertTrue(config.snapshotEnabled());
+    assertTrue(config.streamingEnabled());
+    assertTrue(config.precompressionEnabled());
+    assertFalse(config.writeQueueEnabled());
+    assertEquals(10000, config.writeQueueCapacity());
+    assertEquals(500, config.writeBatchSize());
+    assertEquals(5, config.writeBatchDelayMillis());
+    assertEquals("WAL", config.sqliteJournalMode());
+    assertEquals("NORMAL", config.sqliteSynchronous());
+    assertEquals(0, config.sqliteMmapSize());
+    assertEquals(0, config.sqliteCacheSize());
+    assertEquals(5000, config.sqliteBusyTimeoutMillis());
+    assertEquals(4, config.sqliteReadPoolSize());
+    assertTrue(config.duplicateCheckEnabled());
+    assertFalse(config.virtualThreadsEnabled());
+    assertTrue(config.http2Enabled());
+    assertFalse(config.h2cEnabled());
+    assertFalse(config.httpWithHttpsEnabled());
+    assertEquals(0, config.acceptors());
+    assertEquals(0, config.selectors());
+    assertEquals(0, config.acceptQueueSize());
+    assertEquals(30_000, config.idleTimeoutMillis());
+    assertEquals(32_768, config.outputBufferSize());
+    assertEquals(8, config.minThreads());
+    assertEquals(200, config.maxThreads());
+    assertEquals(0, config.bufferPoolMaxHeapMemory());
+    assertEquals(0, config.bufferPoolMaxDirectMemory());
+    assertTrue(config.metricsEnabled());
+    assertFalse(config.serverTimingEnabled());
+    assertEquals(0, config.serverTimingLogEvery());
   }
 }
\ No newline at end of file
@@ -0,0 +1,124 @@
+package net.shinton.fortune.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.junit.Test;
+
+/**
+ * <code>JUnit</code> tests for the {@link BoundedConnectionFactory} class.
+ */
+public class BoundedConnectionFactoryTest {
+  /**
+   * Test that callers past the limit wait until a connection is closed, and
+   * that the connections in flight and the callers waiting are reported.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testBounded() throws Exception {
+    DataSource dataSource = mock(DataSource.class);
+    Connection first = mock(Connection.class);
+    Connection second = mock(Connection.class);
+    Connection third = mock(Connection.class);
+    when(dataSource.getConnection()).thenReturn(first, second, third);
+
+    BoundedConnectionFactory factory = new BoundedConnectionFactory(dataSource, 2, 30_000);
+    assertSame(first, factory.openConnection());
+    assertSame(second, factory.openConnection());
+    assertEquals(2, factory.getInFlight());
+
+    final CompletableFuture<Connection> waiting = CompletableFuture.supplyAsync(() -> {
+      try {
+        return factory.openConnection();
+      } catch (SQLException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+
+    for (int i = 0; i < 100 && factory.getWaiting() == 0; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(1, factory.getWaiting());
+    assertEquals(2, factory.getInFlight());
+
+    // Closing a connection lets the waiting caller in
+    factory.closeConnection(first);
+    verify(first).close();
+    assertSame(third, waiting.get(5, TimeUnit.SECONDS));
+    assertEquals(0, factory.getWaiting());
+    assertEquals(2, factory.getInFlight());
+
+    factory.closeConnection(second);
+    factory.closeConnection(third);
+    assertEquals(0, factory.getInFlight());
+  }
+
+  /**
+   * Test that a caller who cannot get a connection from the pool does not
+   * keep its turn.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testFailure() throws Exception {
+    DataSource dataSource = mock(DataSource.class);
+    when(dataSource.getConnection()).thenThrow(new SQLException("Pool is closed"));
+
+    BoundedConnectionFactory factory = new BoundedConnectionFactory(dataSource, 1, 30_000);
+    assertThrows(SQLException.class, factory::openConnection);
+    assertThrows(SQLException.class, factory::openConnection);
+    assertEquals(0, factory.getInFlight());
+
+    // An interrupted caller gives up instead of waiting
+    doReturn(mock(Connection.class)).when(dataSource).getConnection();
+    factory.openConnection();
+
+    Thread.currentThread().interrupt();
+    try {
+      assertThrows(SQLException.class, factory::openConnection);
+      assertTrue(Thread.interrupted());
+    } finally {
+      Thread.interrupted();
+    }
+    assertEquals(1, factory.getInFlight());
+  }
+
+  /**
+   * Test that a caller who waits longer than the timeout gives up the way it
+   * would if the pool itself ran out of connections.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testTimeout() throws Exception {
+    DataSource dataSource = mock(DataSource.class);
+    Connection connection = mock(Connection.class);
+    when(dataSource.getConnection()).thenReturn(connection);
+
+    BoundedConnectionFactory factory = new BoundedConnectionFactory(dataSource, 1, 50);
+    assertSame(connection, factory.openConnection());
+
+    long start = System.nanoTime();
+    assertThrows(SQLTransientConnectionException.class, factory::openConnection);
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    assertEquals(0, factory.getWaiting());
+    assertEquals(1, factory.getInFlight());
+
+    // The turn that timed out was never taken, so the next caller gets in
+    factory.closeConnection(connection);
+    assertSame(connection, factory.openConnection());
+  }
+}
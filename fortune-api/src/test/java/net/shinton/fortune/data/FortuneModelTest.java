@@ -0,0 +1,184 @@
+package net.shinton.fortune.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import net.shinton.exception.DuplicateEntryException;
+import net.shinton.fortune.factory.FortuneDatabaseFactory;
+import org.jdbi.v3.core.Jdbi;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <code>JUnit</code> tests for the {@link FortuneModel} class.
+ */
+public class FortuneModelTest {
+  private Jdbi jdbi;
+
+  /**
+   * Create a clean in-memory database for each test
+   */
+  @Before
+  public void beforeTest() {
+    this.jdbi = new FortuneDatabaseFactory().newDatabase("jdbc:sqlite::memory:");
+  }
+
+  /**
+   * Test to ensure a model in snapshot mode serves the same data as the
+   * database and picks up fortunes as they are added.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testSnapshot() throws Exception {
+    FortuneModel snapshotModel = new FortuneModel(jdbi, true);
+    FortuneModel databaseModel = new FortuneModel(jdbi);
+
+    assertTrue(snapshotModel.isSnapshotEnabled());
+    assertFalse(databaseModel.isSnapshotEnabled());
+
+    // The snapshot should contain everything in the database
+    List<String> fortunes = snapshotModel.getAllFortunes();
+    assertEquals(databaseModel.getAllFortunes(), fortunes);
+
+    // Random fortunes should always come from the snapshot
+    Set<String> known = new HashSet<>(fortunes);
+    for (int i = 0; i < 100; i++) {
+      assertTrue(known.contains(snapshotModel.getRandomFortune()));
+    }
+
+    // Adding a fortune should publish a new snapshot
+    String fortune = "A snapshot a day keeps the database away.";
+    assertTrue(snapshotModel.addFortune(fortune));
+    assertEquals(fortunes.size() + 1, snapshotModel.getAllFortunes().size());
+    assertTrue(snapshotModel.getAllFortunes().contains(fortune));
+    assertTrue(databaseModel.getAllFortunes().contains(fortune));
+
+    // The old list is a view of the old snapshot and should not have changed
+    assertFalse(fortunes.contains(fortune));
+  }
+
+  /**
+   * Test to ensure both kinds of model return distinct random fortunes and
+   * never more than there are.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testRandomFortunes() throws Exception {
+    FortuneModel snapshotModel = new FortuneModel(jdbi, true);
+    FortuneModel databaseModel = new FortuneModel(jdbi);
+    int total = databaseModel.getAllFortunes().size();
+
+    for (FortuneModel model : List.of(snapshotModel, databaseModel)) {
+      List<String> fortunes = model.getRandomFortunes(20);
+      assertEquals(20, fortunes.size());
+      assertEquals(20, new HashSet<>(fortunes).size());
+
+      // Asking for more than there are returns all of them
+      fortunes = model.getRandomFortunes(total + 10);
+      assertEquals(total, new HashSet<>(fortunes).size());
+    }
+
+    // Weights should not cause duplicates either
+    assertTrue(snapshotModel.addFortune("Heavy is the head.", 1000.0));
+    List<String> weighted = snapshotModel.getRandomFortunes(10);
+    assertEquals(10, new HashSet<>(weighted).size());
+  }
+
+  /**
+   * Test to ensure a model in snapshot mode honors the weights of fortunes
+   * already in the database and of fortunes added later.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testWeightedSnapshot() throws Exception {
+    String heavy = "Weight is what you make of it.";
+    FortuneModel databaseModel = new FortuneModel(jdbi);
+    assertTrue(databaseModel.addFortune(heavy, 1000.0));
+
+    FortuneModel snapshotModel = new FortuneModel(jdbi, true);
+    assertEquals(1000.0, snapshotModel.getSnapshot().getWeight(snapshotModel.getAllFortunes().indexOf(heavy)), 0.0);
+    assertTrue(countHits(snapshotModel, heavy) > 900);
+
+    // An appended fortune gets its own weight
+    String heavier = "Heavier still.";
+    assertTrue(snapshotModel.addFortune(heavier, 100_000.0));
+    assertTrue(countHits(snapshotModel, heavier) > 900);
+  }
+
+  /**
+   * Test to ensure known duplicates are turned away without touching the
+   * database, and that duplicates the model did not know about are learned.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testDuplicateCheck() throws Exception {
+    Jdbi writer = spy(jdbi);
+    FortuneModel model = new FortuneModel(new FortuneDatabase(jdbi, writer), false, true);
+    String existing = model.getAllFortunes().get(0);
+
+    assertTrue(model.isKnownFortune(existing));
+    assertThrows(DuplicateEntryException.class, () -> model.addFortune(existing));
+
+    // Only the exact quote is known, so anything else still goes to the database
+    assertFalse(model.isKnownFortune(existing + "!"));
+    assertFalse(model.isKnownFortune(existing.toUpperCase(Locale.ROOT)));
+
+    // Only the fortunes that might be new go to the database
+    String fortune = "Measure twice, insert once.";
+    boolean[] added = model.addFortunes(List.of(new Fortune(existing, 1.0),
+                                                new Fortune(fortune, 1.0),
+                                                new Fortune(fortune, 1.0)));
+    assertArrayEquals(new boolean[] {false, true, false}, added);
+    assertTrue(model.isKnownFortune(fortune));
+
+    // A batch of nothing but known duplicates does not start a transaction
+    assertArrayEquals(new boolean[] {false, false}, model.addFortunes(List.of(new Fortune(existing, 1.0),
+                                                                              new Fortune(fortune, 1.0))));
+
+    // So far the only trip to the database was the one batch
+    verify(writer, times(1)).open();
+
+    // A fortune added behind the model's back is still caught by the database, and then remembered
+    String other = "Somebody else got here first.";
+    assertTrue(new FortuneModel(jdbi).addFortune(other));
+    assertFalse(model.isKnownFortune(other));
+    assertThrows(DuplicateEntryException.class, () -> model.addFortune(other));
+    assertTrue(model.isKnownFortune(other));
+
+    // Without the check nothing is known
+    assertFalse(new FortuneModel(jdbi).isKnownFortune(existing));
+  }
+
+  /**
+   * Utility method to count how many of 1000 random picks were a fortune.
+   *
+   * @param model The model to pick from
+   * @param fortune The fortune to count
+   * @return The number of picks
+   */
+  private int countHits(FortuneModel model, String fortune) {
+    int hits = 0;
+
+    for (int i = 0; i < 1000; i++) {
+      if (fortune.equals(model.getRandomFortune())) {
+        hits++;
+      }
+    }
+
+    return hits;
+  }
+}
@@ -0,0 +1,113 @@
+package net.shinton.fortune.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import net.shinton.fortune.factory.FortuneDatabaseFactory;
+import org.jdbi.v3.core.Jdbi;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <code>JUnit</code> tests for the {@link FortuneSuggestIndex} class.
+ */
+public class FortuneSuggestIndexTest {
+  private Jdbi jdbi;
+
+  /**
+   * Create a clean in-memory database for each test
+   */
+  @Before
+  public void beforeTest() {
+    this.jdbi = new FortuneDatabaseFactory().newDatabase("jdbc:sqlite::memory:");
+  }
+
+  /**
+   * "Happy path" test for the {@link FortuneSuggestIndex}.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testSuccess() throws Exception {
+    FortuneModel model = new FortuneModel(jdbi, true);
+    FortuneSuggestIndex index = new FortuneSuggestIndex(model);
+
+    // The last word is a prefix, case does not matter and each fortune is only suggested once
+    List<String> suggestions = index.suggest("FRIE", 10);
+    assertTrue(suggestions.contains("A friend asks only for your time not your money."));
+    assertTrue(suggestions.contains("A chance meeting opens new doors to success and friendship."));
+    assertEquals(suggestions.size(), suggestions.stream().distinct().count());
+
+    // An exact word comes before a longer one
+    assertEquals("A friend asks only for your time not your money.", index.suggest("friend", 10).get(0));
+
+    // The other words have to match whole words
+    assertEquals(List.of("A friend asks only for your time not your money."), index.suggest("money fri", 10));
+    assertTrue(index.suggest("mone fri", 10).isEmpty());
+
+    assertEquals(1, index.suggest("a", 1).size());
+    assertTrue(index.suggest("zebr", 10).isEmpty());
+    assertTrue(index.suggest(" ?! ", 10).isEmpty());
+
+    // New fortunes are picked up as they are added, and accents are ignored
+    model.addFortune("Crème brûlée cures everything.");
+    assertEquals(List.of("Crème brûlée cures everything."), index.suggest("creme bru", 10));
+  }
+
+  /**
+   * Test that fortunes are still found after the recent words have been
+   * merged into the main array.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testMerge() throws Exception {
+    FortuneModel model = new FortuneModel(jdbi, true);
+    FortuneSuggestIndex index = new FortuneSuggestIndex(model);
+
+    // Add batches until well past the point where the recent words are merged
+    for (int batch = 0; batch < 5; batch++) {
+      List<Fortune> fortunes = new ArrayList<>();
+      for (int i = 0; i < 1000; i++) {
+        fortunes.add(new Fortune(String.format(Locale.ROOT,
+            "Batch%d number%d brings words%d and more%d", batch, i, i % 7, i), 1.0));
+      }
+
+      model.addFortunes(fortunes);
+    }
+
+    assertEquals(List.of("Batch3 number42 brings words0 and more42"), index.suggest("number42 batch3", 10));
+    assertEquals(5, index.suggest("number999", 10).size());
+    assertEquals(50, index.suggest("batch0", 50).size());
+    assertTrue(index.suggest("friend", 10).contains("A friend asks only for your time not your money."));
+  }
+
+  /**
+   * Test that a rare word is found along with a common prefix, however many
+   * other fortunes match the prefix.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testRareWord() throws Exception {
+    FortuneModel model = new FortuneModel(jdbi, true);
+    final FortuneSuggestIndex index = new FortuneSuggestIndex(model);
+
+    // Plenty of fortunes with words that start with "c", and one rare word at the very end
+    List<Fortune> fortunes = new ArrayList<>();
+    for (int i = 0; i < 20_000; i++) {
+      fortunes.add(new Fortune(String.format(Locale.ROOT, "Common%d words%d", i, i % 3), 1.0));
+    }
+
+    model.addFortunes(fortunes);
+    model.addFortune("A zebra crossing is coming.");
+
+    assertEquals(List.of("A zebra crossing is coming."), index.suggest("zebra c", 10));
+    assertEquals(List.of("A zebra crossing is coming."), index.suggest("coming zebra c", 10));
+    assertTrue(index.suggest("zebra words0 c", 10).isEmpty());
+    assertEquals(10, index.suggest("words1 c", 10).size());
+  }
+}
@@ -0,0 +1,217 @@
+package net.shinton.fortune.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import net.shinton.fortune.factory.FortuneDatabaseFactory;
+import net.shinton.fortune.model.InsertStatus;
+import org.jdbi.v3.core.Jdbi;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <code>JUnit</code> tests for the {@link FortuneWriteQueue} class.
+ */
+public class FortuneWriteQueueTest {
+  private Jdbi jdbi;
+
+  /**
+   * Create a clean in-memory database for each test
+   */
+  @Before
+  public void beforeTest() {
+    this.jdbi = new FortuneDatabaseFactory().newDatabase("jdbc:sqlite::memory:");
+  }
+
+  /**
+   * Test that fortunes submitted from many threads are all committed and that
+   * duplicates are reported, even when they land in the same group.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testSubmit() throws Exception {
+    FortuneModel model = new FortuneModel(jdbi, true);
+    String existing = model.getAllFortunes().get(0);
+    final int count = model.getAllFortunes().size();
+
+    List<CompletableFuture<InsertStatus>> results = new ArrayList<>();
+
+    try (FortuneWriteQueue writeQueue = new FortuneWriteQueue(model, 1000, 50, 5)) {
+      List<Thread> threads = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        List<CompletableFuture<InsertStatus>> threadResults = new ArrayList<>();
+        int slot = t;
+
+        Thread thread = new Thread(() -> {
+          for (int i = 0; i < 100; i++) {
+            threadResults.add(writeQueue.submit(String.format(Locale.ROOT, "Queued %d-%d", slot, i), 1.0));
+          }
+          // The same fortune from every thread, and one that is already there
+          threadResults.add(writeQueue.submit("Queued by everyone", 1.0));
+          threadResults.add(writeQueue.submit(existing, 1.0));
+
+          synchronized (results) {
+            results.addAll(threadResults);
+          }
+        });
+
+        threads.add(thread);
+        thread.start();
+      }
+
+      for (Thread thread : threads) {
+        thread.join();
+      }
+    }
+
+    // Closing waits for everything to be written, so every future is done
+    int created = 0;
+    int duplicate = 0;
+    for (CompletableFuture<InsertStatus> result : results) {
+      assertTrue(result.isDone());
+      if (result.get() == InsertStatus.created) {
+        created++;
+      } else {
+        duplicate++;
+      }
+    }
+
+    assertEquals(4 * 102, results.size());
+    assertEquals(401, created);
+    assertEquals(7, duplicate);
+    assertEquals(count + 401, model.getAllFortunes().size());
+    assertEquals(count + 401, new FortuneModel(jdbi).getAllFortunes().size());
+  }
+
+  /**
+   * Test that a full queue turns fortunes away instead of blocking.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testFull() throws Exception {
+    // Hold the writer inside its first commit until we let it go
+    CountDownLatch writing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+
+    FortuneModel model = mock(FortuneModel.class);
+    when(model.addFortunes(any())).thenAnswer(invocation -> {
+      writing.countDown();
+      release.await();
+      return new boolean[((List<?>) invocation.getArgument(0)).size()];
+    });
+
+    try (FortuneWriteQueue writeQueue = new FortuneWriteQueue(model, 2, 1, 0)) {
+      CompletableFuture<InsertStatus> first = writeQueue.submit("First", 1.0);
+      assertNotNull(first);
+      assertTrue(writing.await(10, TimeUnit.SECONDS));
+
+      // The writer is busy, so two more fill the queue and the next is turned away
+      assertNotNull(writeQueue.submit("Second", 1.0));
+      assertNotNull(writeQueue.submit("Third", 1.0));
+      assertNull(writeQueue.submit("Fourth", 1.0));
+
+      release.countDown();
+      assertEquals(InsertStatus.duplicate, first.get(10, TimeUnit.SECONDS));
+    }
+  }
+
+  /**
+   * Test that when the writer is interrupted, the fortunes it was writing and
+   * the ones still queued fail instead of leaving their callers waiting.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testInterrupted() throws Exception {
+    // Hold the writer inside its first commit until it is interrupted
+    CountDownLatch writing = new CountDownLatch(1);
+
+    FortuneModel model = mock(FortuneModel.class);
+    when(model.addFortunes(any())).thenAnswer(invocation -> {
+      writing.countDown();
+      try {
+        new CountDownLatch(1).await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted", e);
+      }
+      return null;
+    });
+
+    FortuneWriteQueue writeQueue = new FortuneWriteQueue(model, 10, 1, 0);
+    final CompletableFuture<InsertStatus> first = writeQueue.submit("First", 1.0);
+    assertTrue(writing.await(10, TimeUnit.SECONDS));
+    CompletableFuture<InsertStatus> second = writeQueue.submit("Second", 1.0);
+    assertNotNull(second);
+
+    writeQueue.getWriter().interrupt();
+
+    ExecutionException failure = assertThrows(ExecutionException.class, () -> first.get(10, TimeUnit.SECONDS));
+    assertTrue(failure.getCause() instanceof IllegalStateException);
+    failure = assertThrows(ExecutionException.class, () -> second.get(10, TimeUnit.SECONDS));
+    assertTrue(failure.getCause() instanceof IllegalStateException);
+
+    // Closing still returns and nothing more is taken
+    writeQueue.close();
+    assertThrows(IllegalStateException.class, () -> writeQueue.submit("Third", 1.0));
+  }
+
+  /**
+   * Test that a withdrawn fortune is never added, and that a fortune the
+   * writer has already taken cannot be withdrawn.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testWithdraw() throws Exception {
+    // Hold the writer inside its first commit until we let it go
+    CountDownLatch writing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    List<String> added = Collections.synchronizedList(new ArrayList<>());
+
+    FortuneModel model = mock(FortuneModel.class);
+    when(model.addFortunes(any())).thenAnswer(invocation -> {
+      List<Fortune> fortunes = invocation.getArgument(0);
+      fortunes.forEach(fortune -> added.add(fortune.getQuote()));
+      writing.countDown();
+      release.await();
+      return new boolean[fortunes.size()];
+    });
+
+    try (FortuneWriteQueue writeQueue = new FortuneWriteQueue(model, 10, 1, 0)) {
+      CompletableFuture<InsertStatus> first = writeQueue.submit("First", 1.0);
+      assertTrue(writing.await(10, TimeUnit.SECONDS));
+      CompletableFuture<InsertStatus> second = writeQueue.submit("Second", 1.0);
+      final CompletableFuture<InsertStatus> third = writeQueue.submit("Third", 1.0);
+
+      // The writer is busy with the first, so the second can still be taken back
+      assertFalse(writeQueue.withdraw(first));
+      assertTrue(writeQueue.withdraw(second));
+      assertTrue(second.isCancelled());
+      assertFalse(writeQueue.withdraw(second));
+
+      release.countDown();
+      assertEquals(InsertStatus.duplicate, first.get(10, TimeUnit.SECONDS));
+      assertEquals(InsertStatus.duplicate, third.get(10, TimeUnit.SECONDS));
+    }
+
+    assertEquals(List.of("First", "Third"), added);
+  }
+}
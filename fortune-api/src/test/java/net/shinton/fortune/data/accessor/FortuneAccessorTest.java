@@ -0,0 +1,182 @@
+package net.shinton.fortune.data.accessor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import net.shinton.fortune.data.FortuneIdRange;
+import net.shinton.fortune.data.FortunePage;
+import net.shinton.fortune.factory.FortuneDatabaseFactory;
+import org.jdbi.v3.core.Jdbi;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * <code>JUnit</code> tests for the {@link FortuneAccessor} class.
+ */
+public class FortuneAccessorTest {
+  private Jdbi jdbi;
+
+  /**
+   * Create a clean in-memory database for each test
+   */
+  @Before
+  public void beforeTest() {
+    this.jdbi = new FortuneDatabaseFactory().newDatabase("jdbc:sqlite::memory:");
+  }
+
+  /**
+   * Test to ensure random fortunes are found using the id range.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testRandomFortune() throws Exception {
+    jdbi.useHandle(handle -> {
+      FortuneAccessor accessor = new FortuneAccessor(handle);
+      Set<String> known = new HashSet<>(accessor.getAllFortunes());
+
+      FortuneIdRange range = accessor.getIdRange();
+      assertNotNull(range);
+      assertTrue(range.getMinId() <= range.getMaxId());
+
+      for (int i = 0; i < 100; i++) {
+        assertTrue(known.contains(accessor.getRandomFortune(range)));
+      }
+    });
+  }
+
+  /**
+   * Test to ensure gaps left by deleted rows do not stop us from finding the
+   * fortunes that are left.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testRandomFortuneWithGaps() throws Exception {
+    jdbi.useHandle(handle -> {
+      FortuneAccessor accessor = new FortuneAccessor(handle);
+      FortuneIdRange range = accessor.getIdRange();
+
+      // Leave only the first and last fortune so the table is mostly gaps
+      handle.createUpdate("DELETE FROM fortune WHERE id > :min AND id < :max")
+          .bind("min", range.getMinId())
+          .bind("max", range.getMaxId())
+          .execute();
+
+      List<String> remaining = accessor.getAllFortunes();
+      assertEquals(2, remaining.size());
+
+      for (int i = 0; i < 100; i++) {
+        assertTrue(remaining.contains(accessor.getRandomFortune(range)));
+      }
+
+      // An empty table has no range and no fortunes
+      handle.createUpdate("DELETE FROM fortune").execute();
+      assertNull(accessor.getIdRange());
+      assertNull(accessor.getRandomFortune());
+    });
+  }
+
+  /**
+   * Test to ensure fortunes with a larger weight are picked more often.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testWeightedRandomFortune() throws Exception {
+    jdbi.useHandle(handle -> {
+      FortuneAccessor accessor = new FortuneAccessor(handle);
+      int total = accessor.getAllFortunes().size();
+
+      // Give one fortune as much weight as all the others put together
+      String heavy = "The squeaky wheel gets the grease.";
+      assertTrue(accessor.addFortune(heavy, total));
+
+      FortuneIdRange range = accessor.getIdRange();
+      assertEquals(total, range.getMaxWeight(), 0.0);
+
+      int hits = 0;
+      for (int i = 0; i < 400; i++) {
+        if (heavy.equals(accessor.getRandomFortune(range))) {
+          hits++;
+        }
+      }
+
+      // Half the draws are expected; a uniform pick would give about 2%
+      assertTrue("Only " + hits + " of 400 draws", hits > 120);
+    });
+  }
+
+  /**
+   * Test to ensure paging through the table returns every fortune once and in
+   * order.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testFortunePage() throws Exception {
+    jdbi.useHandle(handle -> {
+      FortuneAccessor accessor = new FortuneAccessor(handle);
+      List<String> all = accessor.getAllFortunes();
+
+      List<String> paged = new ArrayList<>();
+      FortunePage page = accessor.getFortunePage(Long.MIN_VALUE, 10);
+      paged.addAll(page.getFortunes());
+
+      while (page.getLastId() != null) {
+        assertEquals(10, page.getFortunes().size());
+        page = accessor.getFortunePage(page.getLastId(), 10);
+        paged.addAll(page.getFortunes());
+      }
+
+      assertEquals(all, paged);
+
+      // A page that exactly fits what is left should be the last one
+      page = accessor.getFortunePage(Long.MIN_VALUE, all.size());
+      assertEquals(all.size(), page.getFortunes().size());
+      assertNull(page.getLastId());
+    });
+  }
+
+  /**
+   * Test to ensure the full-text index finds fortunes and keeps up with
+   * inserts, updates and deletes.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testSearch() throws Exception {
+    jdbi.useHandle(handle -> {
+      FortuneAccessor accessor = new FortuneAccessor(handle);
+
+      // Words are stemmed, so "friends" finds "friend"
+      List<String> found = accessor.searchFortunes("friends", 10);
+      assertTrue(found.contains("A friend asks only for your time not your money."));
+
+      // Every word has to match, in any order
+      assertEquals(List.of("A friend asks only for your time not your money."), accessor.searchFortunes("money FRIEND", 10));
+
+      // Query syntax is treated as plain words rather than failing
+      assertEquals(found, accessor.searchFortunes("\"friends\" * (", 10));
+      assertTrue(accessor.searchFortunes("*\"()", 10).isEmpty());
+      assertEquals(1, accessor.searchFortunes("friends", 1).size());
+
+      assertTrue(accessor.addFortune("Searching is half the fun."));
+      assertEquals(List.of("Searching is half the fun."), accessor.searchFortunes("search", 10));
+
+      handle.createUpdate("UPDATE fortune SET quote = 'Quokkas are the other half.' WHERE quote = 'Searching is half the fun.'")
+          .execute();
+      assertTrue(accessor.searchFortunes("search", 10).isEmpty());
+      assertEquals(List.of("Quokkas are the other half."), accessor.searchFortunes("half quokka", 10));
+
+      handle.createUpdate("DELETE FROM fortune WHERE quote = 'Quokkas are the other half.'").execute();
+      assertTrue(accessor.searchFortunes("quokkas", 10).isEmpty());
+    });
+  }
+}
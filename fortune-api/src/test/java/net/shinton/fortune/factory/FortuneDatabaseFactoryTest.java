@@ -0,0 +1,127 @@
+package net.shinton.fortune.factory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.List;
+import net.shinton.fortune.FortuneApiConfig;
+import net.shinton.fortune.data.Fortune;
+import net.shinton.fortune.data.FortuneDatabase;
+import net.shinton.fortune.data.FortuneModel;
+import org.jdbi.v3.core.JdbiException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * <code>JUnit</code> tests for the {@link FortuneDatabaseFactory} class.
+ */
+public class FortuneDatabaseFactoryTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Test that a database in WAL mode gets a read-only pool for reads and a
+   * separate pool for writes, and that the model uses the right one.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testWal() throws Exception {
+    File file = new File(folder.getRoot(), "fortune.db");
+
+    FortuneApiConfig config = mock(FortuneApiConfig.class);
+    when(config.jdbcUrl()).thenReturn("jdbc:sqlite:" + file.getAbsolutePath());
+    when(config.sqliteJournalMode()).thenReturn("wal");
+    when(config.sqliteSynchronous()).thenReturn("NORMAL");
+    when(config.sqliteBusyTimeoutMillis()).thenReturn(1000);
+    when(config.sqliteReadPoolSize()).thenReturn(2);
+
+    FortuneDatabase database = new FortuneDatabaseFactory().newDatabase(config);
+    assertNotSame(database.getReader(), database.getWriter());
+
+    String journalMode = database.getWriter().withHandle(handle ->
+        handle.createQuery("PRAGMA journal_mode").mapTo(String.class).one());
+    assertEquals("wal", journalMode);
+
+    // The reader cannot write
+    try {
+      database.getReader().useHandle(handle ->
+          handle.execute("INSERT INTO fortune (quote) VALUES ('Read only')"));
+      fail("The reader should be read-only");
+    } catch (JdbiException e) {
+      assertTrue(e.getMessage().contains("SQLITE_READONLY"));
+    }
+
+    // A fortune added through the writer can be read back through the reader
+    FortuneModel model = new FortuneModel(database, false);
+    int count = model.getAllFortunes().size();
+
+    assertTrue(model.addFortune("Write once, read many."));
+    assertEquals(2, model.addFortunes(List.of(new Fortune("Write twice.", 1.0), new Fortune("Read more.", 1.0))).length);
+
+    assertEquals(count + 3, model.getAllFortunes().size());
+    assertTrue(model.getAllFortunes().contains("Write once, read many."));
+  }
+
+  /**
+   * Test that any other journal mode shares one pool for reads and writes.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testShared() throws Exception {
+    FortuneApiConfig config = mock(FortuneApiConfig.class);
+    when(config.jdbcUrl()).thenReturn("jdbc:sqlite:" + new File(folder.getRoot(), "fortune.db").getAbsolutePath());
+    when(config.sqliteJournalMode()).thenReturn("DELETE");
+
+    FortuneDatabase database = new FortuneDatabaseFactory().newDatabase(config);
+    assertSame(database.getReader(), database.getWriter());
+
+    // An in-memory database is never split, whatever the journal mode
+    when(config.jdbcUrl()).thenReturn("jdbc:sqlite::memory:");
+    when(config.sqliteJournalMode()).thenReturn("WAL");
+
+    database = new FortuneDatabaseFactory().newDatabase(config);
+    assertSame(database.getReader(), database.getWriter());
+    assertTrue(new FortuneModel(database, true).getAllFortunes().size() > 0);
+  }
+
+  /**
+   * Test that bounded pools report the connections in flight, and that
+   * unbounded ones are left alone.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testBounded() throws Exception {
+    FortuneApiConfig config = mock(FortuneApiConfig.class);
+    when(config.jdbcUrl()).thenReturn("jdbc:sqlite:" + new File(folder.getRoot(), "fortune.db").getAbsolutePath());
+    when(config.sqliteJournalMode()).thenReturn("WAL");
+    when(config.sqliteReadPoolSize()).thenReturn(2);
+
+    FortuneDatabase database = new FortuneDatabaseFactory().newDatabase(config, true);
+    assertNotSame(database.getReader(), database.getWriter());
+    assertEquals(0, database.getConnectionsInFlight());
+
+    database.getReader().useHandle(reader -> {
+      assertEquals(1, database.getConnectionsInFlight());
+      database.getWriter().useHandle(writer -> assertEquals(2, database.getConnectionsInFlight()));
+    });
+
+    assertEquals(0, database.getConnectionsInFlight());
+    assertEquals(0, database.getConnectionsWaiting());
+    assertTrue(new FortuneModel(database, false).addFortune("Bounded, but not bound."));
+
+    // Enabling virtual threads alone does not bound the pools
+    when(config.virtualThreadsEnabled()).thenReturn(true);
+    assertFalse(new FortuneDatabaseFactory().newDatabase(config).isBounded());
+  }
+}
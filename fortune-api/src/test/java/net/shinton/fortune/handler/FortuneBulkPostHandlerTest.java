@@ -0,0 +1,157 @@
+package net.shinton.fortune.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.javalin.http.ContentType;
+import io.javalin.http.Context;
+import io.javalin.http.HttpStatus;
+import java.util.List;
+import java.util.Map;
+import net.shinton.fortune.FortuneApiConfig;
+import net.shinton.fortune.data.FortuneModel;
+import net.shinton.fortune.factory.FortuneDatabaseFactory;
+import net.shinton.fortune.factory.ObjectMapperFactory;
+import net.shinton.fortune.model.InsertStatus;
+import net.shinton.fortune.model.RestResponseStatus;
+import net.shinton.fortune.model.immutable.RestResponse;
+import net.shinton.util.BearerTokenTool;
+import org.jdbi.v3.core.Jdbi;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * <code>JUnit</code> tests for the {@link FortuneBulkPostHandler} class.
+ */
+public class FortuneBulkPostHandlerTest {
+  private static final ObjectMapper mapper = new ObjectMapperFactory().newMapper();
+  private static final String PUBLIC_HOST = "fortune.shinton.net";
+  private static final String SIGNING_KEY = BearerTokenTool.newSigningKey();
+
+  private Jdbi jdbi;
+
+  /**
+   * Create a clean in-memory database for each test
+   */
+  @Before
+  public void beforeTest() {
+    this.jdbi = new FortuneDatabaseFactory().newDatabase("jdbc:sqlite::memory:");
+  }
+
+  /**
+   * "Happy path" test for the {@link FortuneBulkPostHandler}, which also
+   * checks that bad elements do not stop the good ones.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testSuccess() throws Exception {
+    String existing = new FortuneModel(jdbi).getAllFortunes().get(0);
+
+    // Mock a context so the handler thinks Javalin called it
+    Context context = newContext();
+    when(context.body()).thenReturn(mapper.writeValueAsString(List.of(
+        "Many hands make light work.",
+        Map.of("fortune", "Many fortunes make light work.", "weight", 2),
+        existing,
+        "Many hands make light work.",
+        Map.of("fortune", "Weightless", "weight", 0),
+        " ",
+        42)));
+
+    // Use a model with a snapshot to make sure it sees the new fortunes
+    FortuneModel model = new FortuneModel(jdbi, true);
+    final int count = getCount();
+
+    // Make the call
+    FortuneBulkPostHandler handler = new FortuneBulkPostHandler(newConfig(), model);
+    handler.handle(context);
+
+    // Capture and validate the response
+    ArgumentCaptor<String> resultCaptor = ArgumentCaptor.forClass(String.class);
+    verify(context, times(1)).result(resultCaptor.capture());
+    RestResponse<List<InsertStatus>> response = mapper.readValue(resultCaptor.getValue(), new TypeReference<>() {});
+
+    assertEquals(RestResponseStatus.success, response.getStatus());
+    assertEquals(HttpStatus.OK.getCode(), response.getCode());
+    assertEquals(List.of(InsertStatus.created, InsertStatus.created, InsertStatus.duplicate, InsertStatus.duplicate,
+        InsertStatus.invalid, InsertStatus.invalid, InsertStatus.invalid), response.getData());
+
+    // Verify only the two new fortunes were added, to the database and the snapshot
+    assertEquals(count + 2, getCount());
+    assertEquals(count + 2, model.getSnapshot().size());
+    assertTrue(model.getAllFortunes().contains("Many fortunes make light work."));
+  }
+
+  /**
+   * Test that a body that is not an array is a bad request.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testBadRequest() throws Exception {
+    Context context = newContext();
+    when(context.body()).thenReturn("{ \"fortune\": \"Not a list\" }");
+
+    FortuneBulkPostHandler handler = new FortuneBulkPostHandler(newConfig(), jdbi);
+    handler.handle(context);
+
+    ArgumentCaptor<String> resultCaptor = ArgumentCaptor.forClass(String.class);
+    verify(context, times(1)).result(resultCaptor.capture());
+    RestResponse<?> response = mapper.readValue(resultCaptor.getValue(), new TypeReference<>() {});
+
+    assertEquals(RestResponseStatus.error, response.getStatus());
+    assertEquals(HttpStatus.BAD_REQUEST.getCode(), response.getCode());
+  }
+
+  /**
+   * Utility method to mock a config that shares its signing key with
+   * {@link #newContext()}.
+   *
+   * @return The config
+   */
+  private FortuneApiConfig newConfig() {
+    FortuneApiConfig config = mock(FortuneApiConfig.class);
+    when(config.publicHost()).thenReturn(PUBLIC_HOST);
+    when(config.jwtSigningKey()).thenReturn(SIGNING_KEY);
+    return config;
+  }
+
+  /**
+   * Utility method to mock an authorized context.
+   *
+   * @return The context
+   */
+  private Context newContext() {
+    String bearerToken = new BearerTokenTool(SIGNING_KEY, PUBLIC_HOST).generate(1000, "/api/v1/fortune");
+
+    Context context = mock(Context.class);
+    when(context.ip()).thenReturn("0.0.0.0");
+    when(context.status(any())).thenReturn(context);
+    when(context.result(anyString())).thenReturn(context);
+    when(context.contentType(ContentType.APPLICATION_JSON)).thenReturn(context);
+    when(context.header("Authorization")).thenReturn(bearerToken);
+    return context;
+  }
+
+  /**
+   * Utility method to get the total number of fortunes in the database.
+   *
+   * @return The total number of fortunes
+   */
+  private int getCount() {
+    return jdbi.withHandle(handle ->
+        handle.createQuery("SELECT COUNT(*) FROM fortune")
+            .mapTo(int.class)
+            .first());
+  }
+}
@@ -1,10 +1,17 @@
 package net.shinton.fortune.handler;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -13,9 +20,23 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.http.Header;
 import io.javalin.http.HttpStatus;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 import net.shinton.fortune.FortuneApiConfig;
+import net.shinton.fortune.data.FortuneModel;
 import net.shinton.fortune.factory.FortuneDatabaseFactory;
 import net.shinton.fortune.factory.ObjectMapperFactory;
 import net.shinton.fortune.model.RestResponseStatus;
@@ -86,6 +107,352 @@ public class FortuneGetAllHandlerTest {
     assertEquals(getCount(), fortunes.size());
   }
 
+  /**
+   * Test the {@link FortuneGetAllHandler} with streaming enabled, both against
+   * the database and against a snapshot.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testStreaming() throws Exception {
+    // Create a bearer token for authentication
+    String publicHost = "fortune.shinton.net";
+    String signingKey = BearerTokenTool.newSigningKey();
+    BearerTokenTool bearerTokenTool = new BearerTokenTool(signingKey, publicHost);
+    String bearerToken = bearerTokenTool.generate(1000, "/api/v1/fortune");
+
+    // Mock a config
+    FortuneApiConfig config = mock(FortuneApiConfig.class);
+    when(config.publicHost()).thenReturn(publicHost);
+    when(config.jwtSigningKey()).thenReturn(signingKey);
+    when(config.streamingEnabled()).thenReturn(true);
+
+    for (FortuneModel model : List.of(new FortuneModel(jdbi), new FortuneModel(jdbi, true))) {
+      // Mock a context that collects what is written to the output stream
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      Context context = mock(Context.class);
+      when(context.ip()).thenReturn("0.0.0.0");
+      when(context.status(any())).thenReturn(context);
+      when(context.contentType(ContentType.APPLICATION_JSON)).thenReturn(context);
+      when(context.header("Authorization")).thenReturn(bearerToken);
+      when(context.outputStream()).thenReturn(new ServletOutputStream() {
+        @Override
+        public boolean isReady() {
+          return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+          // Not needed for a blocking write
+        }
+
+        @Override
+        public void write(int value) {
+          body.write(value);
+        }
+      });
+
+      // Make the call
+      FortuneGetAllHandler handler = new FortuneGetAllHandler(config, model);
+      handler.handle(context);
+
+      // Nothing should have been built in memory
+      verify(context, never()).result(anyString());
+
+      // Validate the streamed response
+      RestResponse<List<String>> response = mapper.readValue(body.toByteArray(), new TypeReference<>() {});
+
+      assertEquals(RestResponseStatus.success, response.getStatus());
+      assertEquals(HttpStatus.OK.getCode(), response.getCode());
+      assertEquals(model.getAllFortunes(), response.getData());
+    }
+  }
+
+  /**
+   * Test the {@link FortuneGetAllHandler} when it is asked for pages.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testPagination() throws Exception {
+    // Create a bearer token for authentication
+    String publicHost = "fortune.shinton.net";
+    String signingKey = BearerTokenTool.newSigningKey();
+    BearerTokenTool bearerTokenTool = new BearerTokenTool(signingKey, publicHost);
+    String bearerToken = bearerTokenTool.generate(1000, "/api/v1/fortune");
+
+    // Mock a context so the handler thinks Javalin called it
+    Context context = mock(Context.class);
+    when(context.ip()).thenReturn("0.0.0.0");
+    when(context.status(any())).thenReturn(context);
+    when(context.result(anyString())).thenReturn(context);
+    when(context.contentType(ContentType.APPLICATION_JSON)).thenReturn(context);
+    when(context.header("Authorization")).thenReturn(bearerToken);
+    when(context.queryParam("limit")).thenReturn("20");
+
+    // Mock a config
+    FortuneApiConfig config = mock(FortuneApiConfig.class);
+    when(config.publicHost()).thenReturn(publicHost);
+    when(config.jwtSigningKey()).thenReturn(signingKey);
+
+    FortuneGetAllHandler handler = new FortuneGetAllHandler(config, jdbi);
+    ArgumentCaptor<String> resultCaptor = ArgumentCaptor.forClass(String.class);
+    List<String> fortunes = new ArrayList<>();
+    int calls = 0;
+    String cursor;
+
+    // Follow the cursors until we run out of pages
+    do {
+      handler.handle(context);
+
+      verify(context, times(++calls)).result(resultCaptor.capture());
+      RestResponse<List<String>> response = mapper.readValue(resultCaptor.getValue(), new TypeReference<>() {});
+
+      assertEquals(RestResponseStatus.success, response.getStatus());
+      assertEquals(HttpStatus.OK.getCode(), response.getCode());
+      assertTrue(response.getData().size() <= 20);
+      fortunes.addAll(response.getData());
+
+      cursor = response.getCursor();
+      when(context.queryParam("cursor")).thenReturn(cursor);
+    } while (cursor != null);
+
+    assertEquals(getCount(), fortunes.size());
+    assertEquals(new FortuneModel(jdbi).getAllFortunes(), fortunes);
+
+    // A made up cursor is a bad request
+    when(context.queryParam("cursor")).thenReturn("not a cursor");
+    handler.handle(context);
+
+    verify(context, times(++calls)).result(resultCaptor.capture());
+    RestResponse<?> response = mapper.readValue(resultCaptor.getValue(), new TypeReference<>() {});
+    assertEquals(HttpStatus.BAD_REQUEST.getCode(), response.getCode());
+  }
+
+  /**
+   * Test the {@link FortuneGetAllHandler} with precompression enabled, making
+   * sure each encoding is only compressed once per version.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testPrecompression() throws Exception {
+    // Create a bearer token for authentication
+    String publicHost = "fortune.shinton.net";
+    String signingKey = BearerTokenTool.newSigningKey();
+    BearerTokenTool bearerTokenTool = new BearerTokenTool(signingKey, publicHost);
+    String bearerToken = bearerTokenTool.generate(1000, "/api/v1/fortune");
+
+    // Mock a config
+    FortuneApiConfig config = mock(FortuneApiConfig.class);
+    when(config.publicHost()).thenReturn(publicHost);
+    when(config.jwtSigningKey()).thenReturn(signingKey);
+    when(config.precompressionEnabled()).thenReturn(true);
+
+    FortuneModel model = spy(new FortuneModel(jdbi, true));
+    FortuneGetAllHandler handler = new FortuneGetAllHandler(config, model);
+
+    for (String acceptEncoding : List.of("gzip, deflate, br", "deflate;q=1.0, gzip;q=0.5")) {
+      byte[] first = null;
+
+      for (int i = 0; i < 2; i++) {
+        // Mock a context and a response that collects what is written to it
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        HttpServletResponse res = mock(HttpServletResponse.class);
+        when(res.getOutputStream()).thenReturn(new ServletOutputStream() {
+          @Override
+          public boolean isReady() {
+            return true;
+          }
+
+          @Override
+          public void setWriteListener(WriteListener writeListener) {
+            // Not needed for a blocking write
+          }
+
+          @Override
+          public void write(int value) {
+            body.write(value);
+          }
+        });
+
+        Context context = mock(Context.class);
+        when(context.ip()).thenReturn("0.0.0.0");
+        when(context.header("Authorization")).thenReturn(bearerToken);
+        when(context.header(Header.ACCEPT_ENCODING)).thenReturn(acceptEncoding);
+        when(context.res()).thenReturn(res);
+
+        handler.handle(context);
+
+        // Decompress and validate the response
+        InputStream in = new ByteArrayInputStream(body.toByteArray());
+        if (acceptEncoding.startsWith("gzip")) {
+          verify(res).setHeader(Header.CONTENT_ENCODING, "gzip");
+          in = new GZIPInputStream(in);
+        } else {
+          verify(res).setHeader(Header.CONTENT_ENCODING, "deflate");
+          in = new InflaterInputStream(in);
+        }
+
+        RestResponse<List<String>> response = mapper.readValue(in, new TypeReference<>() {});
+        assertEquals(RestResponseStatus.success, response.getStatus());
+        assertEquals(model.getAllFortunes(), response.getData());
+
+        // The second time around the same bytes come from memory
+        if (first == null) {
+          first = body.toByteArray();
+        } else {
+          assertArrayEquals(first, body.toByteArray());
+        }
+      }
+    }
+
+    // Once for each encoding
+    verify(model, times(2)).forEachFortune(any());
+  }
+
+  /**
+   * Test that requests arriving while the {@link FortuneGetAllHandler} is
+   * compressing the fortunes wait for that copy instead of compressing them
+   * again.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testConcurrentPrecompression() throws Exception {
+    // Create a bearer token for authentication
+    String publicHost = "fortune.shinton.net";
+    String signingKey = BearerTokenTool.newSigningKey();
+    BearerTokenTool bearerTokenTool = new BearerTokenTool(signingKey, publicHost);
+    String bearerToken = bearerTokenTool.generate(1000, "/api/v1/fortune");
+
+    // Mock a config
+    FortuneApiConfig config = mock(FortuneApiConfig.class);
+    when(config.publicHost()).thenReturn(publicHost);
+    when(config.jwtSigningKey()).thenReturn(signingKey);
+    when(config.precompressionEnabled()).thenReturn(true);
+
+    // Slow the compression down so the other requests arrive while it runs
+    FortuneModel model = spy(new FortuneModel(jdbi, true));
+    doAnswer(invocation -> {
+      Thread.sleep(200);
+      return invocation.callRealMethod();
+    }).when(model).forEachFortune(any());
+    FortuneGetAllHandler handler = new FortuneGetAllHandler(config, model);
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<byte[]>> bodies = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        bodies.add(executor.submit(() -> getGzipped(handler, bearerToken)));
+      }
+
+      byte[] first = bodies.get(0).get();
+      for (Future<byte[]> body : bodies) {
+        assertArrayEquals(first, body.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    verify(model, times(1)).forEachFortune(any());
+  }
+
+  /**
+   * Utility method to get all fortunes gzipped from a handler.
+   *
+   * @param handler The handler
+   * @param bearerToken The bearer token to authenticate with
+   * @return The compressed response body
+   * @throws Exception There was an unexpected error
+   */
+  private static byte[] getGzipped(FortuneGetAllHandler handler, String bearerToken) throws Exception {
+    // Mock a context and a response that collects what is written to it
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    HttpServletResponse res = mock(HttpServletResponse.class);
+    when(res.getOutputStream()).thenReturn(new ServletOutputStream() {
+      @Override
+      public boolean isReady() {
+        return true;
+      }
+
+      @Override
+      public void setWriteListener(WriteListener writeListener) {
+        // Not needed for a blocking write
+      }
+
+      @Override
+      public void write(int value) {
+        body.write(value);
+      }
+    });
+
+    Context context = mock(Context.class);
+    when(context.ip()).thenReturn("0.0.0.0");
+    when(context.header("Authorization")).thenReturn(bearerToken);
+    when(context.header(Header.ACCEPT_ENCODING)).thenReturn("gzip");
+    when(context.res()).thenReturn(res);
+
+    handler.handle(context);
+
+    verify(res).setHeader(Header.CONTENT_ENCODING, "gzip");
+    return body.toByteArray();
+  }
+
+  /**
+   * Test that the {@link FortuneGetAllHandler} answers with a 304 when the
+   * client already has the current version of the fortunes.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testNotModified() throws Exception {
+    // Create a bearer token for authentication
+    String publicHost = "fortune.shinton.net";
+    String signingKey = BearerTokenTool.newSigningKey();
+    BearerTokenTool bearerTokenTool = new BearerTokenTool(signingKey, publicHost);
+    String bearerToken = bearerTokenTool.generate(1000, "/api/v1/fortune");
+
+    // Mock a context so the handler thinks Javalin called it
+    Context context = mock(Context.class);
+    when(context.ip()).thenReturn("0.0.0.0");
+    when(context.status(any())).thenReturn(context);
+    when(context.result(anyString())).thenReturn(context);
+    when(context.contentType(ContentType.APPLICATION_JSON)).thenReturn(context);
+    when(context.header("Authorization")).thenReturn(bearerToken);
+
+    // Mock a config
+    FortuneApiConfig config = mock(FortuneApiConfig.class);
+    when(config.publicHost()).thenReturn(publicHost);
+    when(config.jwtSigningKey()).thenReturn(signingKey);
+
+    FortuneModel model = new FortuneModel(jdbi, true);
+    FortuneGetAllHandler handler = new FortuneGetAllHandler(config, model);
+    handler.handle(context);
+
+    // The first call has no tag, so it gets the fortunes and a tag
+    ArgumentCaptor<String> etagCaptor = ArgumentCaptor.forClass(String.class);
+    verify(context, times(1)).header(eq(Header.ETAG), etagCaptor.capture());
+    verify(context, times(1)).result(anyString());
+    String etag = etagCaptor.getValue();
+    assertTrue(etag.startsWith("\"") && etag.endsWith("\""));
+
+    // Sending the tag back means nothing is sent
+    when(context.header(Header.IF_NONE_MATCH)).thenReturn("\"nope\", W/" + etag);
+    handler.handle(context);
+
+    verify(context, times(1)).status(HttpStatus.NOT_MODIFIED);
+    verify(context, times(1)).result(anyString());
+
+    // Adding a fortune changes the tag
+    model.addFortune("A watched pot never changes its ETag.");
+    handler.handle(context);
+
+    verify(context, times(3)).header(eq(Header.ETAG), etagCaptor.capture());
+    verify(context, times(2)).result(anyString());
+    assertNotEquals(etag, etagCaptor.getValue());
+  }
+
   /**
    * Utility method to get the total number of fortunes in the database.
    *
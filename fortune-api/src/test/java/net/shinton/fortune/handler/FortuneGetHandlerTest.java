@@ -15,8 +15,11 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import io.javalin.http.ContentType;
 import io.javalin.http.Context;
 import io.javalin.http.HttpStatus;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import net.shinton.fortune.FortuneApiConfig;
+import net.shinton.fortune.data.FortuneModel;
 import net.shinton.fortune.factory.FortuneDatabaseFactory;
 import net.shinton.fortune.factory.ObjectMapperFactory;
 import net.shinton.fortune.model.RestResponseStatus;
@@ -91,4 +94,90 @@ public class FortuneGetHandlerTest {
 
     assertTrue(StringUtils.isNotBlank(data.get("fortune")));
   }
+
+  /**
+   * Test the {@link FortuneGetHandler} when the model is in snapshot mode and
+   * responses are served pre-serialized.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testSnapshot() throws Exception {
+    // Mock a context so the handler thinks Javalin called it
+    Context context = mock(Context.class);
+    when(context.ip()).thenReturn("0.0.0.0");
+    when(context.status(any())).thenReturn(context);
+    when(context.result(any(byte[].class))).thenReturn(context);
+    when(context.contentType(ContentType.APPLICATION_JSON)).thenReturn(context);
+
+    // Mock a config
+    FortuneApiConfig config = mock(FortuneApiConfig.class);
+
+    // Use a model that serves from a snapshot
+    FortuneModel model = new FortuneModel(jdbi, true);
+    FortuneGetHandler handler = new FortuneGetHandler(config, model);
+
+    // Add a fortune after the handler was created so the cache has to grow
+    model.addFortune("A cache that grows is a cache that knows.");
+
+    handler.handle(context);
+
+    // Capture and validate the response
+    ArgumentCaptor<byte[]> resultCaptor = ArgumentCaptor.forClass(byte[].class);
+    verify(context, times(1)).result(resultCaptor.capture());
+    RestResponse<Map<String, String>> response = mapper.readValue(resultCaptor.getValue(), new TypeReference<>() {});
+
+    assertEquals(RestResponseStatus.success, response.getStatus());
+    assertEquals(HttpStatus.OK.getCode(), response.getCode());
+
+    Map<String, String> data = response.getData();
+    assertNotNull(data);
+    assertTrue(model.getAllFortunes().contains(data.get("fortune")));
+  }
+
+  /**
+   * Test the {@link FortuneGetHandler} when more than one fortune is asked for.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testCount() throws Exception {
+    // Mock a context so the handler thinks Javalin called it
+    Context context = mock(Context.class);
+    when(context.ip()).thenReturn("0.0.0.0");
+    when(context.status(any())).thenReturn(context);
+    when(context.result(anyString())).thenReturn(context);
+    when(context.contentType(ContentType.APPLICATION_JSON)).thenReturn(context);
+    when(context.queryParam("count")).thenReturn("20", "0");
+
+    // Mock a config
+    FortuneApiConfig config = mock(FortuneApiConfig.class);
+
+    // Make the call
+    FortuneGetHandler handler = new FortuneGetHandler(config, jdbi);
+    handler.handle(context);
+
+    // Capture and validate the response
+    ArgumentCaptor<String> resultCaptor = ArgumentCaptor.forClass(String.class);
+    verify(context, times(1)).result(resultCaptor.capture());
+    RestResponse<List<Map<String, String>>> response = mapper.readValue(resultCaptor.getValue(), new TypeReference<>() {});
+
+    assertEquals(RestResponseStatus.success, response.getStatus());
+    assertEquals(HttpStatus.OK.getCode(), response.getCode());
+
+    // All the fortunes should be different
+    List<Map<String, String>> data = response.getData();
+    assertNotNull(data);
+    assertEquals(20, data.size());
+    assertEquals(20, new HashSet<>(data).size());
+
+    // Asking for nothing is a bad request
+    handler.handle(context);
+
+    verify(context, times(2)).result(resultCaptor.capture());
+    RestResponse<?> badResponse = mapper.readValue(resultCaptor.getValue(), new TypeReference<>() {});
+
+    assertEquals(RestResponseStatus.error, badResponse.getStatus());
+    assertEquals(HttpStatus.BAD_REQUEST.getCode(), badResponse.getCode());
+  }
 }
@@ -1,10 +1,13 @@
 package net.shinton.fortune.handler;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -14,8 +17,13 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import io.javalin.http.ContentType;
 import io.javalin.http.Context;
 import io.javalin.http.HttpStatus;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import net.shinton.fortune.FortuneApiConfig;
+import net.shinton.fortune.data.FortuneModel;
+import net.shinton.fortune.data.FortuneWriteQueue;
 import net.shinton.fortune.factory.FortuneDatabaseFactory;
 import net.shinton.fortune.factory.ObjectMapperFactory;
 import net.shinton.fortune.model.RestResponseStatus;
@@ -200,6 +208,191 @@ public class FortunePostHandlerTest {
     assertEquals(1, getCount(fortune));
   }
 
+  /**
+   * Test to ensure a fortune with an invalid weight is rejected.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testInvalidWeight() throws Exception {
+    String fortune = "Nothing weighs less than nothing.";
+
+    // Create a bearer token for authentication
+    String publicHost = "fortune.shinton.net";
+    String signingKey = BearerTokenTool.newSigningKey();
+    BearerTokenTool bearerTokenTool = new BearerTokenTool(signingKey, publicHost);
+    String bearerToken = bearerTokenTool.generate(1000, "/api/v1/fortune");
+
+    // Mock a context so the handler thinks Javalin called it
+    Context context = mock(Context.class);
+    when(context.ip()).thenReturn("0.0.0.0");
+    when(context.status(any())).thenReturn(context);
+    when(context.result(anyString())).thenReturn(context);
+    when(context.contentType(ContentType.APPLICATION_JSON)).thenReturn(context);
+    when(context.body()).thenReturn(String.format(Locale.ROOT, "{ \"fortune\": \"%s\", \"weight\": 0 }", fortune));
+    when(context.header("Authorization")).thenReturn(bearerToken);
+
+    // Mock a config
+    FortuneApiConfig config = mock(FortuneApiConfig.class);
+    when(config.publicHost()).thenReturn(publicHost);
+    when(config.jwtSigningKey()).thenReturn(signingKey);
+
+    // Make the call
+    FortunePostHandler handler = new FortunePostHandler(config, jdbi);
+    handler.handle(context);
+
+    // Capture and validate the response
+    ArgumentCaptor<String> resultCaptor = ArgumentCaptor.forClass(String.class);
+    verify(context, times(1)).result(resultCaptor.capture());
+    RestResponse<?> response = mapper.readValue(resultCaptor.getValue(), new TypeReference<>() {});
+
+    assertEquals(RestResponseStatus.error, response.getStatus());
+    assertEquals(HttpStatus.BAD_REQUEST.getCode(), response.getCode());
+
+    // Make sure the fortune was not added
+    assertEquals(0, getCount(fortune));
+  }
+
+  /**
+   * Test to ensure JSON objects and arrays are rejected instead of being
+   * stored as their string form.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testInvalidType() throws Exception {
+    // Create a bearer token for authentication
+    String publicHost = "fortune.shinton.net";
+    String signingKey = BearerTokenTool.newSigningKey();
+    BearerTokenTool bearerTokenTool = new BearerTokenTool(signingKey, publicHost);
+    String bearerToken = bearerTokenTool.generate(1000, "/api/v1/fortune");
+
+    // Mock a config
+    FortuneApiConfig config = mock(FortuneApiConfig.class);
+    when(config.publicHost()).thenReturn(publicHost);
+    when(config.jwtSigningKey()).thenReturn(signingKey);
+
+    FortunePostHandler handler = new FortunePostHandler(config, jdbi);
+
+    List<String> bodies = List.of(
+        "{ \"fortune\": { \"a\": \"b\" } }",
+        "{ \"fortune\": [ \"x\" ] }",
+        "{ \"fortune\": \"Heavy is the head.\", \"weight\": [ 2 ] }",
+        "{ \"fortune\": \"Heavy is the head.\", \"weight\": true }");
+
+    for (String body : bodies) {
+      // Mock a context so the handler thinks Javalin called it
+      Context context = mock(Context.class);
+      when(context.ip()).thenReturn("0.0.0.0");
+      when(context.status(any())).thenReturn(context);
+      when(context.result(anyString())).thenReturn(context);
+      when(context.contentType(ContentType.APPLICATION_JSON)).thenReturn(context);
+      when(context.body()).thenReturn(body);
+      when(context.header("Authorization")).thenReturn(bearerToken);
+
+      handler.handle(context);
+
+      // Capture and validate the response
+      ArgumentCaptor<String> resultCaptor = ArgumentCaptor.forClass(String.class);
+      verify(context, times(1)).result(resultCaptor.capture());
+      RestResponse<?> response = mapper.readValue(resultCaptor.getValue(), new TypeReference<>() {});
+
+      assertEquals(body, RestResponseStatus.error, response.getStatus());
+      assertEquals(body, HttpStatus.BAD_REQUEST.getCode(), response.getCode());
+    }
+
+    // Make sure nothing was added
+    assertEquals(0, getCount("{a=b}"));
+    assertEquals(0, getCount("[x]"));
+    assertEquals(0, getCount("Heavy is the head."));
+  }
+
+  /**
+   * Test adding through a write queue, which should answer the same way as
+   * adding directly.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testWriteQueue() throws Exception {
+    String fortune = "Good things come to those who queue.";
+
+    // Create a bearer token for authentication
+    String publicHost = "fortune.shinton.net";
+    String signingKey = BearerTokenTool.newSigningKey();
+    BearerTokenTool bearerTokenTool = new BearerTokenTool(signingKey, publicHost);
+    String bearerToken = bearerTokenTool.generate(1000, "/api/v1/fortune");
+
+    // Mock a context so the handler thinks Javalin called it
+    Context context = mock(Context.class);
+    when(context.ip()).thenReturn("0.0.0.0");
+    when(context.status(any())).thenReturn(context);
+    when(context.result(anyString())).thenReturn(context);
+    when(context.contentType(ContentType.APPLICATION_JSON)).thenReturn(context);
+    when(context.body()).thenReturn(String.format(Locale.ROOT, "{ \"fortune\": \"%s\" }", fortune));
+    when(context.header("Authorization")).thenReturn(bearerToken);
+
+    // Mock a config
+    FortuneApiConfig config = mock(FortuneApiConfig.class);
+    when(config.publicHost()).thenReturn(publicHost);
+    when(config.jwtSigningKey()).thenReturn(signingKey);
+
+    FortuneModel model = new FortuneModel(jdbi);
+    try (FortuneWriteQueue writeQueue = new FortuneWriteQueue(model, 10, 10, 1)) {
+      FortunePostHandler handler = new FortunePostHandler(config, model, writeQueue);
+      ArgumentCaptor<String> resultCaptor = ArgumentCaptor.forClass(String.class);
+
+      // The first add is created
+      handler.handle(context);
+
+      verify(context, times(1)).result(resultCaptor.capture());
+      RestResponse<?> response = mapper.readValue(resultCaptor.getValue(), new TypeReference<>() {});
+      assertEquals(HttpStatus.CREATED.getCode(), response.getCode());
+      assertEquals(1, getCount(fortune));
+
+      // The second is a conflict
+      handler.handle(context);
+
+      verify(context, times(2)).result(resultCaptor.capture());
+      response = mapper.readValue(resultCaptor.getValue(), new TypeReference<>() {});
+      assertEquals(HttpStatus.CONFLICT.getCode(), response.getCode());
+      assertEquals(1, getCount(fortune));
+    }
+
+    // A fortune that is not committed in time is taken back and never added
+    String late = "Good things come to those who wait, but not forever.";
+    when(context.body()).thenReturn(String.format(Locale.ROOT, "{ \"fortune\": \"%s\" }", late));
+
+    CountDownLatch writing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    FortuneModel busyModel = mock(FortuneModel.class);
+    when(busyModel.addFortunes(any())).thenAnswer(invocation -> {
+      writing.countDown();
+      release.await();
+      return new boolean[((List<?>) invocation.getArgument(0)).size()];
+    });
+
+    try (FortuneWriteQueue writeQueue = new FortuneWriteQueue(busyModel, 10, 1, 0)) {
+      // Keep the writer busy with another fortune
+      assertNotNull(writeQueue.submit("Blocking the writer", 1.0));
+      assertTrue(writing.await(10, TimeUnit.SECONDS));
+
+      FortunePostHandler handler = new FortunePostHandler(config, busyModel, writeQueue);
+      ArgumentCaptor<String> resultCaptor = ArgumentCaptor.forClass(String.class);
+      handler.handle(context);
+
+      verify(context, times(3)).result(resultCaptor.capture());
+      RestResponse<?> response = mapper.readValue(resultCaptor.getValue(), new TypeReference<>() {});
+      assertEquals(HttpStatus.SERVICE_UNAVAILABLE.getCode(), response.getCode());
+
+      release.countDown();
+    }
+
+    verify(busyModel, times(1)).addFortunes(any());
+    verify(busyModel, never()).addFortunes(argThat(fortunes -> fortunes.stream()
+        .anyMatch(added -> late.equals(added.getQuote()))));
+  }
+
   /**
    * Test to ensure SQL injection does not occur.
    *
@@ -0,0 +1,127 @@
+package net.shinton.fortune.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.javalin.http.ContentType;
+import io.javalin.http.Context;
+import io.javalin.http.HttpStatus;
+import java.util.List;
+import java.util.Map;
+import net.shinton.fortune.FortuneApiConfig;
+import net.shinton.fortune.data.FortuneModel;
+import net.shinton.fortune.factory.FortuneDatabaseFactory;
+import net.shinton.fortune.factory.ObjectMapperFactory;
+import net.shinton.fortune.model.RestResponseStatus;
+import net.shinton.fortune.model.immutable.RestResponse;
+import org.jdbi.v3.core.Jdbi;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * <code>JUnit</code> tests for the {@link FortuneSearchHandler} class.
+ */
+public class FortuneSearchHandlerTest {
+  private static final ObjectMapper mapper = new ObjectMapperFactory().newMapper();
+
+  private Jdbi jdbi;
+
+  /**
+   * Create a clean in-memory database for each test
+   */
+  @Before
+  public void beforeTest() {
+    this.jdbi = new FortuneDatabaseFactory().newDatabase("jdbc:sqlite::memory:");
+  }
+
+  /**
+   * "Happy path" test for the {@link FortuneSearchHandler}.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testSuccess() throws Exception {
+    // Mock a context so the handler thinks Javalin called it
+    Context context = mock(Context.class);
+    when(context.ip()).thenReturn("0.0.0.0");
+    when(context.status(any())).thenReturn(context);
+    when(context.result(anyString())).thenReturn(context);
+    when(context.contentType(ContentType.APPLICATION_JSON)).thenReturn(context);
+    when(context.queryParam("q")).thenReturn("friends", "zebra");
+
+    // Mock a config
+    FortuneApiConfig config = mock(FortuneApiConfig.class);
+
+    // A snapshot model still searches the database, so it sees fortunes added through it
+    FortuneModel model = new FortuneModel(jdbi, true);
+    model.addFortune("Friends are the family we choose.");
+
+    FortuneSearchHandler handler = new FortuneSearchHandler(config, model);
+    handler.handle(context);
+
+    // Capture and validate the response
+    ArgumentCaptor<String> resultCaptor = ArgumentCaptor.forClass(String.class);
+    verify(context, times(1)).result(resultCaptor.capture());
+    RestResponse<List<Map<String, String>>> response = mapper.readValue(resultCaptor.getValue(), new TypeReference<>() {});
+
+    assertEquals(RestResponseStatus.success, response.getStatus());
+    assertEquals(HttpStatus.OK.getCode(), response.getCode());
+
+    List<Map<String, String>> data = response.getData();
+    assertNotNull(data);
+    assertTrue(data.contains(Map.of("fortune", "Friends are the family we choose.")));
+    assertTrue(data.contains(Map.of("fortune", "A friend asks only for your time not your money.")));
+
+    // Finding nothing is not an error
+    handler.handle(context);
+
+    verify(context, times(2)).result(resultCaptor.capture());
+    response = mapper.readValue(resultCaptor.getValue(), new TypeReference<>() {});
+
+    assertEquals(RestResponseStatus.success, response.getStatus());
+    assertEquals(List.of(), response.getData());
+  }
+
+  /**
+   * Test that a missing search or a bad limit is a bad request.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testBadRequest() throws Exception {
+    // Mock a context so the handler thinks Javalin called it
+    Context context = mock(Context.class);
+    when(context.ip()).thenReturn("0.0.0.0");
+    when(context.status(any())).thenReturn(context);
+    when(context.result(anyString())).thenReturn(context);
+    when(context.contentType(ContentType.APPLICATION_JSON)).thenReturn(context);
+    when(context.queryParam("q")).thenReturn(null, " ", "friend");
+    when(context.queryParam("limit")).thenReturn(Integer.toString(FortuneSearchHandler.MAX_LIMIT + 1));
+
+    // Mock a config
+    FortuneApiConfig config = mock(FortuneApiConfig.class);
+
+    FortuneSearchHandler handler = new FortuneSearchHandler(config, jdbi);
+    ArgumentCaptor<String> resultCaptor = ArgumentCaptor.forClass(String.class);
+
+    for (int i = 1; i <= 3; i++) {
+      handler.handle(context);
+
+      verify(context, times(i)).result(resultCaptor.capture());
+      RestResponse<?> response = mapper.readValue(resultCaptor.getValue(), new TypeReference<>() {});
+
+      assertEquals(RestResponseStatus.error, response.getStatus());
+      assertEquals(HttpStatus.BAD_REQUEST.getCode(), response.getCode());
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package net.shinton.fortune.handler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.javalin.http.ContentType;
+import io.javalin.http.Context;
+import io.javalin.http.HttpStatus;
+import java.util.List;
+import java.util.Map;
+import net.shinton.fortune.FortuneApiConfig;
+import net.shinton.fortune.data.FortuneModel;
+import net.shinton.fortune.factory.FortuneDatabaseFactory;
+import net.shinton.fortune.factory.ObjectMapperFactory;
+import net.shinton.fortune.model.RestResponseStatus;
+import net.shinton.fortune.model.immutable.RestResponse;
+import org.jdbi.v3.core.Jdbi;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * <code>JUnit</code> tests for the {@link FortuneSuggestHandler} class.
+ */
+public class FortuneSuggestHandlerTest {
+  private static final ObjectMapper mapper = new ObjectMapperFactory().newMapper();
+
+  private Jdbi jdbi;
+
+  /**
+   * Create a clean in-memory database for each test
+   */
+  @Before
+  public void beforeTest() {
+    this.jdbi = new FortuneDatabaseFactory().newDatabase("jdbc:sqlite::memory:");
+  }
+
+  /**
+   * "Happy path" test for the {@link FortuneSuggestHandler}.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testSuccess() throws Exception {
+    // Mock a context so the handler thinks Javalin called it
+    Context context = mock(Context.class);
+    when(context.ip()).thenReturn("0.0.0.0");
+    when(context.status(any())).thenReturn(context);
+    when(context.result(anyString())).thenReturn(context);
+    when(context.contentType(ContentType.APPLICATION_JSON)).thenReturn(context);
+    when(context.queryParam("q")).thenReturn("fami", "zebra");
+
+    // Mock a config
+    FortuneApiConfig config = mock(FortuneApiConfig.class);
+
+    // Add a fortune after the handler was created so the index has to grow
+    FortuneModel model = new FortuneModel(jdbi, true);
+    FortuneSuggestHandler handler = new FortuneSuggestHandler(config, model);
+    model.addFortune("Friends are the family we choose.");
+
+    handler.handle(context);
+
+    // Capture and validate the response
+    ArgumentCaptor<String> resultCaptor = ArgumentCaptor.forClass(String.class);
+    verify(context, times(1)).result(resultCaptor.capture());
+    RestResponse<List<Map<String, String>>> response = mapper.readValue(resultCaptor.getValue(), new TypeReference<>() {});
+
+    assertEquals(RestResponseStatus.success, response.getStatus());
+    assertEquals(HttpStatus.OK.getCode(), response.getCode());
+
+    List<Map<String, String>> data = response.getData();
+    assertNotNull(data);
+    assertEquals(List.of(Map.of("fortune", "Friends are the family we choose.")), data);
+
+    // Suggesting nothing is not an error
+    handler.handle(context);
+
+    verify(context, times(2)).result(resultCaptor.capture());
+    response = mapper.readValue(resultCaptor.getValue(), new TypeReference<>() {});
+
+    assertEquals(RestResponseStatus.success, response.getStatus());
+    assertEquals(List.of(), response.getData());
+  }
+}
@@ -0,0 +1,86 @@
+package net.shinton.fortune.metrics;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import java.io.File;
+import net.shinton.fortune.FortuneApiConfig;
+import net.shinton.fortune.data.FortuneDatabase;
+import net.shinton.fortune.factory.FortuneDatabaseFactory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * <code>JUnit</code> tests for the {@link FortuneMetrics} class.
+ */
+public class FortuneMetricsTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /**
+   * Test that instrumented handlers are recorded per route and status code,
+   * and that the pools and JVM are reported alongside them.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testScrape() throws Exception {
+    FortuneApiConfig config = mock(FortuneApiConfig.class);
+    when(config.jdbcUrl()).thenReturn("jdbc:sqlite:" + new File(folder.getRoot(), "fortune.db").getAbsolutePath());
+    when(config.sqliteJournalMode()).thenReturn("WAL");
+    when(config.sqliteReadPoolSize()).thenReturn(2);
+
+    FortuneDatabase database = new FortuneDatabaseFactory().newDatabase(config, true);
+    FortuneMetrics metrics = new FortuneMetrics(database);
+
+    Handler ok = metrics.instrument("GET", "/api/v1/fortune", ctx -> { });
+    final Handler failing = metrics.instrument("POST", "/api/v1/fortune", ctx -> {
+      throw new IllegalStateException("Failed");
+    });
+
+    Context context = mock(Context.class);
+    when(context.statusCode()).thenReturn(200, 200, 200, 409, 500);
+
+    ok.handle(context);
+    ok.handle(context);
+    ok.handle(context);
+    ok.handle(context);
+
+    // A handler that throws is still recorded
+    assertThrows(IllegalStateException.class, () -> failing.handle(context));
+
+    String scrape = metrics.scrape();
+    assertTrue(scrape.contains("# TYPE fortune_http_request_duration_seconds histogram\n"));
+    assertTrue(scrape.contains(
+        "fortune_http_request_duration_seconds_count{method=\"GET\",route=\"/api/v1/fortune\",status=\"200\"} 3\n"));
+    assertTrue(scrape.contains(
+        "fortune_http_request_duration_seconds_bucket{method=\"GET\",route=\"/api/v1/fortune\",status=\"200\",le=\"+Inf\"} 3\n"));
+    assertTrue(scrape.contains(
+        "fortune_http_request_duration_seconds_count{method=\"GET\",route=\"/api/v1/fortune\",status=\"409\"} 1\n"));
+
+    // The bounds sit on the edges of the recorded buckets
+    assertTrue(scrape.contains(
+        "fortune_http_request_duration_seconds_bucket{method=\"GET\",route=\"/api/v1/fortune\",status=\"200\",le=\"0.000512\"}"));
+    assertTrue(scrape.contains(
+        "fortune_http_request_duration_seconds_bucket{method=\"GET\",route=\"/api/v1/fortune\",status=\"200\",le=\"0.001024\"}"));
+    assertFalse(scrape.contains("le=\"0.0005\""));
+    assertTrue(scrape.contains(
+        "fortune_http_request_duration_seconds_count{method=\"POST\",route=\"/api/v1/fortune\",status=\"500\"} 1\n"));
+    assertTrue(scrape.contains("fortune_http_request_duration_percentile_seconds{method=\"GET\",route=\"/api/v1/fortune\"," +
+        "status=\"200\",percentile=\"99.9\"}"));
+    assertFalse(scrape.contains("status=\"404\""));
+
+    assertTrue(scrape.contains("fortune_db_connections_active{pool=\"fortune-writer\"} 0\n"));
+    assertTrue(scrape.contains("fortune_db_connections_idle{pool=\"fortune-reader\"}"));
+    assertTrue(scrape.contains("fortune_db_connections_in_flight 0\n"));
+    assertTrue(scrape.contains("jvm_memory_used_bytes{area=\"heap\"}"));
+    assertTrue(scrape.contains("jvm_gc_collections_total{gc="));
+    assertTrue(scrape.contains("jvm_threads_live "));
+  }
+}
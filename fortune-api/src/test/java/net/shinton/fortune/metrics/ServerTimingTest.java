@@ -0,0 +1,52 @@
+package net.shinton.fortune.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * <code>JUnit</code> tests for the {@link ServerTiming} class.
+ */
+public class ServerTimingTest {
+  /**
+   * Test that phases are only counted once when they nest, and that the
+   * header lists the phases that were entered followed by the total.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testPhases() throws Exception {
+    assertNull(ServerTiming.current());
+
+    ServerTiming timing = ServerTiming.begin();
+    assertSame(timing, ServerTiming.current());
+
+    timing.enter(ServerTiming.Phase.DB);
+    timing.enter(ServerTiming.Phase.DB);
+    Thread.sleep(5);
+    timing.exit(ServerTiming.Phase.DB);
+    long inner = timing.getNanos(ServerTiming.Phase.DB);
+    timing.exit(ServerTiming.Phase.DB);
+
+    // Only the outermost entry counts, and an extra exit is ignored
+    assertEquals(0, inner);
+    long outer = timing.getNanos(ServerTiming.Phase.DB);
+    assertTrue(outer >= 5_000_000);
+    timing.exit(ServerTiming.Phase.DB);
+    assertEquals(outer, timing.getNanos(ServerTiming.Phase.DB));
+
+    timing.enter(ServerTiming.Phase.SERIALIZATION);
+    Thread.sleep(1);
+    timing.exit(ServerTiming.Phase.SERIALIZATION);
+
+    assertTrue(timing.toHeader().matches("db;desc=\"Database\";dur=[0-9.]+, ser;desc=\"Serialization\";dur=[0-9.]+"));
+
+    timing.end();
+    assertNull(ServerTiming.current());
+    assertTrue(timing.toHeader().matches(
+        "db;desc=\"Database\";dur=[0-9.]+, ser;desc=\"Serialization\";dur=[0-9.]+, total;desc=\"Handler\";dur=[0-9.]+"));
+  }
+}
@@ -0,0 +1,57 @@
+package net.shinton.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * <code>JUnit</code> tests for the {@link AliasTable} class.
+ */
+public class AliasTableTest {
+  /**
+   * "Happy path" test for the {@link AliasTable}. Every outcome should be
+   * drawn roughly in proportion to its weight.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testSuccess() throws Exception {
+    double[] weights = {1.0, 2.0, 3.0, 4.0, 0.5};
+    AliasTable table = new AliasTable(weights);
+    assertEquals(weights.length, table.size());
+
+    double total = 0;
+    for (double weight : weights) {
+      total += weight;
+    }
+
+    // Use a fixed seed so the test is repeatable
+    Random random = new Random(42);
+    int draws = 100_000;
+    int[] counts = new int[weights.length];
+
+    for (int i = 0; i < draws; i++) {
+      counts[table.sample(random)]++;
+    }
+
+    for (int i = 0; i < weights.length; i++) {
+      double expected = weights[i] / total;
+      assertEquals(expected, (double) counts[i] / draws, 0.01);
+    }
+  }
+
+  /**
+   * Test to ensure bad weights are rejected.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testFailure() throws Exception {
+    assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[0]));
+    assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[] {1.0, 0.0}));
+    assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[] {1.0, -1.0}));
+    assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[] {1.0, Double.NaN}));
+  }
+}
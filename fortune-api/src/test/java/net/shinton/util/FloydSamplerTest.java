@@ -0,0 +1,68 @@
+package net.shinton.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+/**
+ * <code>JUnit</code> tests for the {@link FloydSampler} class.
+ */
+public class FloydSamplerTest {
+  /**
+   * "Happy path" test for the {@link FloydSampler}.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testSuccess() throws Exception {
+    Random random = new Random(42);
+
+    // A small sample from a huge range should be distinct and in range
+    long bound = 1_000_000_000_000L;
+    long[] values = FloydSampler.sample(bound, 50, random);
+    assertEquals(50, values.length);
+
+    Set<Long> distinct = new HashSet<>();
+    for (long value : values) {
+      assertTrue(value >= 0 && value < bound);
+      distinct.add(value);
+    }
+
+    assertEquals(50, distinct.size());
+
+    // Asking for more than there are returns everything
+    distinct.clear();
+    for (long value : FloydSampler.sample(10, 20, random)) {
+      distinct.add(value);
+    }
+
+    assertEquals(10, distinct.size());
+    assertEquals(0, FloydSampler.sample(10, 0, random).length);
+  }
+
+  /**
+   * Test to ensure every value is equally likely to be picked.
+   *
+   * @throws Exception There was an unexpected error
+   */
+  @Test
+  public void testUniform() throws Exception {
+    Random random = new Random(42);
+    int[] counts = new int[10];
+    int draws = 50_000;
+
+    for (int i = 0; i < draws; i++) {
+      for (long value : FloydSampler.sample(counts.length, 3, random)) {
+        counts[(int) value]++;
+      }
+    }
+
+    for (int count : counts) {
+      assertEquals(0.3, (double) count / draws, 0.01);
+    }
+  }
+}